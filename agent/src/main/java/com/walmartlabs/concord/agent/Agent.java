@@ -31,6 +31,8 @@ import com.walmartlabs.concord.agent.mmode.MaintenanceModeNotifier;
 import com.walmartlabs.concord.client.ProcessEntry.StatusEnum;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.server.queueclient.QueueClient;
+import com.walmartlabs.concord.server.queueclient.message.Message;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import org.slf4j.Logger;
@@ -42,8 +44,7 @@ import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -115,19 +116,23 @@ public class Agent {
             // check if the maintenance mode is enabled. If so, hang there indefinitely
             validateMaintenanceMode();
 
-            // TODO parallel acquire?
             // wait for a free "slot"
             workersAvailable.acquire();
-            log.info("run -> acquired a slot, {}/{} remains", workersAvailable.availablePermits(), workersCount);
 
-            // fetch the next job
-            JobRequest jobRequest;
+            // grab the rest of the free slots, so we can request multiple jobs at once
+            int slots = 1 + tryAcquire(workersAvailable, agentCfg.getAcquireBatchSize() - 1);
+            log.info("run -> acquired {} slot(s), {}/{} remains", slots, workersAvailable.availablePermits(), workersCount);
+
+            long t1 = System.currentTimeMillis();
+
+            // fetch the next jobs
+            List<JobRequest> jobRequests;
             try {
-                jobRequest = take(queueClient);
+                jobRequests = take(queueClient, slots);
             } catch (Exception e) {
                 log.error("run -> error while fetching a job: {}", e.getMessage(), e);
 
-                workersAvailable.release();
+                workersAvailable.release(slots);
 
                 // wait before retrying
                 // the server is not reachable or unhealthy, no point retrying immediately
@@ -135,30 +140,48 @@ public class Agent {
                 continue;
             }
 
-            if (jobRequest == null) {
-                // can happen on switching to maintenance mode or reconnecting, etc
-                workersAvailable.release();
+            // can be empty on switching to maintenance mode or reconnecting, etc
+            // or if the server returned less jobs than requested
+            if (jobRequests.size() < slots) {
+                workersAvailable.release(slots - jobRequests.size());
+            }
+
+            if (jobRequests.isEmpty()) {
                 continue;
             }
 
-            UUID instanceId = jobRequest.getInstanceId();
+            log.info("run -> received {} job(s) for {} slot(s), slot(s) idle for {}ms", jobRequests.size(), slots, System.currentTimeMillis() - t1);
 
-            // worker will handle the process' lifecycle
-            try {
-                Worker w = injector.createChildInjector(new WorkerModule(agentCfg.getAgentId(), instanceId, jobRequest.getSessionToken()))
-                        .getInstance(WorkerFactory.class)
-                        .create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+            jobRequests.forEach(this::startWorker);
+        }
+    }
 
-                // register the worker so we can cancel it later
-                activeWorkers.put(instanceId, w);
+    private void startWorker(JobRequest jobRequest) {
+        UUID instanceId = jobRequest.getInstanceId();
 
-                // start a new thread to process the job
-                executor.submit(w);
-            } catch (Exception e) {
-                log.error("run -> error while submitting worker: {}", e.getMessage());
-                workersAvailable.release();
-            }
+        // worker will handle the process' lifecycle
+        try {
+            Worker w = injector.createChildInjector(new WorkerModule(agentCfg.getAgentId(), instanceId, jobRequest.getSessionToken()))
+                    .getInstance(WorkerFactory.class)
+                    .create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+
+            // register the worker so we can cancel it later
+            activeWorkers.put(instanceId, w);
+
+            // start a new thread to process the job
+            executor.submit(w);
+        } catch (Exception e) {
+            log.error("run -> error while submitting worker: {}", e.getMessage());
+            workersAvailable.release();
+        }
+    }
+
+    private static int tryAcquire(Semaphore s, int max) {
+        int result = 0;
+        while (result < max && s.tryAcquire()) {
+            result++;
         }
+        return result;
     }
 
     private void startMaintenanceModeNotifier(QueueClient queueClient) {
@@ -220,17 +243,30 @@ public class Agent {
         };
     }
 
-    private JobRequest take(QueueClient queueClient) throws Exception {
-        Future<ProcessResponse> req = queueClient.request(new ProcessRequest(agentCfg.getCapabilities()));
+    private List<JobRequest> take(QueueClient queueClient, int slots) throws Exception {
+        // older servers ignore "maxProcesses" and always respond with a single ProcessResponse
+        Integer maxProcesses = slots > 1 ? slots : null;
+        Future<Message> req = queueClient.request(new ProcessRequest(agentCfg.getCapabilities(), maxProcesses));
 
-        ProcessResponse resp = req.get();
+        Message resp = req.get();
         if (resp == null) {
-            return null;
+            return Collections.emptyList();
         }
 
-        Path workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+        List<ProcessResponse> processes;
+        if (resp instanceof ProcessBatchResponse) {
+            processes = ((ProcessBatchResponse) resp).getProcesses();
+        } else {
+            processes = Collections.singletonList((ProcessResponse) resp);
+        }
+
+        List<JobRequest> result = new ArrayList<>(processes.size());
+        for (ProcessResponse p : processes) {
+            Path workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+            result.add(JobRequest.from(p, workDir));
+        }
 
-        return JobRequest.from(resp, workDir);
+        return result;
     }
 
     private void cancel(UUID instanceId) {
@@ -20,30 +20,52 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.walmartlabs.concord.ApiClient;
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DefaultStateFetcher implements StateFetcher {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultStateFetcher.class);
 
+    private static final int METHOD_NOT_ALLOWED = 405;
+
     private final ProcessApi processApi;
+    private final boolean streaming;
+    private final boolean skipKnownFiles;
 
     @Inject
-    public DefaultStateFetcher(ProcessApi processApi) {
+    public DefaultStateFetcher(ProcessApi processApi, AgentConfiguration cfg) {
         this.processApi = processApi;
+        this.streaming = cfg.isStreamingTransfers();
+        this.skipKnownFiles = cfg.isSkipKnownStateFiles();
     }
 
     @Override
     public void downloadState(JobRequest job) throws Exception {
+        if ((streaming || skipKnownFiles) && downloadStream(job)) {
+            return;
+        }
+
         File payload = null;
         try {
             payload = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.downloadState(job.getInstanceId()));
@@ -55,6 +77,80 @@ public class DefaultStateFetcher implements StateFetcher {
         }
     }
 
+    /**
+     * Downloads the process state and unpacks the archive while it's being
+     * downloaded. With {@code skipKnownFiles} the files that are already in
+     * the payload directory (e.g. the repository files exported by the agent)
+     * are not downloaded. If the download is interrupted, the next attempt
+     * skips the files received so far.
+     *
+     * @return {@code false} if the server doesn't support this type of requests.
+     */
+    private boolean downloadStream(JobRequest job) throws Exception {
+        Path payloadDir = job.getPayloadDir();
+        String path = "/api/v1/process/" + job.getInstanceId() + "/state/snapshot";
+
+        AtomicInteger attempt = new AtomicInteger();
+        return ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+            boolean resume = attempt.getAndIncrement() > 0;
+
+            Map<String, String> knownFiles = Collections.emptyMap();
+            if (resume || (skipKnownFiles && job.getRepoUrl() != null)) {
+                knownFiles = listFiles(payloadDir);
+            }
+
+            ApiClient client = processApi.getApiClient();
+
+            Map<String, String> headerParams = new HashMap<>();
+            headerParams.put("Content-Type", "application/json");
+            headerParams.put("Accept", "application/zip");
+
+            String[] authNames = client.getAuthentications().keySet().toArray(new String[0]);
+            Call call = client.buildCall(path, "POST", new ArrayList<>(), new ArrayList<>(),
+                    Collections.singletonMap("knownFiles", knownFiles), headerParams, new HashMap<>(), authNames, null);
+
+            Response resp = call.execute();
+            try (ResponseBody body = resp.body()) {
+                if (resp.code() == METHOD_NOT_ALLOWED) {
+                    log.info("downloadStream ['{}'] -> not supported by the server, downloading a temporary file", job.getInstanceId());
+                    return false;
+                }
+
+                if (!resp.isSuccessful()) {
+                    throw new ApiException(resp.code(), "Error while downloading the process state: " + resp.message());
+                }
+
+                IOUtils.unzipStream(body.byteStream(), payloadDir, StandardCopyOption.REPLACE_EXISTING);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return versions of the regular files in the specified directory
+     * in the {@code "sha256hex:unixMode"} format, mapped by their relative paths.
+     */
+    private static Map<String, String> listFiles(Path dir) throws IOException {
+        Map<String, String> result = new HashMap<>();
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String version = MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString()
+                        + ":" + Posix.unixMode(Files.getPosixFilePermissions(file));
+
+                result.put(dir.relativize(file).toString(), version);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result;
+    }
+
     private static void delete(Path dir) {
         if (dir == null) {
             return;
@@ -50,11 +50,16 @@ public class AgentConfiguration {
 
     private final Path logDir;
     private final long logMaxDelay;
+    private final boolean logWatchService;
 
     private final int workersCount;
+    private final int acquireBatchSize;
     private final long pollInterval;
     private final int maintenanceModeListenerPort;
 
+    private final boolean streamingTransfers;
+    private final boolean skipKnownStateFiles;
+
     @Inject
     public AgentConfiguration(Config cfg) {
         this.agentId = getStringOrDefault(cfg, "id", () -> UUID.randomUUID().toString());
@@ -69,11 +74,16 @@ public class AgentConfiguration {
 
         this.logDir = getOrCreatePath(cfg, "logDir");
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
+        this.logWatchService = cfg.getBoolean("logWatchService");
 
         this.workersCount = cfg.getInt("workersCount");
+        this.acquireBatchSize = cfg.getInt("acquireBatchSize");
         this.maintenanceModeListenerPort = cfg.getInt("maintenanceModeListenerPort");
 
         this.pollInterval = cfg.getDuration("pollInterval", TimeUnit.MILLISECONDS);
+
+        this.streamingTransfers = cfg.getBoolean("streamingTransfers");
+        this.skipKnownStateFiles = cfg.getBoolean("skipKnownStateFiles");
     }
 
     public String getAgentId() {
@@ -104,10 +114,18 @@ public class AgentConfiguration {
         return logMaxDelay;
     }
 
+    public boolean isLogWatchService() {
+        return logWatchService;
+    }
+
     public int getWorkersCount() {
         return workersCount;
     }
 
+    public int getAcquireBatchSize() {
+        return acquireBatchSize;
+    }
+
     public long getPollInterval() {
         return pollInterval;
     }
@@ -115,4 +133,12 @@ public class AgentConfiguration {
     public int getMaintenanceModeListenerPort() {
         return maintenanceModeListenerPort;
     }
+
+    public boolean isStreamingTransfers() {
+        return streamingTransfers;
+    }
+
+    public boolean isSkipKnownStateFiles() {
+        return skipKnownStateFiles;
+    }
 }
@@ -25,19 +25,28 @@ import com.typesafe.config.Config;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
+import static com.walmartlabs.concord.agent.cfg.Utils.getOptionalAbsolutePath;
+
 @Named
 @Singleton
 public class PreForkConfiguration {
 
     private final long maxAge;
     private final int maxCount;
+    private final int maxCountPerCmd;
+    private final int warmUpCount;
+    private final Path statsFile;
 
     @Inject
     public PreForkConfiguration(Config cfg) {
         this.maxAge = cfg.getDuration("prefork.maxAge", TimeUnit.MILLISECONDS);
         this.maxCount = cfg.getInt("prefork.maxCount");
+        this.maxCountPerCmd = cfg.getInt("prefork.maxCountPerCmd");
+        this.warmUpCount = cfg.getInt("prefork.warmUpCount");
+        this.statsFile = getOptionalAbsolutePath(cfg, "prefork.statsFile");
     }
 
     public long getMaxAge() {
@@ -47,4 +56,16 @@ public class PreForkConfiguration {
     public int getMaxCount() {
         return maxCount;
     }
+
+    public int getMaxCountPerCmd() {
+        return maxCountPerCmd;
+    }
+
+    public int getWarmUpCount() {
+        return warmUpCount;
+    }
+
+    public Path getStatsFile() {
+        return statsFile;
+    }
 }
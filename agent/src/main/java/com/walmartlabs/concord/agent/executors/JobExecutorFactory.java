@@ -87,6 +87,8 @@ public class JobExecutorFactory {
         this.processLogFactory = processLogFactory;
 
         this.executor = Executors.newCachedThreadPool();
+
+        this.processPool.warmUp(RunnerJobExecutor::startPreFork);
     }
 
     public JobExecutor create(JobRequest.Type jobType) {
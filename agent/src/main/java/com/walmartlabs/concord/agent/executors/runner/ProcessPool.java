@@ -20,7 +20,12 @@ package com.walmartlabs.concord.agent.executors.runner;
  * =====
  */
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.walmartlabs.concord.agent.ExecutionException;
 import com.walmartlabs.concord.agent.Utils;
 import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
@@ -31,11 +36,27 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Pool of "pre-forked" JVMs. Processes are grouped by their command line
+ * (i.e. by their classpath and JVM parameters).
+ * <p>
+ * The number of processes kept for each command is based on how often
+ * the command was used recently. The usage stats can be persisted, so
+ * the most used commands are "warmed up" on the agent's start.
+ * <p>
+ * New processes are started outside of the pool's lock.
+ */
 @Named
 @Singleton
 public class ProcessPool {
@@ -44,21 +65,58 @@ public class ProcessPool {
 
     private static final long CLEANUP_PERIOD = 30000;
 
+    /**
+     * Weight of the previous take rate, applied every {@link #CLEANUP_PERIOD}.
+     */
+    private static final double RATE_DECAY = 0.5;
+
+    /**
+     * Commands with lower take rates (per {@link #CLEANUP_PERIOD}) are not replenished.
+     */
+    private static final double MIN_RATE = 0.2;
+
+    /**
+     * Commands that weren't used for longer than this are removed from the stats.
+     */
+    private static final long MAX_STATS_AGE = TimeUnit.DAYS.toMillis(7);
+
+    private static final TypeReference<Map<String, Map<String, Object>>> STATS_TYPE = new TypeReference<Map<String, Map<String, Object>>>() {
+    };
+
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final int maxEntryCountPerCmd;
+    private final int warmUpCount;
+    private final Path statsFile;
+    private final ObjectMapper objectMapper;
+
+    private final Object lock = new Object();
+    private final Map<HashCode, Slot> pool = new HashMap<>();
+    private final Map<HashCode, CmdStats> stats = new HashMap<>();
+    private boolean statsChanged = false;
+
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
     @Inject
-    public ProcessPool(PreForkConfiguration cfg) {
+    public ProcessPool(PreForkConfiguration cfg, ObjectMapper objectMapper) {
         this.maxEntryAge = cfg.getMaxAge();
         this.maxEntryCount = cfg.getMaxCount();
+        this.maxEntryCountPerCmd = cfg.getMaxCountPerCmd();
+        this.warmUpCount = cfg.getWarmUpCount();
+        this.statsFile = cfg.getStatsFile();
+        this.objectMapper = objectMapper;
+
+        loadStats();
         init();
     }
 
     public void init() {
         Thread t = new Thread(() -> {
-            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}", maxEntryAge, maxEntryCount);
+            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {} ({} per command)",
+                    maxEntryAge, maxEntryCount, maxEntryCountPerCmd);
 
             while (!Thread.currentThread().isInterrupted()) {
                 Utils.sleep(CLEANUP_PERIOD);
@@ -74,81 +132,178 @@ public class ProcessPool {
         t.start();
     }
 
-    public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
-        synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+    /**
+     * Starts processes for the most used commands from the persisted stats.
+     */
+    public void warmUp(ProcessLauncher launcher) {
+        List<CmdStats> hot;
+        synchronized (lock) {
+            hot = stats.values().stream()
+                    .sorted(Comparator.comparingLong((CmdStats s) -> s.takes).reversed())
+                    .limit(warmUpCount)
+                    .collect(Collectors.toList());
+
+            for (CmdStats s : hot) {
+                Slot slot = pool.computeIfAbsent(s.hc, k -> new Slot(s.cmd));
+                slot.launcher = launcher;
+                // enough to keep one process until the command is actually used
+                slot.rate = Math.max(slot.rate, 1);
+            }
+        }
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        if (hot.isEmpty()) {
+            return;
+        }
 
-                log.info("take -> started a new process: {}", entry.procDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.procDir);
-            }
+        log.info("warmUp -> starting processes for {} command(s)", hot.size());
+        hot.forEach(s -> executor.submit(() -> populate(s.hc)));
+    }
+
+    public ProcessEntry take(String[] cmd, ProcessLauncher launcher) throws ExecutionException {
+        HashCode hc = hash(cmd);
+
+        ProcessEntry entry;
+        synchronized (lock) {
+            Slot slot = pool.computeIfAbsent(hc, k -> new Slot(cmd));
+            slot.launcher = launcher;
+            slot.takes++;
 
-            executor.submit(() -> populate(hc, launcher));
+            entry = slot.poll();
 
+            stats.computeIfAbsent(hc, k -> new CmdStats(hc, cmd)).onTake();
+            statsChanged = true;
+        }
+
+        executor.submit(() -> populate(hc));
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            log.info("take -> using a pre-forked instance: {}", entry.procDir);
             return entry;
         }
+
+        misses.incrementAndGet();
+
+        try {
+            entry = launcher.start(cmd);
+        } catch (IOException e) {
+            throw new ExecutionException("Error while starting a new process", e);
+        }
+
+        log.info("take -> started a new process: {}", entry.procDir);
+        return entry;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of ready processes for the specified command
+     */
+    int available(String[] cmd) {
+        synchronized (lock) {
+            Slot slot = pool.get(hash(cmd));
+            return slot != null ? slot.entries.size() : 0;
+        }
     }
 
-    private void populate(HashCode hc, ProcessLauncher launcher) {
-        synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
+    /**
+     * Starts new processes until the number of processes for the specified
+     * command reaches its target. Processes of other commands are evicted
+     * if the pool is full.
+     */
+    private void populate(HashCode hc) {
+        Slot slot;
+        int count;
+        List<ProcessEntry> evicted = new ArrayList<>();
+
+        synchronized (lock) {
+            slot = pool.get(hc);
+            if (slot == null || slot.launcher == null) {
+                return;
             }
 
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
-                }
+            count = target(slot) - slot.entries.size() - slot.starting;
+            if (count <= 0) {
+                return;
+            }
 
-                // it's never null
-                assert oldest != null;
+            // evict the oldest entries of other commands to make room
+            int free = maxEntryCount - total();
+            while (free < count) {
+                ProcessEntry oldest = removeOldest(hc);
+                if (oldest == null) {
+                    break;
+                }
 
-                oldest.remove = true;
+                evicted.add(oldest);
+                free++;
             }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+            count = Math.min(count, free);
+            slot.starting += Math.max(count, 0);
+        }
+
+        for (ProcessEntry e : evicted) {
+            Utils.kill(e.process);
+        }
+
+        for (int i = 0; i < count; i++) {
+            ProcessEntry entry = null;
             try {
-                q.add(launcher.start());
+                entry = slot.launcher.start(slot.cmd);
             } catch (IOException e) {
                 log.error("populate -> error while starting a new process", e);
             }
+
+            synchronized (lock) {
+                slot.starting--;
+
+                if (entry == null) {
+                    continue;
+                }
+
+                if (pool.get(hc) == slot) {
+                    slot.entries.add(entry);
+                    entry = null;
+                }
+            }
+
+            if (entry != null) {
+                // the command was removed from the pool while the process was starting
+                Utils.kill(entry.process);
+            }
         }
     }
 
-    private void maintenance() {
+    void maintenance() {
         List<HashCode> queuesToRemove = new ArrayList<>();
+        List<HashCode> queuesToPopulate = new ArrayList<>();
         List<Process> processesToKill = new ArrayList<>();
 
         long t = System.currentTimeMillis();
 
-        synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
+        synchronized (lock) {
+            pool.forEach((hc, slot) -> {
+                slot.rate = slot.rate * RATE_DECAY + slot.takes * (1 - RATE_DECAY);
+                slot.takes = 0;
+
+                slot.entries.removeIf(e -> {
+                    if (t - e.timestamp >= maxEntryAge || !e.process.isAlive()) {
                         processesToKill.add(e.process);
                         return true;
                     }
                     return false;
                 });
 
-                if (q.isEmpty()) {
+                if (target(slot) > 0) {
+                    queuesToPopulate.add(hc);
+                } else if (slot.entries.isEmpty() && slot.starting == 0) {
                     queuesToRemove.add(hc);
                 }
             });
@@ -164,11 +319,115 @@ public class ProcessPool {
             Utils.kill(p);
         }
         log.info("maintenance -> killed {} processes", processesToKill.size());
+
+        // replace the expired processes of the commands that are still in use
+        queuesToPopulate.forEach(hc -> executor.submit(() -> populate(hc)));
+
+        log.info("maintenance -> hits: {}, misses: {}", hits.get(), misses.get());
+
+        saveStats();
+    }
+
+    /**
+     * The number of processes to keep for the specified command, based on
+     * the number of takes expected during the lifetime of a process.
+     */
+    private int target(Slot slot) {
+        double rate = Math.max(slot.rate, slot.takes);
+        if (rate < MIN_RATE) {
+            return 0;
+        }
+
+        int n = (int) Math.ceil(rate * maxEntryAge / CLEANUP_PERIOD);
+        return Math.max(1, Math.min(n, maxEntryCountPerCmd));
+    }
+
+    private int total() {
+        int total = 0;
+        for (Slot s : pool.values()) {
+            total += s.entries.size() + s.starting;
+        }
+        return total;
+    }
+
+    private ProcessEntry removeOldest(HashCode exclude) {
+        Slot oldestSlot = null;
+        for (Map.Entry<HashCode, Slot> e : pool.entrySet()) {
+            if (e.getKey().equals(exclude)) {
+                continue;
+            }
+
+            ProcessEntry head = e.getValue().entries.peek();
+            if (head != null && (oldestSlot == null || oldestSlot.entries.peek().timestamp > head.timestamp)) {
+                oldestSlot = e.getValue();
+            }
+        }
+
+        return oldestSlot != null ? oldestSlot.entries.poll() : null;
+    }
+
+    private void loadStats() {
+        if (statsFile == null || !Files.exists(statsFile)) {
+            return;
+        }
+
+        long t = System.currentTimeMillis();
+
+        try {
+            Map<String, Map<String, Object>> m = objectMapper.readValue(statsFile.toFile(), STATS_TYPE);
+            m.forEach((k, v) -> {
+                CmdStats s = CmdStats.fromMap(HashCode.fromString(k), v);
+                if (t - s.lastTakeAt < MAX_STATS_AGE) {
+                    stats.put(s.hc, s);
+                }
+            });
+
+            log.info("loadStats -> loaded {} command(s)", stats.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("loadStats -> error while reading {}: {}", statsFile, e.getMessage());
+        }
+    }
+
+    private void saveStats() {
+        if (statsFile == null) {
+            return;
+        }
+
+        long t = System.currentTimeMillis();
+
+        Map<String, Map<String, Object>> m = new HashMap<>();
+        synchronized (lock) {
+            if (!statsChanged) {
+                return;
+            }
+
+            stats.values().removeIf(s -> t - s.lastTakeAt >= MAX_STATS_AGE);
+            stats.forEach((hc, s) -> m.put(hc.toString(), s.toMap()));
+            statsChanged = false;
+        }
+
+        try {
+            Path tmp = statsFile.resolveSibling(statsFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                objectMapper.writeValue(out, m);
+            }
+            Files.move(tmp, statsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("saveStats -> error while writing {}: {}", statsFile, e.getMessage());
+        }
+    }
+
+    private static HashCode hash(String[] as) {
+        Hasher h = Hashing.sha256().newHasher();
+        for (String s : as) {
+            h.putString(s, Charsets.UTF_8);
+        }
+        return h.hash();
     }
 
     public interface ProcessLauncher {
 
-        ProcessEntry start() throws IOException;
+        ProcessEntry start(String[] cmd) throws IOException;
     }
 
     public static final class ProcessEntry {
@@ -177,8 +436,6 @@ public class ProcessPool {
         private final Process process;
         private final Path procDir;
 
-        private boolean remove = false;
-
         public ProcessEntry(Process process, Path procDir) {
             this.timestamp = System.currentTimeMillis();
             this.process = process;
@@ -193,4 +450,72 @@ public class ProcessPool {
             return procDir;
         }
     }
+
+    private static final class Slot {
+
+        private final String[] cmd;
+        private final Queue<ProcessEntry> entries = new ArrayDeque<>();
+
+        private ProcessLauncher launcher;
+
+        // the number of processes being started
+        private int starting;
+
+        // the number of takes since the last maintenance and the average per CLEANUP_PERIOD
+        private int takes;
+        private double rate;
+
+        private Slot(String[] cmd) { // NOSONAR
+            this.cmd = cmd;
+        }
+
+        private ProcessEntry poll() {
+            ProcessEntry e;
+            while ((e = entries.poll()) != null) {
+                if (e.process.isAlive()) {
+                    return e;
+                }
+
+                log.warn("take -> pre-forked process is not alive: {}", e.procDir);
+            }
+            return null;
+        }
+    }
+
+    private static final class CmdStats {
+
+        private final HashCode hc;
+        private final String[] cmd;
+
+        private long takes;
+        private long lastTakeAt;
+
+        private CmdStats(HashCode hc, String[] cmd) { // NOSONAR
+            this.hc = hc;
+            this.cmd = cmd;
+        }
+
+        private void onTake() {
+            takes++;
+            lastTakeAt = System.currentTimeMillis();
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> m = new HashMap<>();
+            m.put("cmd", Arrays.asList(cmd));
+            m.put("takes", takes);
+            m.put("lastTakeAt", lastTakeAt);
+            return m;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static CmdStats fromMap(HashCode hc, Map<String, Object> m) {
+            List<String> cmd = (List<String>) m.get("cmd");
+
+            CmdStats s = new CmdStats(hc, cmd.toArray(new String[0]));
+            s.takes = ((Number) m.get("takes")).longValue();
+            s.lastTakeAt = ((Number) m.get("lastTakeAt")).longValue();
+            return s;
+        }
+    }
 }
@@ -22,10 +22,7 @@ package com.walmartlabs.concord.agent.executors.runner;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.walmartlabs.concord.agent.ConfiguredJobRequest;
 import com.walmartlabs.concord.agent.ExecutionException;
@@ -56,6 +53,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
@@ -379,13 +377,8 @@ public class RunnerJobExecutor implements JobExecutor {
     private ProcessEntry fork(RunnerJob job, String[] cmd) throws ExecutionException, IOException {
         long t1 = System.currentTimeMillis();
 
-        HashCode hc = hash(cmd);
-
         // take a "pre-forked" JVM from the pool or start a new one
-        ProcessEntry entry = processPool.take(hc, () -> {
-            Path forkDir = IOUtils.createTempDir("prefork");
-            return start(forkDir, cmd);
-        });
+        ProcessEntry entry = processPool.take(cmd, RunnerJobExecutor::startPreFork);
 
         // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
         Path src = job.getPayloadDir();
@@ -417,7 +410,23 @@ public class RunnerJobExecutor implements JobExecutor {
         return start(procDir, cmd);
     }
 
-    private ProcessEntry start(Path procDir, String[] cmd) throws IOException {
+    /**
+     * Starts a new JVM for {@link ProcessPool}. Also used to warm up the pool
+     * with commands from the previous runs of the agent.
+     */
+    public static ProcessEntry startPreFork(String[] cmd) throws IOException {
+        // the runner's configuration file is the last argument, the file might
+        // be removed since the command was used
+        Path runnerCfgFile = Paths.get(cmd[cmd.length - 1]);
+        if (!Files.exists(runnerCfgFile)) {
+            throw new IOException("Runner configuration file not found: " + runnerCfgFile);
+        }
+
+        Path forkDir = IOUtils.createTempDir("prefork");
+        return start(forkDir, cmd);
+    }
+
+    private static ProcessEntry start(Path procDir, String[] cmd) throws IOException {
         Path payloadDir = procDir.resolve(Constants.Files.PAYLOAD_DIR_NAME);
         if (!Files.exists(payloadDir)) {
             Files.createDirectories(payloadDir);
@@ -559,15 +568,6 @@ public class RunnerJobExecutor implements JobExecutor {
         return !Files.exists(workDir.resolve(Constants.Agent.AGENT_PARAMS_FILE_NAME));
     }
 
-    private static HashCode hash(String[] as) {
-        HashFunction f = Hashing.sha256();
-        Hasher h = f.newHasher();
-        for (String s : as) {
-            h.putString(s, Charsets.UTF_8);
-        }
-        return h.hash();
-    }
-
     private static void cleanup(RunnerJob job) {
         try {
             job.getLog().delete();
@@ -21,6 +21,7 @@ package com.walmartlabs.concord.agent.logging;
  */
 
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 public interface LogAppender {
@@ -29,7 +30,57 @@ public interface LogAppender {
 
     boolean appendLog(UUID instanceId, long segmentId, byte[] ab);
 
+    /**
+     * Appends chunks of multiple log segments and updates the segments' stats.
+     * The chunks are processed in order. Currently used only when
+     * {@link SegmentedProcessLog} runs with the WatchService-based watcher
+     * ({@code logWatchService}).
+     *
+     * @return the number of processed chunks, the rest should be retried
+     */
+    default int appendLogs(UUID instanceId, List<SegmentChunk> chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
+            SegmentChunk c = chunks.get(i);
+            if (c.bytes() != null && !appendLog(instanceId, c.segmentId(), c.bytes())) {
+                return i;
+            }
+
+            if (c.stats() != null) {
+                updateSegment(instanceId, c.segmentId(), c.stats());
+            }
+        }
+        return chunks.size();
+    }
+
     Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt);
 
     boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats);
+
+    final class SegmentChunk {
+
+        private final long segmentId;
+        private final byte[] ab;
+        private final LogSegmentStats stats;
+
+        public SegmentChunk(long segmentId, byte[] ab, LogSegmentStats stats) { // NOSONAR
+            this.segmentId = segmentId;
+            this.ab = ab;
+            this.stats = stats;
+        }
+
+        public long segmentId() {
+            return segmentId;
+        }
+
+        /**
+         * @return the chunk's data or {@code null} if there's only the stats update
+         */
+        public byte[] bytes() {
+            return ab;
+        }
+
+        public LogSegmentStats stats() {
+            return stats;
+        }
+    }
 }
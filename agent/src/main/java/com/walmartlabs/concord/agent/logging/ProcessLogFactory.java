@@ -32,12 +32,14 @@ public class ProcessLogFactory {
 
     private final Path logDir;
     private final long logStreamMaxDelay;
+    private final boolean logWatchService;
     private final LogAppender logAppender;
 
     @Inject
     public ProcessLogFactory(AgentConfiguration cfg, LogAppender logAppender) {
         this.logDir = cfg.getLogDir();
         this.logStreamMaxDelay = cfg.getLogMaxDelay();
+        this.logWatchService = cfg.isLogWatchService();
         this.logAppender = logAppender;
     }
 
@@ -48,7 +50,7 @@ public class ProcessLogFactory {
         }
 
         if (segmented) {
-            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
+            return new SegmentedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay, logWatchService);
         } else {
             return new RedirectedProcessLog(dst, instanceId, logAppender, logStreamMaxDelay);
         }
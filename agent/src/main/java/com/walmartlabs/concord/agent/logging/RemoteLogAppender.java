@@ -24,21 +24,28 @@ import com.walmartlabs.concord.ApiClient;
 import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.AgentConstants;
 import com.walmartlabs.concord.client.*;
+import com.walmartlabs.concord.common.LogBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 public class RemoteLogAppender implements LogAppender {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteLogAppender.class);
 
+    private static final int NOT_FOUND = 404;
+
     private final ProcessApi processApi;
     private final ProcessLogV2Api processLogV2Api;
 
+    // false if the server doesn't support batched appends
+    private volatile boolean batchSupported = true;
+
     @Inject
     public RemoteLogAppender(ApiClient apiClient) {
         this.processApi = new ProcessApi(apiClient);
@@ -76,6 +83,53 @@ public class RemoteLogAppender implements LogAppender {
         }
     }
 
+    @Override
+    public int appendLogs(UUID instanceId, List<SegmentChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+
+        if (!batchSupported) {
+            return LogAppender.super.appendLogs(instanceId, chunks);
+        }
+
+        LogBatch batch = new LogBatch();
+        for (SegmentChunk c : chunks) {
+            if (c.bytes() != null) {
+                batch.data(c.segmentId(), c.bytes());
+            }
+
+            LogSegmentStats stats = c.stats();
+            if (stats != null) {
+                batch.status(c.segmentId(), stats.status() != null ? stats.status().getValue() : null, stats.warnings(), stats.errors());
+            }
+        }
+
+        String path = "/api/v2/process/" + instanceId + "/log/batch";
+        byte[] ab = batch.toByteArray();
+
+        try {
+            ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+                ClientUtils.postData(processApi.getApiClient(), path, ab);
+                return null;
+            });
+            return chunks.size();
+        } catch (ApiException e) {
+            if (e.getCode() != NOT_FOUND) {
+                log.warn("appendLogs ['{}'] -> error: {}", instanceId, e.getMessage());
+                return 0;
+            }
+        }
+
+        // an older server or an unknown process. In the former case the regular appends work
+        int result = LogAppender.super.appendLogs(instanceId, chunks);
+        if (result > 0) {
+            log.info("appendLogs ['{}'] -> batched appends are not supported by the server, switching to regular appends", instanceId);
+            batchSupported = false;
+        }
+        return result;
+    }
+
     @Override
     public Long createSegment(UUID instanceId, UUID correlationId, String segmentName, Date createdAt) {
         LogSegmentRequest request = new LogSegmentRequest()
@@ -28,8 +28,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
@@ -38,27 +37,41 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
     private static final Logger log = LoggerFactory.getLogger(SegmentedProcessLog.class);
 
     private final Path logsDir;
+    private final boolean useWatchService;
     private final Map<LogSegment, Long> segmentIds;
 
-    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay) throws IOException {
+    public SegmentedProcessLog(Path logsDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay, boolean useWatchService) throws IOException {
         super(logsDir, instanceId, appender, logSteamMaxDelay);
         this.logsDir = logsDir;
+        this.useWatchService = useWatchService;
         this.segmentIds = new ConcurrentHashMap<>();
     }
 
     @Override
     public void run(Supplier<Boolean> stopCondition) throws Exception {
+        if (useWatchService) {
+            WatchServiceFileWatcher.watch(logsDir, stopCondition, logSteamMaxDelay, new LogSegmentNameParser(), new WatchServiceFileWatcher.BatchListener<LogSegment>() {
+
+                @Override
+                public boolean onNewFile(LogSegment fileName) {
+                    return createSegment(fileName);
+                }
+
+                @Override
+                public Map<LogSegment, Integer> onChanged(List<WatchServiceFileWatcher.FileChunk<LogSegment>> chunks) throws IOException {
+                    return processChunks(chunks);
+                }
+            });
+            return;
+        }
+
         FileWatcher.FileReader fileReader = new FileWatcher.ByteArrayFileReader();
 
         FileWatcher.watch(logsDir, stopCondition, logSteamMaxDelay, new LogSegmentNameParser(), new FileWatcher.FileListener<LogSegment>() {
 
             @Override
             public boolean onNewFile(LogSegment fileName) {
-                Long id = appender.createSegment(instanceId, fileName.correlationId(), fileName.name(), fileName.createdAt());
-                if (id != null) {
-                    segmentIds.put(fileName, id);
-                }
-                return id != null;
+                return createSegment(fileName);
             }
 
             @Override
@@ -90,6 +103,65 @@ public class SegmentedProcessLog extends RedirectedProcessLog {
         });
     }
 
+    private boolean createSegment(LogSegment fileName) {
+        Long id = appender.createSegment(instanceId, fileName.correlationId(), fileName.name(), fileName.createdAt());
+        if (id != null) {
+            segmentIds.put(fileName, id);
+        }
+        return id != null;
+    }
+
+    /**
+     * Sends the data and the stats of all changed segments using a single
+     * {@link LogAppender#appendLogs(UUID, List)} call.
+     */
+    private Map<LogSegment, Integer> processChunks(List<WatchServiceFileWatcher.FileChunk<LogSegment>> chunks) throws IOException {
+        Map<LogSegment, Integer> result = new HashMap<>();
+
+        List<LogSegment> segments = new ArrayList<>();
+        List<LogStatsParser.Result> parsed = new ArrayList<>();
+        List<LogAppender.SegmentChunk> appends = new ArrayList<>();
+
+        for (WatchServiceFileWatcher.FileChunk<LogSegment> c : chunks) {
+            Long id = segmentIds.get(c.name());
+            if (id == null) {
+                result.put(c.name(), -1);
+                continue;
+            }
+
+            LogStatsParser.Result r = LogStatsParser.parse(c.bytes(), c.bytes().length);
+
+            byte[] ab = r.chunk() != null && r.chunk().length > 0 ? r.chunk() : null;
+            if (ab == null && r.stats() == null) {
+                result.put(c.name(), r.readPos());
+                continue;
+            }
+
+            segments.add(c.name());
+            parsed.add(r);
+            appends.add(new LogAppender.SegmentChunk(id, ab, r.stats()));
+        }
+
+        // the chunks that weren't sent are retried in the next cycle
+        int sent = appender.appendLogs(instanceId, appends);
+
+        for (int i = 0; i < sent; i++) {
+            LogSegment segment = segments.get(i);
+            LogStatsParser.Result r = parsed.get(i);
+
+            LogSegmentStats stats = r.stats();
+            if (stats != null && isFinal(stats.status())) {
+                segmentIds.remove(segment);
+                result.put(segment, -1);
+                continue;
+            }
+
+            result.put(segment, r.readPos());
+        }
+
+        return result;
+    }
+
     @Override
     public void delete() {
         super.delete();
@@ -0,0 +1,375 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.walmartlabs.concord.agent.logging.FileWatcher.FileNameParser;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Similar to {@link FileWatcher}, but uses {@link WatchService} to detect
+ * changes instead of checking all files every {@code maxDelay}.
+ * <p>
+ * Files are kept open until they are no longer tracked. The new data of all
+ * files changed in one cycle is passed to the listener at once.
+ */
+public final class WatchServiceFileWatcher<T> implements Closeable {
+
+    public static <T> void watch(Path path, Supplier<Boolean> stopCondition, long maxDelay, FileNameParser<T> fileNameParser, BatchListener<T> listener) throws IOException {
+        try (WatchServiceFileWatcher<T> watcher = new WatchServiceFileWatcher<>(path, maxDelay, fileNameParser, listener)) {
+            watcher.run(stopCondition);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(WatchServiceFileWatcher.class);
+
+    /**
+     * Max amount of data read from a single file in one cycle.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Delay after the first change in a cycle, allows changes of other files
+     * to be sent in the same batch.
+     */
+    private static final long COALESCE_DELAY = 100;
+
+    private final Path watchDir;
+    private final long maxDelay;
+    private final FileNameParser<T> fileNameParser;
+    private final BatchListener<T> listener;
+
+    private final WatchService watchService;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final Map<Path, TrackedFile<T>> files = new HashMap<>();
+    private final Set<Path> ignoreFiles = new HashSet<>();
+
+    // changed files and the time of the first unprocessed change
+    private final Map<Path, Long> changed = new LinkedHashMap<>();
+
+    private long batchCount;
+    private long byteCount;
+    private long totalLag;
+    private long maxLag;
+
+    private WatchServiceFileWatcher(Path watchDir, long maxDelay, FileNameParser<T> fileNameParser, BatchListener<T> listener) throws IOException {
+        this.watchDir = watchDir;
+        this.maxDelay = maxDelay;
+        this.fileNameParser = fileNameParser;
+        this.listener = listener;
+
+        this.watchService = watchDir.getFileSystem().newWatchService();
+        watchDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (TrackedFile<T> f : files.values()) {
+            closeQuietly(f);
+        }
+        files.clear();
+
+        watchService.close();
+
+        if (batchCount > 0) {
+            log.info("close ['{}'] -> sent {} bytes in {} batches, lag: avg {}ms, max {}ms",
+                    watchDir, byteCount, batchCount, totalLag / batchCount, maxLag);
+        }
+    }
+
+    private void run(Supplier<Boolean> stopCondition) throws IOException {
+        // files created before the directory was registered
+        scan();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            if (stopCondition.get()) {
+                // the events might not be delivered yet
+                scan();
+
+                while (processChanged()) {
+                    // send the remaining data
+                }
+
+                break;
+            }
+
+            boolean progress = processChanged();
+
+            try {
+                waitForChanges(progress && !changed.isEmpty());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void waitForChanges(boolean dataLeft) throws InterruptedException, IOException {
+        WatchKey key;
+        if (dataLeft) {
+            // continue with the remaining data
+            key = watchService.poll();
+        } else {
+            key = watchService.poll(maxDelay, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                Thread.sleep(COALESCE_DELAY);
+            }
+        }
+
+        while (key != null) {
+            for (WatchEvent<?> e : key.pollEvents()) {
+                if (e.kind() == OVERFLOW) {
+                    scan();
+                    continue;
+                }
+
+                markChanged(watchDir.resolve((Path) e.context()));
+            }
+
+            if (!key.reset()) {
+                log.warn("waitForChanges ['{}'] -> the directory is no longer accessible", watchDir);
+            }
+
+            key = watchService.poll();
+        }
+    }
+
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(watchDir)) {
+            for (Path p : paths) {
+                markChanged(p);
+            }
+        }
+    }
+
+    private void markChanged(Path p) {
+        if (ignoreFiles.contains(p)) {
+            return;
+        }
+
+        changed.putIfAbsent(p, System.currentTimeMillis());
+    }
+
+    /**
+     * @return {@code true} if any data was consumed by the listener
+     */
+    private boolean processChanged() throws IOException {
+        List<TrackedFile<T>> batch = new ArrayList<>();
+        List<FileChunk<T>> chunks = new ArrayList<>();
+
+        Iterator<Path> it = changed.keySet().iterator();
+        while (it.hasNext()) {
+            Path p = it.next();
+
+            TrackedFile<T> f = files.get(p);
+            if (f == null) {
+                f = open(p);
+                if (f == null) {
+                    if (ignoreFiles.contains(p)) {
+                        it.remove();
+                    }
+                    continue;
+                }
+            }
+
+            byte[] ab = read(f);
+            if (ab.length == 0) {
+                it.remove();
+                continue;
+            }
+
+            batch.add(f);
+            chunks.add(new FileChunk<>(f.name, ab));
+        }
+
+        if (chunks.isEmpty()) {
+            return false;
+        }
+
+        Map<T, Integer> result = listener.onChanged(chunks);
+
+        long now = System.currentTimeMillis();
+        boolean progress = false;
+
+        for (int i = 0; i < batch.size(); i++) {
+            TrackedFile<T> f = batch.get(i);
+            int len = chunks.get(i).bytes().length;
+
+            Integer consumed = result.get(f.name);
+            if (consumed == null || consumed == 0) {
+                // try again in the next cycle
+                continue;
+            }
+
+            if (consumed < 0) {
+                closeQuietly(f);
+                deleteFile(f.path);
+                files.remove(f.path);
+                changed.remove(f.path);
+                continue;
+            }
+
+            long lag = now - changed.get(f.path);
+            totalLag += lag;
+            maxLag = Math.max(maxLag, lag);
+            byteCount += consumed;
+
+            f.position += consumed;
+            progress = true;
+
+            if (consumed < len || len < BUFFER_SIZE) {
+                // all data is sent or the rest is incomplete, wait for the next change
+                changed.remove(f.path);
+            }
+        }
+
+        if (progress) {
+            batchCount++;
+        }
+
+        return progress;
+    }
+
+    private TrackedFile<T> open(Path p) {
+        T name = fileNameParser.parse(p);
+        if (name == null || !Files.isRegularFile(p)) {
+            ignoreFiles.add(p);
+            return null;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(p, StandardOpenOption.READ);
+        } catch (IOException e) {
+            log.warn("open ['{}'] -> error: {}", p, e.getMessage());
+            return null;
+        }
+
+        if (!listener.onNewFile(name)) {
+            closeQuietly(channel, p);
+            return null;
+        }
+
+        TrackedFile<T> f = new TrackedFile<>(p, name, channel);
+        files.put(p, f);
+        return f;
+    }
+
+    private byte[] read(TrackedFile<T> f) {
+        buffer.clear();
+
+        try {
+            while (buffer.hasRemaining()) {
+                int read = f.channel.read(buffer, f.position + buffer.position());
+                if (read <= 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("read ['{}'] -> error: {}", f.path, e.getMessage());
+        }
+
+        buffer.flip();
+
+        byte[] ab = new byte[buffer.remaining()];
+        buffer.get(ab);
+        return ab;
+    }
+
+    private static void closeQuietly(TrackedFile<?> f) {
+        closeQuietly(f.channel, f.path);
+    }
+
+    private static void closeQuietly(FileChannel channel, Path path) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("close ['{}'] -> error: {}", path, e.getMessage());
+        }
+    }
+
+    private static void deleteFile(Path path) {
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            log.warn("deleteFile ['{}'] -> error: {}", path, e.getMessage());
+        }
+    }
+
+    public interface BatchListener<T> {
+
+        boolean onNewFile(T fileName);
+
+        /**
+         * Receives the new data of all files changed since the last call.
+         *
+         * @return the number of bytes consumed for each file or -1 if the file
+         * is no longer tracked. Missing files are retried in the next cycle.
+         */
+        Map<T, Integer> onChanged(List<FileChunk<T>> chunks) throws IOException;
+    }
+
+    public static final class FileChunk<T> {
+
+        private final T name;
+        private final byte[] ab;
+
+        private FileChunk(T name, byte[] ab) { // NOSONAR
+            this.name = name;
+            this.ab = ab;
+        }
+
+        public T name() {
+            return name;
+        }
+
+        public byte[] bytes() {
+            return ab;
+        }
+    }
+
+    private static final class TrackedFile<T> {
+
+        private final Path path;
+        private final T name;
+        private final FileChannel channel;
+
+        private long position;
+
+        private TrackedFile(Path path, T name, FileChannel channel) {
+            this.path = path;
+            this.name = name;
+            this.channel = channel;
+        }
+    }
+}
@@ -20,26 +20,40 @@ package com.walmartlabs.concord.agent.remote;
  * =====
  */
 
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
 import com.walmartlabs.concord.ApiClient;
+import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.agent.AgentConstants;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.TemporaryPath;
 import com.walmartlabs.concord.sdk.Constants;
+import okio.BufferedSink;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.UUID;
 
 public class AttachmentsUploader {
 
+    private static final Logger log = LoggerFactory.getLogger(AttachmentsUploader.class);
+
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
     private final ApiClient apiClient;
+    private final boolean streaming;
 
     @Inject
-    public AttachmentsUploader(ApiClient apiClient) {
+    public AttachmentsUploader(ApiClient apiClient, AgentConfiguration cfg) {
         this.apiClient = apiClient;
+        this.streaming = cfg.isStreamingTransfers();
     }
 
     public void upload(UUID instanceId, Path payloadDir) throws Exception {
@@ -48,17 +62,68 @@ public class AttachmentsUploader {
             return;
         }
 
+        String path = "/api/v1/process/" + instanceId + "/attachment";
+
+        if (streaming && uploadStream(path, attachmentsDir)) {
+            return;
+        }
+
         try (TemporaryPath tmp = IOUtils.tempFile("attachments", ".zip")) {
             try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(tmp.path()))) {
                 IOUtils.zip(zip, attachmentsDir);
             }
 
-            String path = "/api/v1/process/" + instanceId + "/attachment";
-
             ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
                 ClientUtils.postData(apiClient, path, tmp.path().toFile());
                 return null;
             });
         }
     }
+
+    /**
+     * Writes the archive directly into the request body. The archive is
+     * re-created if the request must be retried.
+     *
+     * @return {@code false} if the server doesn't support streaming uploads.
+     */
+    private boolean uploadStream(String path, Path attachmentsDir) throws ApiException {
+        try {
+            ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
+                ClientUtils.postBody(apiClient, path, new ZipRequestBody(attachmentsDir), null);
+                return null;
+            });
+            return true;
+        } catch (ApiException e) {
+            if (e.getCode() == UNSUPPORTED_MEDIA_TYPE) {
+                log.info("uploadStream ['{}'] -> not supported by the server, uploading a temporary file", path);
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private static final class ZipRequestBody extends RequestBody {
+
+        private static final MediaType APPLICATION_ZIP_TYPE = MediaType.parse("application/zip");
+
+        private final Path src;
+
+        private ZipRequestBody(Path src) {
+            this.src = src;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return APPLICATION_ZIP_TYPE;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // the sink is closed by the HTTP client
+            ZipArchiveOutputStream zip = new ZipArchiveOutputStream(sink.outputStream());
+            IOUtils.zip(zip, src);
+            zip.finish();
+            zip.flush();
+        }
+    }
 }
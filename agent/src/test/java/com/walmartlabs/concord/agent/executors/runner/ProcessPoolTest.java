@@ -0,0 +1,268 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessEntry;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessLauncher;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessPoolTest {
+
+    private static final long CLEANUP_PERIOD = 30000;
+    private static final long TIMEOUT = 10000;
+
+    private static final String[] CMD_A = {"java", "-cp", "a.jar", "Main"};
+    private static final String[] CMD_B = {"java", "-cp", "b.jar", "Main"};
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(CLEANUP_PERIOD, 10, 5, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        // nothing is pre-forked yet
+        pool.take(CMD_A, launcher);
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        // the pool is replenished in the background
+        waitFor(() -> pool.available(CMD_A) == 1);
+
+        pool.take(CMD_A, launcher);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        // other commands don't share the processes
+        pool.take(CMD_B, launcher);
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testDeadProcess() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(CLEANUP_PERIOD, 10, 5, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        waitFor(() -> pool.available(CMD_A) == 1);
+
+        launcher.processes.forEach(Process::destroy);
+
+        pool.take(CMD_A, launcher);
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testTarget() throws Exception {
+        // one take per period and processes that live for three periods -> three processes
+        ProcessPool pool = new ProcessPool(cfg(3 * CLEANUP_PERIOD, 10, 5, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        waitFor(() -> pool.available(CMD_A) == 3);
+        assertEquals(4, launcher.processes.size());
+    }
+
+    @Test
+    public void testMaxCountPerCmd() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(10 * CLEANUP_PERIOD, 10, 2, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        waitFor(() -> pool.available(CMD_A) == 2);
+        assertEquals(3, launcher.processes.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ProcessPool pool = new ProcessPool(cfg(2 * CLEANUP_PERIOD, 3, 5, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        waitFor(() -> pool.available(CMD_A) == 2);
+
+        // the pool is full, the oldest process of the other command makes room
+        pool.take(CMD_B, launcher);
+        waitFor(() -> pool.available(CMD_B) == 2);
+
+        assertEquals(1, pool.available(CMD_A));
+        assertEquals(1, launcher.killed());
+    }
+
+    @Test
+    public void testRateDecay() throws Exception {
+        // processes expire on every maintenance, one process is kept while the command is in use
+        ProcessPool pool = new ProcessPool(cfg(1, 10, 5, 0, null), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        waitFor(() -> pool.available(CMD_A) == 1);
+        assertEquals(2, launcher.processes.size());
+
+        // rate: 0.5, the expired process is replaced
+        maintenance(pool);
+        waitFor(() -> pool.available(CMD_A) == 1);
+        assertEquals(3, launcher.processes.size());
+        assertEquals(1, launcher.killed());
+
+        // rate: 0.25
+        maintenance(pool);
+        waitFor(() -> pool.available(CMD_A) == 1);
+        assertEquals(4, launcher.processes.size());
+
+        // rate: 0.125, below the minimum, the command is no longer replenished
+        maintenance(pool);
+        assertEquals(0, pool.available(CMD_A));
+        assertEquals(4, launcher.processes.size());
+        assertEquals(3, launcher.killed());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Path statsFile = Files.createTempDirectory("test").resolve("stats.json");
+
+        ProcessPool pool = new ProcessPool(cfg(CLEANUP_PERIOD, 10, 5, 1, statsFile), new ObjectMapper());
+        FakeLauncher launcher = new FakeLauncher();
+
+        pool.take(CMD_A, launcher);
+        pool.take(CMD_A, launcher);
+        pool.take(CMD_B, launcher);
+
+        // saves the stats
+        pool.maintenance();
+        assertTrue(Files.exists(statsFile));
+
+        // a "restarted" agent warms up only the most used command
+        ProcessPool restarted = new ProcessPool(cfg(CLEANUP_PERIOD, 10, 5, 1, statsFile), new ObjectMapper());
+        FakeLauncher restartedLauncher = new FakeLauncher();
+
+        restarted.warmUp(restartedLauncher);
+        waitFor(() -> restarted.available(CMD_A) == 1);
+        assertEquals(0, restarted.available(CMD_B));
+        assertEquals(1, restartedLauncher.processes.size());
+
+        restarted.take(CMD_A, restartedLauncher);
+        assertEquals(1, restarted.getHits());
+        assertEquals(0, restarted.getMisses());
+    }
+
+    private static PreForkConfiguration cfg(long maxAge, int maxCount, int maxCountPerCmd, int warmUpCount, Path statsFile) {
+        PreForkConfiguration cfg = mock(PreForkConfiguration.class);
+        when(cfg.getMaxAge()).thenReturn(maxAge);
+        when(cfg.getMaxCount()).thenReturn(maxCount);
+        when(cfg.getMaxCountPerCmd()).thenReturn(maxCountPerCmd);
+        when(cfg.getWarmUpCount()).thenReturn(warmUpCount);
+        when(cfg.getStatsFile()).thenReturn(statsFile);
+        return cfg;
+    }
+
+    private static void maintenance(ProcessPool pool) throws InterruptedException {
+        // make sure the current processes are older than maxAge
+        Thread.sleep(10);
+        pool.maintenance();
+    }
+
+    private static void waitFor(Supplier<Boolean> condition) throws InterruptedException {
+        long t = System.currentTimeMillis();
+        while (!condition.get()) {
+            if (System.currentTimeMillis() - t > TIMEOUT) {
+                fail("Timeout");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class FakeLauncher implements ProcessLauncher {
+
+        private final List<Process> processes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ProcessEntry start(String[] cmd) {
+            Process p = new FakeProcess();
+            processes.add(p);
+            return new ProcessEntry(p, Paths.get("proc" + processes.size()));
+        }
+
+        long killed() {
+            return processes.stream().filter(p -> !p.isAlive()).count();
+        }
+    }
+
+    private static class FakeProcess extends Process {
+
+        private volatile boolean alive = true;
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            if (alive) {
+                throw new IllegalThreadStateException();
+            }
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+            alive = false;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+    }
+}
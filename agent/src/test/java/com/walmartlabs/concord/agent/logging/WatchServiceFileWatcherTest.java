@@ -0,0 +1,168 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class WatchServiceFileWatcherTest {
+
+    @Test(timeout = 10000)
+    public void testBatch() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        Files.write(dir.resolve("a.log"), "aaa".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.log"), "bbb".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("ignored.txt"), "ccc".getBytes(StandardCharsets.UTF_8));
+
+        List<Set<String>> batches = new ArrayList<>();
+        Map<String, StringBuilder> data = new HashMap<>();
+
+        WatchServiceFileWatcher.watch(dir, () -> true, 1000, p -> p.toString().endsWith(".log") ? p.getFileName().toString() : null,
+                new WatchServiceFileWatcher.BatchListener<String>() {
+
+                    @Override
+                    public boolean onNewFile(String fileName) {
+                        data.put(fileName, new StringBuilder());
+                        return true;
+                    }
+
+                    @Override
+                    public Map<String, Integer> onChanged(List<WatchServiceFileWatcher.FileChunk<String>> chunks) {
+                        Set<String> names = new HashSet<>();
+                        Map<String, Integer> result = new HashMap<>();
+                        for (WatchServiceFileWatcher.FileChunk<String> c : chunks) {
+                            names.add(c.name());
+                            data.get(c.name()).append(new String(c.bytes(), StandardCharsets.UTF_8));
+                            result.put(c.name(), c.bytes().length);
+                        }
+                        batches.add(names);
+                        return result;
+                    }
+                });
+
+        assertEquals(1, batches.size());
+        assertEquals(new HashSet<>(Arrays.asList("a.log", "b.log")), batches.get(0));
+        assertEquals("aaa", data.get("a.log").toString());
+        assertEquals("bbb", data.get("b.log").toString());
+    }
+
+    @Test(timeout = 10000)
+    public void testUntracked() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        Path a = Files.write(dir.resolve("a.log"), "aaa".getBytes(StandardCharsets.UTF_8));
+
+        WatchServiceFileWatcher.watch(dir, () -> true, 1000, p -> p.getFileName().toString(),
+                new WatchServiceFileWatcher.BatchListener<String>() {
+
+                    @Override
+                    public boolean onNewFile(String fileName) {
+                        return true;
+                    }
+
+                    @Override
+                    public Map<String, Integer> onChanged(List<WatchServiceFileWatcher.FileChunk<String>> chunks) {
+                        return Collections.singletonMap("a.log", -1);
+                    }
+                });
+
+        // untracked files are removed
+        assertFalse(Files.exists(a));
+    }
+
+    @Test(timeout = 60000)
+    public void testWatch() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+
+        Map<String, StringBuffer> data = new ConcurrentHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        // long enough for the test to time out if the changes are not detected by the WatchService
+        long maxDelay = 30000;
+
+        Thread t = new Thread(() -> {
+            try {
+                WatchServiceFileWatcher.watch(dir, stop::get, maxDelay, p -> p.toString().endsWith(".log") ? p.getFileName().toString() : null,
+                        new WatchServiceFileWatcher.BatchListener<String>() {
+
+                            @Override
+                            public boolean onNewFile(String fileName) {
+                                data.put(fileName, new StringBuffer());
+                                return true;
+                            }
+
+                            @Override
+                            public Map<String, Integer> onChanged(List<WatchServiceFileWatcher.FileChunk<String>> chunks) {
+                                Map<String, Integer> result = new HashMap<>();
+                                for (WatchServiceFileWatcher.FileChunk<String> c : chunks) {
+                                    data.get(c.name()).append(new String(c.bytes(), StandardCharsets.UTF_8));
+                                    result.put(c.name(), c.bytes().length);
+                                }
+                                return result;
+                            }
+                        });
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        t.start();
+
+        // new file
+        Path a = Files.write(dir.resolve("a.log"), "aaa".getBytes(StandardCharsets.UTF_8));
+        waitFor(() -> "aaa".equals(content(data, "a.log")));
+
+        // appended data and another new file
+        Files.write(a, "bbb".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(dir.resolve("b.log"), "ccc".getBytes(StandardCharsets.UTF_8));
+        waitFor(() -> "aaabbb".equals(content(data, "a.log")) && "ccc".equals(content(data, "b.log")));
+
+        // wake up the watcher with an ignored file, so it can check the stop condition
+        stop.set(true);
+        Files.write(dir.resolve("stop.txt"), "stop".getBytes(StandardCharsets.UTF_8));
+        t.join();
+
+        assertNull(error.get());
+        assertEquals("aaabbb", content(data, "a.log"));
+        assertEquals("ccc", content(data, "b.log"));
+    }
+
+    private static String content(Map<String, StringBuffer> data, String fileName) {
+        StringBuffer sb = data.get(fileName);
+        return sb != null ? sb.toString() : null;
+    }
+
+    private static void waitFor(Supplier<Boolean> condition) throws InterruptedException {
+        while (!condition.get()) {
+            Thread.sleep(50);
+        }
+    }
+}
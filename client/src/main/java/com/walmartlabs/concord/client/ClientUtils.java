@@ -132,6 +132,16 @@ public final class ClientUtils {
     }
 
     public static <T> ApiResponse<T> postData(ApiClient client, String path, Map<String, Object> data, Class<T> returnType) throws ApiException {
+        RequestBody body = createMultipartBody(data).build();
+        return postBody(client, path, body, returnType);
+    }
+
+    /**
+     * Sends a POST request with the specified body. Bodies of unknown length
+     * are sent using the chunked transfer encoding, i.e. the data can be
+     * written directly into the request without buffering.
+     */
+    public static <T> ApiResponse<T> postBody(ApiClient client, String path, RequestBody body, Type returnType) throws ApiException {
         List<Pair> queryParams = new ArrayList<>();
         Map<String, String> headerParams = new HashMap<>();
 
@@ -145,7 +155,6 @@ public final class ClientUtils {
         Request.Builder b = new Request.Builder().url(url);
         client.processHeaderParams(headerParams, b);
 
-        RequestBody body = createMultipartBody(data).build();
         Request request = b.method("POST", body).build();
 
         OkHttpClient ok = client.getHttpClient();
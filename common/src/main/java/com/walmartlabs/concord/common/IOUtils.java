@@ -20,9 +20,7 @@ package com.walmartlabs.concord.common;
  * =====
  */
 
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,6 +90,7 @@ public final class IOUtils {
 
         Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(src);
         e.setUnixMode(Posix.unixMode(permissions));
+        e.addExtraField(unixModeField(Posix.unixMode(permissions)));
 
         e.setSize(Files.size(src));
 
@@ -144,6 +143,57 @@ public final class IOUtils {
         }
     }
 
+    /**
+     * Unpacks a ZIP archive while reading it from the stream, without
+     * using a temporary file. The central directory is not available in this
+     * mode, so the file modes are taken from the "ASi Unix" extra fields
+     * in the local headers (see {@link #unixModeField(int)}).
+     */
+    public static void unzipStream(InputStream in, Path targetDir, CopyOption... options) throws IOException {
+        Path root = targetDir.normalize();
+
+        ZipArchiveInputStream zip = new ZipArchiveInputStream(in);
+
+        ZipArchiveEntry e;
+        while ((e = zip.getNextZipEntry()) != null) {
+            Path p = root.resolve(e.getName()).normalize();
+            if (!p.startsWith(root)) {
+                throw new IOException("Invalid archive entry: " + e.getName());
+            }
+
+            if (e.isDirectory()) {
+                Files.createDirectories(p);
+                continue;
+            }
+
+            Path parent = p.getParent();
+            if (!Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+
+            Files.copy(zip, p, options);
+
+            int unixMode = Posix.DEFAULT_UNIX_MODE;
+            ZipExtraField f = e.getExtraField(AsiExtraField.HEADER_ID);
+            if (f instanceof AsiExtraField) {
+                unixMode = ((AsiExtraField) f).getMode();
+            }
+
+            Files.setPosixFilePermissions(p, Posix.posix(unixMode));
+        }
+    }
+
+    /**
+     * Creates a ZIP extra field with the specified file mode. Unlike
+     * {@link ZipArchiveEntry#setUnixMode(int)}, the field is stored in the local
+     * file header and can be read while the archive is being streamed.
+     */
+    public static AsiExtraField unixModeField(int unixMode) {
+        AsiExtraField f = new AsiExtraField();
+        f.setMode(unixMode);
+        return f;
+    }
+
     public static void unzip(Path in, Path targetDir, CopyOption... options) throws IOException {
         unzip(in, targetDir, false, null, options);
     }
@@ -0,0 +1,183 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary format for batched appends of process log segments.
+ * A batch is a sequence of records:
+ * <pre>
+ * data:   0x01, segmentId (int64), length (int32), data
+ * status: 0x02, segmentId (int64), status (UTF, empty if not set),
+ *         warnings (int32, -1 if not set), errors (int32, -1 if not set)
+ * </pre>
+ * Data records are applied in order, status records are applied after
+ * all data records of the batch.
+ */
+public final class LogBatch {
+
+    private static final byte DATA = 1;
+    private static final byte STATUS = 2;
+
+    private final List<Data> data = new ArrayList<>();
+    private final List<Status> statuses = new ArrayList<>();
+
+    public LogBatch data(long segmentId, byte[] ab) {
+        data.add(new Data(segmentId, ab));
+        return this;
+    }
+
+    public LogBatch status(long segmentId, String status, Integer warnings, Integer errors) {
+        statuses.add(new Status(segmentId, status, warnings, errors));
+        return this;
+    }
+
+    public List<Data> data() {
+        return Collections.unmodifiableList(data);
+    }
+
+    public List<Status> statuses() {
+        return Collections.unmodifiableList(statuses);
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty() && statuses.isEmpty();
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            for (Data d : data) {
+                out.writeByte(DATA);
+                out.writeLong(d.segmentId);
+                out.writeInt(d.ab.length);
+                out.write(d.ab);
+            }
+
+            for (Status s : statuses) {
+                out.writeByte(STATUS);
+                out.writeLong(s.segmentId);
+                out.writeUTF(s.status != null ? s.status : "");
+                out.writeInt(s.warnings != null ? s.warnings : -1);
+                out.writeInt(s.errors != null ? s.errors : -1);
+            }
+        } catch (IOException e) {
+            // shouldn't happen with ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Parses a batch.
+     *
+     * @param maxDataLength max length of a single data record
+     */
+    public static LogBatch read(InputStream src, int maxDataLength) throws IOException {
+        LogBatch result = new LogBatch();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(src));
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                break;
+            }
+
+            long segmentId = in.readLong();
+            if (type == DATA) {
+                int len = in.readInt();
+                if (len < 0 || len > maxDataLength) {
+                    throw new IOException("Invalid data record length: " + len);
+                }
+
+                byte[] ab = new byte[len];
+                in.readFully(ab);
+                result.data(segmentId, ab);
+            } else if (type == STATUS) {
+                String status = in.readUTF();
+                int warnings = in.readInt();
+                int errors = in.readInt();
+                result.status(segmentId,
+                        status.isEmpty() ? null : status,
+                        warnings >= 0 ? warnings : null,
+                        errors >= 0 ? errors : null);
+            } else {
+                throw new IOException("Unknown record type: " + type);
+            }
+        }
+
+        return result;
+    }
+
+    public static final class Data {
+
+        private final long segmentId;
+        private final byte[] ab;
+
+        private Data(long segmentId, byte[] ab) { // NOSONAR
+            this.segmentId = segmentId;
+            this.ab = ab;
+        }
+
+        public long segmentId() {
+            return segmentId;
+        }
+
+        public byte[] bytes() {
+            return ab;
+        }
+    }
+
+    public static final class Status {
+
+        private final long segmentId;
+        private final String status;
+        private final Integer warnings;
+        private final Integer errors;
+
+        private Status(long segmentId, String status, Integer warnings, Integer errors) {
+            this.segmentId = segmentId;
+            this.status = status;
+            this.warnings = warnings;
+            this.errors = errors;
+        }
+
+        public long segmentId() {
+            return segmentId;
+        }
+
+        public String status() {
+            return status;
+        }
+
+        public Integer warnings() {
+            return warnings;
+        }
+
+        public Integer errors() {
+            return errors;
+        }
+    }
+}
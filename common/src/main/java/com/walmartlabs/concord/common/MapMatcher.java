@@ -20,11 +20,17 @@ package com.walmartlabs.concord.common;
  * =====
  */
 
-import java.util.Collection;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public final class MapMatcher {
 
+    private static final int MAX_CACHED_PATTERNS = 4096;
+
+    private static final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+
     public static boolean matches(Map<String, Object> data, Map<String, Object> conditions) {
         if (conditions == null || conditions.isEmpty()) {
             return true;
@@ -33,6 +39,20 @@ public final class MapMatcher {
         return compareNodes(data, conditions);
     }
 
+    /**
+     * Compiles the specified conditions into a reusable matcher.
+     * The result is equivalent to calling {@link #matches(Map, Map)} with
+     * the same conditions, but each regular expression is compiled only once,
+     * when it's first used.
+     */
+    public static Compiled compile(Map<String, Object> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return new Compiled(null);
+        }
+
+        return new Compiled(compileNode(conditions));
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     private static boolean compareNodes(Object data, Object conditions) {
         if (data == null && conditions == null) {
@@ -95,7 +115,205 @@ public final class MapMatcher {
     }
 
     private static boolean compareStringValues(String dataValue, String conditionValue) {
-        return dataValue.matches(conditionValue);
+        return getPattern(conditionValue).matcher(dataValue).matches();
+    }
+
+    private static Pattern getPattern(String regex) {
+        Pattern p = patternCache.get(regex);
+        if (p != null) {
+            return p;
+        }
+
+        if (patternCache.size() >= MAX_CACHED_PATTERNS) {
+            patternCache.clear();
+        }
+
+        return patternCache.computeIfAbsent(regex, Pattern::compile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node compileNode(Object condition) {
+        if (condition instanceof Map) {
+            Map<String, Object> m = (Map<String, Object>) condition;
+            Map<String, Node> fields = new LinkedHashMap<>(m.size());
+            m.forEach((k, v) -> fields.put(k, compileNode(v)));
+            return new ObjectNode(m, fields);
+        } else if (condition instanceof String) {
+            return new StringNode((String) condition);
+        } else if (condition instanceof Collection) {
+            Collection<Object> c = (Collection<Object>) condition;
+            List<Node> elements = new ArrayList<>(c.size());
+            c.forEach(e -> elements.add(compileNode(e)));
+            return new ArrayNode(c, elements);
+        } else {
+            return new ValueNode(condition);
+        }
+    }
+
+    /**
+     * Pre-compiled conditions. Thread-safe.
+     */
+    public static final class Compiled {
+
+        private final Node root;
+
+        private Compiled(Node root) {
+            this.root = root;
+        }
+
+        public boolean matches(Map<String, Object> data) {
+            if (root == null) {
+                return true;
+            }
+
+            return root.matches(data);
+        }
+    }
+
+    private interface Node {
+
+        boolean matches(Object data);
+    }
+
+    private static final class ObjectNode implements Node {
+
+        private final Map<String, Object> condition;
+        private final Map<String, Node> fields;
+
+        private ObjectNode(Map<String, Object> condition, Map<String, Node> fields) {
+            this.condition = condition;
+            this.fields = fields;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (!(data instanceof Map)) {
+                return compareValues(data, condition);
+            }
+
+            Map<String, Object> m = (Map<String, Object>) data;
+            for (Map.Entry<String, Node> e : fields.entrySet()) {
+                if (!e.getValue().matches(m.get(e.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static final class StringNode implements Node {
+
+        private final String condition;
+
+        // resolved on first use: the string might never be used as a regex,
+        // e.g. when it's an element of an array compared with a single value.
+        // Either a Pattern from the shared cache or a PatternSyntaxException
+        private volatile Object pattern;
+
+        private StringNode(String condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean matches(Object data) {
+            if (data == null) {
+                return pattern().matcher("").matches();
+            }
+
+            if (data instanceof String) {
+                return pattern().matcher((String) data).matches();
+            }
+
+            return compareValues(data, condition);
+        }
+
+        private Pattern pattern() {
+            Object p = pattern;
+            if (p == null) {
+                try {
+                    p = getPattern(condition);
+                } catch (PatternSyntaxException e) {
+                    p = e;
+                }
+                pattern = p;
+            }
+
+            if (p instanceof PatternSyntaxException) {
+                PatternSyntaxException e = (PatternSyntaxException) p;
+                throw new PatternSyntaxException(e.getDescription(), e.getPattern(), e.getIndex());
+            }
+
+            return (Pattern) p;
+        }
+    }
+
+    private static final class ArrayNode implements Node {
+
+        private final Collection<Object> condition;
+        private final List<Node> elements;
+
+        private ArrayNode(Collection<Object> condition, List<Node> elements) {
+            this.condition = condition;
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (!(data instanceof Collection)) {
+                // the data is used as a condition here, nothing to pre-compile
+                return matchAny(data, condition);
+            }
+
+            Collection<Object> dataElements = (Collection<Object>) data;
+            if (elements.size() > dataElements.size()) {
+                return false;
+            }
+
+            for (Node n : elements) {
+                boolean matched = false;
+                for (Object d : dataElements) {
+                    if (n.matches(d)) {
+                        matched = true;
+                        break;
+                    }
+                }
+
+                if (!matched) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static final class ValueNode implements Node {
+
+        private final Object condition;
+
+        private ValueNode(Object condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean matches(Object data) {
+            if (data == null || condition == null) {
+                return data == null && condition == null;
+            }
+
+            return compareValues(data, condition);
+        }
     }
 
     private static boolean compareValues(Object dataValue, Object conditionValue) {
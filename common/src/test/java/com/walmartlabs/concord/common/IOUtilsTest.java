@@ -23,12 +23,16 @@ package com.walmartlabs.concord.common;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -57,6 +61,28 @@ public class IOUtilsTest {
         assertTrue(Files.exists(dst.resolve("b").resolve("c.txt")));
     }
 
+    @Test
+    public void testUnzipStream() throws Exception {
+        Path src = Files.createTempDirectory("test-zip");
+        Files.write(src.resolve("a.txt"), "hello".getBytes());
+        Files.createDirectory(src.resolve("b"));
+        Path script = src.resolve("b").resolve("c.sh");
+        Files.write(script, "#!/bin/sh".getBytes());
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            IOUtils.zip(zip, src);
+        }
+
+        IOUtils.deleteRecursively(src);
+
+        Path dst = Files.createTempDirectory("test");
+        IOUtils.unzipStream(new ByteArrayInputStream(archive.toByteArray()), dst);
+        assertEquals("hello", new String(Files.readAllBytes(dst.resolve("a.txt"))));
+        assertEquals(PosixFilePermissions.fromString("rwxr-xr-x"), Files.getPosixFilePermissions(dst.resolve("b").resolve("c.sh")));
+    }
+
     @Test
     public void testCopy() throws Exception {
         Path src = Files.createTempDirectory("test");
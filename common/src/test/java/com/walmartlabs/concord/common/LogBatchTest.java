@@ -0,0 +1,64 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LogBatchTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] ab = new LogBatch()
+                .data(1, "hello".getBytes())
+                .data(2, new byte[0])
+                .status(1, "OK", 1, null)
+                .status(2, null, null, 3)
+                .toByteArray();
+
+        LogBatch b = LogBatch.read(new ByteArrayInputStream(ab), 1024);
+
+        assertEquals(2, b.data().size());
+        assertEquals(1, b.data().get(0).segmentId());
+        assertArrayEquals("hello".getBytes(), b.data().get(0).bytes());
+        assertEquals(0, b.data().get(1).bytes().length);
+
+        assertEquals(2, b.statuses().size());
+        assertEquals("OK", b.statuses().get(0).status());
+        assertEquals(Integer.valueOf(1), b.statuses().get(0).warnings());
+        assertNull(b.statuses().get(0).errors());
+        assertNull(b.statuses().get(1).status());
+        assertEquals(Integer.valueOf(3), b.statuses().get(1).errors());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMaxLength() throws Exception {
+        byte[] ab = new LogBatch()
+                .data(1, new byte[100])
+                .toByteArray();
+
+        LogBatch.read(new ByteArrayInputStream(ab), 10);
+    }
+}
@@ -57,7 +57,7 @@ import java.net.URLDecoder;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class DependencyManager {
@@ -70,6 +70,7 @@ public class DependencyManager {
     private static final long RETRY_INTERVAL = 5000;
 
     private static final String FILES_CACHE_DIR = "files";
+    private static final String RESOLVED_CACHE_DIR = "resolved";
     public static final String MAVEN_SCHEME = "mvn";
 
     private static final MavenRepository MAVEN_CENTRAL = MavenRepository.builder()
@@ -86,8 +87,13 @@ public class DependencyManager {
     private final Path cacheDir;
     private final Path localCacheDir;
     private final List<RemoteRepository> repositories;
-    private final Object mutex = new Object();
     private final RepositorySystem maven = newMavenRepositorySystem();
+    private final ResolvedSetCache resolvedSets;
+
+    // resolutions in progress, concurrent requests for the same dependencies share the result
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    private volatile ResolutionListener resolutionListener;
 
     public DependencyManager(Path cacheDir) throws IOException {
         this(cacheDir, getRepositories());
@@ -106,6 +112,20 @@ public class DependencyManager {
 
         log.info("init -> using repositories: {}", repositories);
         this.repositories = toRemote(repositories);
+
+        String repositoriesKey = this.repositories.stream()
+                .map(RemoteRepository::toString)
+                .collect(Collectors.joining(","));
+        this.resolvedSets = new ResolvedSetCache(cacheDir.resolve(RESOLVED_CACHE_DIR), repositoriesKey);
+    }
+
+    /**
+     * Sets the listener which receives the resolution time of each dependency.
+     * Only the dependencies that were actually downloaded are reported,
+     * cache hits are not.
+     */
+    public void setResolutionListener(ResolutionListener resolutionListener) {
+        this.resolutionListener = resolutionListener;
     }
 
     public Collection<DependencyEntity> resolve(Collection<URI> items) throws IOException {
@@ -113,8 +133,17 @@ public class DependencyManager {
     }
 
     public Collection<DependencyEntity> resolve(Collection<URI> items, ProgressListener listener) throws IOException {
+        Collection<DependencyEntity> cached = resolvedSets.get(items);
+        if (cached != null) {
+            log.info("resolve -> using the cached result for {} dependencies", items.size());
+            return cached;
+        }
+
         ResolveExceptionConverter exceptionConverter = new ResolveExceptionConverter(items);
-        return withRetry(RETRY_COUNT, RETRY_INTERVAL, () -> tryResolve(items), exceptionConverter, new ProgressNotifier(listener, exceptionConverter));
+        Collection<DependencyEntity> result = withRetry(RETRY_COUNT, RETRY_INTERVAL, () -> tryResolve(items), exceptionConverter, new ProgressNotifier(listener, exceptionConverter));
+
+        resolvedSets.put(items, result);
+        return result;
     }
 
     public DependencyEntity resolveSingle(URI item) throws IOException {
@@ -211,27 +240,34 @@ public class DependencyManager {
 
         Path dst = baseDir.resolve(name);
 
-        synchronized (mutex) {
+        if (!skipCache && Files.exists(dst)) {
+            log.info("resolveFile -> using a cached copy of {}...", uri);
+            return dst;
+        }
+
+        return singleFlight(dst, () -> {
+            // could've been downloaded while we were waiting
             if (!skipCache && Files.exists(dst)) {
-                log.info("resolveFile -> using a cached copy of {}...", uri);
                 return dst;
             }
 
             log.info("resolveFile -> downloading {}...", uri);
 
-            Path tmp = baseDir.resolve(name + ".tmp");
+            long t1 = System.currentTimeMillis();
+
+            // a unique name, in case another process is downloading the same file
+            Path tmp = Files.createTempFile(baseDir, name, ".tmp");
             try {
                 download(uri, tmp);
-                Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             } finally {
-                if (Files.exists(tmp)) {
-                    Files.delete(tmp);
-                }
+                Files.deleteIfExists(tmp);
             }
 
+            onResolved(uri.toString(), System.currentTimeMillis() - t1);
 
             return dst;
-        }
+        });
     }
 
     private static Path getConfigFileLocation() {
@@ -267,14 +303,14 @@ public class DependencyManager {
         req.setArtifact(dep.artifact);
         req.setRepositories(repositories);
 
-        synchronized (mutex) {
+        return singleFlight(dep.artifact.toString(), () -> {
             try {
                 ArtifactResult r = maven.resolveArtifact(session, req);
                 return r.getArtifact();
             } catch (ArtifactResolutionException e) {
                 throw new IOException(e);
             }
-        }
+        });
     }
 
     private Collection<Artifact> resolveMavenSingleDependencies(Collection<MavenDependency> deps) throws IOException {
@@ -286,26 +322,88 @@ public class DependencyManager {
     }
 
     private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
-        RepositorySystem system = newMavenRepositorySystem();
-        RepositorySystemSession session = newRepositorySystemSession(system);
+        if (deps.isEmpty()) {
+            return Collections.emptySet();
+        }
 
-        CollectRequest req = new CollectRequest();
-        req.setDependencies(deps.stream()
+        RepositorySystemSession session = newRepositorySystemSession(maven);
+
+        List<Dependency> dependencies = deps.stream()
                 .map(d -> new Dependency(d.artifact, d.scope))
-                .collect(Collectors.toList()));
+                .collect(Collectors.toList());
+
+        CollectRequest req = new CollectRequest();
+        req.setDependencies(dependencies);
         req.setRepositories(repositories);
 
         DependencyRequest dependencyRequest = new DependencyRequest(req, null);
 
-        synchronized (mutex) {
+        // the dependencies are already sorted, see tryResolve
+        String key = dependencies.stream()
+                .map(Dependency::toString)
+                .collect(Collectors.joining(","));
+
+        return singleFlight(key, () -> {
             try {
-                return system.resolveDependencies(session, dependencyRequest)
+                return maven.resolveDependencies(session, dependencyRequest)
                         .getArtifactResults().stream()
                         .map(ArtifactResult::getArtifact)
                         .collect(Collectors.toSet());
             } catch (DependencyResolutionException e) {
                 throw new IOException(e);
             }
+        });
+    }
+
+    /**
+     * Runs the specified resolution. Concurrent calls with the same key
+     * don't start a new resolution, they wait for the current one and
+     * share its result. Calls with different keys run in parallel.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T singleFlight(Object key, Resolution<T> resolution) throws IOException {
+        CompletableFuture<Object> f = new CompletableFuture<>();
+
+        CompletableFuture<Object> current = inflight.putIfAbsent(key, f);
+        if (current != null) {
+            return (T) await(current);
+        }
+
+        try {
+            T result = resolution.call();
+            f.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            f.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, f);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a dependency resolution");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void onResolved(String dependency, long duration) {
+        log.debug("onResolved -> {} resolved in {}ms", dependency, duration);
+
+        ResolutionListener l = resolutionListener;
+        if (l != null) {
+            l.onResolved(dependency, duration);
         }
     }
 
@@ -322,15 +420,35 @@ public class DependencyManager {
             }
         });
 
+        // resolution start times, used to report the resolution time of each artifact
+        // keyed by the artifact's coordinates, the resolved artifacts have their files set
+        Map<String, Long> resolving = new ConcurrentHashMap<>();
+
+        // artifacts that weren't found in the local repository
+        Set<String> downloading = ConcurrentHashMap.newKeySet();
+
         session.setRepositoryListener(new AbstractRepositoryListener() {
             @Override
             public void artifactResolving(RepositoryEvent event) {
                 log.debug("artifactResolving -> {}", event);
+                resolving.put(event.getArtifact().toString(), System.currentTimeMillis());
+            }
+
+            @Override
+            public void artifactDownloading(RepositoryEvent event) {
+                downloading.add(event.getArtifact().toString());
             }
 
             @Override
             public void artifactResolved(RepositoryEvent event) {
                 log.debug("artifactResolved -> {}", event);
+
+                String id = event.getArtifact().toString();
+                Long t1 = resolving.remove(id);
+                boolean downloaded = downloading.remove(id);
+                if (t1 != null && downloaded && event.getException() == null) {
+                    onResolved(id, System.currentTimeMillis() - t1);
+                }
             }
         });
 
@@ -363,7 +481,7 @@ public class DependencyManager {
         throw new IllegalArgumentException("Invalid dependency URL. Can't get a file name: " + uri);
     }
 
-    private static boolean shouldSkipCache(URI u) {
+    static boolean shouldSkipCache(URI u) {
         return "file".equalsIgnoreCase(u.getScheme()) || u.getPath().contains("SNAPSHOT");
     }
 
@@ -478,6 +596,11 @@ public class DependencyManager {
         }
     }
 
+    interface Resolution<T> {
+
+        T call() throws IOException;
+    }
+
     private static class ProgressNotifier implements RetryUtils.RetryListener {
 
         private final ProgressListener listener;
@@ -0,0 +1,217 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent cache of resolved dependency lists. Maps a list of dependency
+ * URIs and the repository configuration to the resolved dependencies.
+ * <p>
+ * The entries are validated by checking the existence and the size of
+ * each resolved file. Lists with SNAPSHOT versions, version ranges or
+ * non-cacheable URIs are not cached.
+ */
+class ResolvedSetCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResolvedSetCache.class);
+
+    private static final TypeReference<List<Map<String, Object>>> ENTRY_TYPE = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    private final Path dir;
+    private final String repositories;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ResolvedSetCache(Path dir, String repositories) throws IOException {
+        this.dir = dir;
+        this.repositories = repositories;
+
+        if (!Files.exists(dir)) {
+            Files.createDirectories(dir);
+        }
+    }
+
+    /**
+     * @return the cached dependencies or {@code null} if the list is not
+     * in the cache or any of the resolved files has changed.
+     */
+    Collection<DependencyEntity> get(Collection<URI> items) {
+        Path p = entryPath(items);
+        if (p == null || !Files.exists(p)) {
+            return null;
+        }
+
+        try {
+            List<Map<String, Object>> entries = objectMapper.readValue(p.toFile(), ENTRY_TYPE);
+
+            Collection<DependencyEntity> result = new HashSet<>();
+            for (Map<String, Object> e : entries) {
+                Path path = Paths.get((String) e.get("path"));
+                long size = ((Number) e.get("size")).longValue();
+                if (!Files.exists(path) || Files.size(path) != size) {
+                    log.info("get -> {} has changed, resolving again...", path);
+                    Files.deleteIfExists(p);
+                    return null;
+                }
+
+                String directLink = (String) e.get("directLink");
+                if (directLink != null) {
+                    result.add(new DependencyEntity(path, URI.create(directLink)));
+                } else {
+                    result.add(new DependencyEntity(path, (String) e.get("groupId"), (String) e.get("artifactId"), (String) e.get("version")));
+                }
+            }
+
+            return result;
+        } catch (IOException | RuntimeException e) {
+            log.warn("get -> error while reading {}: {}", p, e.getMessage());
+            return null;
+        }
+    }
+
+    void put(Collection<URI> items, Collection<DependencyEntity> deps) {
+        Path p = entryPath(items);
+        if (p == null) {
+            return;
+        }
+
+        List<Map<String, Object>> entries = new ArrayList<>(deps.size());
+        for (DependencyEntity d : deps) {
+            DependencyEntity.Artifact a = d.getArtifact();
+            if (a != null && isVolatile(a.getVersion())) {
+                // e.g. a SNAPSHOT version of a transitive dependency
+                return;
+            }
+
+            Map<String, Object> e = new HashMap<>();
+            e.put("path", d.getPath().toAbsolutePath().toString());
+
+            try {
+                e.put("size", Files.size(d.getPath()));
+            } catch (IOException ex) {
+                log.warn("put -> can't get the size of {}: {}", d.getPath(), ex.getMessage());
+                return;
+            }
+
+            if (a != null) {
+                e.put("groupId", a.getGroupId());
+                e.put("artifactId", a.getArtifactId());
+                e.put("version", a.getVersion());
+            } else {
+                e.put("directLink", d.getDirectLink().toString());
+            }
+
+            entries.add(e);
+        }
+
+        Path tmp = null;
+        try {
+            // a unique name, other processes can write the same entry
+            tmp = Files.createTempFile(dir, p.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                objectMapper.writeValue(out, entries);
+            }
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("put -> error while writing {}: {}", p, e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.warn("put -> error while removing {}: {}", tmp, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Path entryPath(Collection<URI> items) {
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+
+        for (URI i : items) {
+            if (isVolatile(i)) {
+                return null;
+            }
+        }
+
+        String key = items.stream()
+                .map(URI::toString)
+                .sorted()
+                .collect(Collectors.joining("\n"));
+
+        return dir.resolve(sha256(key + "\n" + repositories) + ".json");
+    }
+
+    private static boolean isVolatile(URI u) {
+        if (DependencyManager.shouldSkipCache(u)) {
+            return true;
+        }
+
+        if (!DependencyManager.MAVEN_SCHEME.equalsIgnoreCase(u.getScheme())) {
+            return false;
+        }
+
+        try {
+            return isVolatile(new DefaultArtifact(u.getAuthority()).getVersion());
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static boolean isVolatile(String version) {
+        return version == null
+                || version.contains("SNAPSHOT")
+                || version.startsWith("[")
+                || version.startsWith("(")
+                || version.equals("LATEST")
+                || version.equals("RELEASE");
+    }
+
+    private static String sha256(String s) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(s.getBytes(StandardCharsets.UTF_8));
+            return DatatypeConverter.printHexBinary(md.digest()).toLowerCase();
+        } catch (Exception e) {
+            throw new RuntimeException("Hash error", e);
+        }
+    }
+}
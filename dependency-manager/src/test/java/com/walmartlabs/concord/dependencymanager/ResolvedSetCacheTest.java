@@ -0,0 +1,89 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResolvedSetCacheTest {
+
+    @Test
+    public void test() throws Exception {
+        Path tmpDir = Files.createTempDirectory("test");
+        Path a = Files.write(tmpDir.resolve("a.jar"), new byte[]{1, 2, 3});
+        Path b = Files.write(tmpDir.resolve("b.jar"), new byte[]{4, 5});
+
+        ResolvedSetCache cache = new ResolvedSetCache(tmpDir.resolve("resolved"), "central");
+
+        List<URI> items = Arrays.asList(
+                new URI("mvn://com.walmartlabs.concord:a:1.0.0"),
+                new URI("https://example.com/b.jar"));
+
+        List<DependencyEntity> deps = Arrays.asList(
+                new DependencyEntity(a, "com.walmartlabs.concord", "a", "1.0.0"),
+                new DependencyEntity(b, new URI("https://example.com/b.jar")));
+
+        assertNull(cache.get(items));
+
+        cache.put(items, deps);
+
+        // the order of items doesn't matter
+        Collection<DependencyEntity> cached = cache.get(Arrays.asList(items.get(1), items.get(0)));
+        assertNotNull(cached);
+        assertEquals(2, cached.size());
+        assertTrue(cached.containsAll(deps));
+
+        // different repositories
+        assertNull(new ResolvedSetCache(tmpDir.resolve("resolved"), "other").get(items));
+
+        // a modified file invalidates the entry
+        Files.write(b, new byte[]{4, 5, 6});
+        assertNull(cache.get(items));
+    }
+
+    @Test
+    public void testVolatile() throws Exception {
+        Path tmpDir = Files.createTempDirectory("test");
+        Path a = Files.write(tmpDir.resolve("a.jar"), new byte[]{1, 2, 3});
+
+        ResolvedSetCache cache = new ResolvedSetCache(tmpDir.resolve("resolved"), "central");
+
+        for (String v : Arrays.asList("1.0.0-SNAPSHOT", "LATEST", "RELEASE")) {
+            List<URI> items = Collections.singletonList(new URI("mvn://com.walmartlabs.concord:a:" + v));
+            cache.put(items, Collections.singletonList(new DependencyEntity(a, "com.walmartlabs.concord", "a", "1.0.0")));
+            assertNull(cache.get(items));
+        }
+
+        // transitive SNAPSHOT dependencies
+        List<URI> items = Collections.singletonList(new URI("mvn://com.walmartlabs.concord:a:1.0.0"));
+        cache.put(items, Collections.singletonList(new DependencyEntity(a, "com.walmartlabs.concord", "b", "2.0.0-SNAPSHOT")));
+        assertNull(cache.get(items));
+    }
+}
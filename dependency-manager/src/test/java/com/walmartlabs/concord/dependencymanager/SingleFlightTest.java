@@ -0,0 +1,242 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private DependencyManager m;
+
+    @Before
+    public void init() throws Exception {
+        m = new DependencyManager(Files.createTempDirectory("test"), Collections.emptyList());
+    }
+
+    @Test(timeout = 30000)
+    public void testSameKey() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+
+        DependencyManager.Resolution<Object> resolution = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(proceed);
+            return new Object();
+        };
+
+        List<Object> results = Collections.synchronizedList(new ArrayList<>());
+
+        Thread first = start(() -> results.add(m.singleFlight("a", resolution)));
+        started.await();
+
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            waiters.add(start(() -> results.add(m.singleFlight("a", resolution))));
+        }
+        awaitBlocked(waiters);
+
+        proceed.countDown();
+        first.join();
+        for (Thread t : waiters) {
+            t.join();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(5, results.size());
+        for (Object r : results) {
+            assertSame(results.get(0), r);
+        }
+
+        // the next call starts a new resolution
+        m.singleFlight("a", resolution);
+        assertEquals(2, calls.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testDifferentKeys() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+
+        // each resolution waits for the other one to start
+        DependencyManager.Resolution<Object> resolution = () -> {
+            started.countDown();
+            await(started);
+            return new Object();
+        };
+
+        Thread a = start(() -> m.singleFlight("a", resolution));
+        Thread b = start(() -> m.singleFlight("b", resolution));
+        a.join();
+        b.join();
+
+        assertEquals(0, started.getCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testErrorsAreShared() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+
+        DependencyManager.Resolution<Object> resolution = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(proceed);
+            throw new IOException("test");
+        };
+
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+
+        Thread first = start(() -> m.singleFlight("a", resolution), errors);
+        started.await();
+
+        Thread waiter = start(() -> m.singleFlight("a", resolution), errors);
+        awaitBlocked(Collections.singletonList(waiter));
+
+        proceed.countDown();
+        first.join();
+        waiter.join();
+
+        assertEquals(1, calls.get());
+        assertEquals(2, errors.size());
+        for (Exception e : errors) {
+            assertTrue(e instanceof IOException);
+            assertEquals("test", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentDownloads() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/test.jar", exchange -> {
+            requests.incrementAndGet();
+            requested.countDown();
+            await(proceed);
+
+            byte[] ab = {1, 2, 3};
+            exchange.sendResponseHeaders(200, ab.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(ab);
+            }
+        });
+        server.start();
+
+        try {
+            URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/test.jar");
+
+            AtomicInteger resolved = new AtomicInteger();
+            m.setResolutionListener((dependency, duration) -> resolved.incrementAndGet());
+
+            List<Path> results = Collections.synchronizedList(new ArrayList<>());
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                threads.add(start(() -> results.add(m.resolveSingle(uri).getPath())));
+            }
+
+            // one thread is downloading, the rest are waiting for it
+            requested.await();
+            while (threads.stream().filter(t -> t.getState() == Thread.State.WAITING).count() < 7) {
+                Thread.sleep(10);
+            }
+
+            proceed.countDown();
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            assertEquals(1, requests.get());
+            assertEquals(1, resolved.get());
+            assertEquals(8, results.size());
+            for (Path p : results) {
+                assertEquals(results.get(0), p);
+                assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(p));
+            }
+
+            // cache hits are not reported
+            m.resolveSingle(uri);
+            assertEquals(1, requests.get());
+            assertEquals(1, resolved.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static Thread start(Callable<?> c) {
+        return start(c, null);
+    }
+
+    private static Thread start(Callable<?> c, List<Exception> errors) {
+        Thread t = new Thread(() -> {
+            try {
+                c.call();
+            } catch (Exception e) {
+                if (errors == null) {
+                    throw new RuntimeException(e);
+                }
+                errors.add(e);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    /**
+     * Waits until the threads are blocked waiting for the result of another resolution.
+     */
+    private static void awaitBlocked(List<Thread> threads) throws InterruptedException {
+        for (Thread t : threads) {
+            while (t.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
@@ -20,16 +20,22 @@ package com.walmartlabs.concord.runtime.common;
  * =====
  */
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.sdk.Constants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
@@ -155,6 +161,34 @@ public final class StateManager {
         }
     }
 
+    /**
+     * Same as {@link #archive(Path, Serializable, Path)}, but adds only the files
+     * that are missing in {@code previous} or have different content or permissions.
+     * The list of all files is stored in the archive as
+     * {@link Constants.Files#CHECKPOINT_MANIFEST_FILE_NAME}, so the removed files
+     * can be detected when the archive is applied on top of the previous one.
+     *
+     * @param previous file versions returned by the previous call or an empty map
+     *                 to archive all files
+     * @return the current file versions
+     */
+    public static Map<String, String> archiveDelta(Path baseDir, Serializable state, Map<String, String> previous, Path result) throws IOException {
+        saveProcessState(baseDir, state);
+
+        Map<String, String> current = new HashMap<>();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(result))) {
+            zipChanged(zip, Constants.Files.JOB_ATTACHMENTS_DIR_NAME + "/", baseDir.resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME), previous, current);
+            zipChanged(zip, Constants.Files.CONCORD_SYSTEM_DIR_NAME + "/", baseDir.resolve(Constants.Files.CONCORD_SYSTEM_DIR_NAME), previous, current);
+
+            byte[] manifest = String.join("\n", new TreeSet<>(current.keySet())).getBytes(StandardCharsets.UTF_8);
+            zip.putArchiveEntry(new ZipArchiveEntry(Constants.Files.CHECKPOINT_MANIFEST_FILE_NAME));
+            zip.write(manifest);
+            zip.closeArchiveEntry();
+        }
+
+        return current;
+    }
+
     public static void persist(Path baseDir, String storeName, Serializable object) throws IOException {
         Path storageDir = baseDir.resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME)
                 .resolve("storage"); // TODO: constants
@@ -192,6 +226,31 @@ public final class StateManager {
         IOUtils.zip(zip, name, src);
     }
 
+    private static void zipChanged(ZipArchiveOutputStream zip, String prefix, Path src, Map<String, String> previous, Map<String, String> current) throws IOException {
+        if (Files.notExists(src)) {
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(src)) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        for (Path f : files) {
+            String name = prefix + src.relativize(f).toString();
+
+            // the file's content and permissions
+            String version = MoreFiles.asByteSource(f).hash(Hashing.sha256()).toString()
+                    + ":" + Posix.unixMode(Files.getPosixFilePermissions(f));
+
+            current.put(name, version);
+
+            if (!version.equals(previous.get(name))) {
+                IOUtils.zipFile(zip, f, name);
+            }
+        }
+    }
+
     private StateManager() {
     }
 }
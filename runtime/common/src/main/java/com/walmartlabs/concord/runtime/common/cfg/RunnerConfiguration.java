@@ -122,6 +122,16 @@ public interface RunnerConfiguration {
         return DockerConfiguration.builder().build();
     }
 
+    /**
+     * If {@code true} the checkpoints after the first one contain only the files
+     * changed since the previous checkpoint. Requires a server that supports
+     * delta checkpoints.
+     */
+    @Value.Default
+    default boolean deltaCheckpoints() {
+        return false;
+    }
+
     static ImmutableRunnerConfiguration.Builder builder() {
         return ImmutableRunnerConfiguration.builder();
     }
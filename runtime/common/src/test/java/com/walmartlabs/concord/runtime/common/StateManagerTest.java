@@ -0,0 +1,108 @@
+package com.walmartlabs.concord.runtime.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.io.ByteStreams;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.TemporaryPath;
+import com.walmartlabs.concord.sdk.Constants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class StateManagerTest {
+
+    @Test
+    public void testArchiveDelta() throws Exception {
+        try (TemporaryPath workDir = IOUtils.tempDir("test");
+             TemporaryPath archive = IOUtils.tempFile("test", ".zip")) {
+
+            Path attachmentsDir = workDir.path().resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
+            Files.createDirectories(attachmentsDir);
+            Files.write(attachmentsDir.resolve("a.txt"), "a".getBytes());
+            Files.write(attachmentsDir.resolve("b.txt"), "b".getBytes());
+
+            // full
+            // ---
+
+            Map<String, String> files = StateManager.archiveDelta(workDir.path(), "state", Collections.emptyMap(), archive.path());
+
+            Set<String> expectedFiles = new HashSet<>(Arrays.asList(
+                    "_attachments/a.txt",
+                    "_attachments/b.txt",
+                    "_attachments/_state/instance"));
+
+            assertEquals(expectedFiles, files.keySet());
+            assertEquals(expectedFiles, entries(archive.path()));
+            assertEquals(expectedFiles, manifest(archive.path()));
+
+            // delta
+            // ---
+
+            Files.write(attachmentsDir.resolve("a.txt"), "aa".getBytes());
+            Files.delete(attachmentsDir.resolve("b.txt"));
+            Files.write(attachmentsDir.resolve("c.txt"), "c".getBytes());
+
+            files = StateManager.archiveDelta(workDir.path(), "state", files, archive.path());
+
+            expectedFiles = new HashSet<>(Arrays.asList(
+                    "_attachments/a.txt",
+                    "_attachments/c.txt",
+                    "_attachments/_state/instance"));
+
+            assertEquals(expectedFiles, files.keySet());
+            assertEquals(new HashSet<>(Arrays.asList("_attachments/a.txt", "_attachments/c.txt")), entries(archive.path()));
+            assertEquals(expectedFiles, manifest(archive.path()));
+        }
+    }
+
+    private static Set<String> entries(Path archive) throws Exception {
+        Set<String> result = new HashSet<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipArchiveEntry e : Collections.list(zip.getEntries())) {
+                if (!e.getName().equals(Constants.Files.CHECKPOINT_MANIFEST_FILE_NAME)) {
+                    result.add(e.getName());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> manifest(Path archive) throws Exception {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipArchiveEntry e = zip.getEntry(Constants.Files.CHECKPOINT_MANIFEST_FILE_NAME);
+            assertNotNull(e);
+
+            try (InputStream in = zip.getInputStream(e)) {
+                String s = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+                return new HashSet<>(Arrays.asList(s.split("\n")));
+            }
+        }
+    }
+}
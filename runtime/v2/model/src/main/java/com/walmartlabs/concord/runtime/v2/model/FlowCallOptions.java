@@ -50,6 +50,13 @@ public interface FlowCallOptions extends StepOptions {
     @Nullable
     WithItems withItems();
 
+    /**
+     * Max number of {@code withItems} iterations executed in parallel.
+     * If not specified, the iterations are executed sequentially.
+     */
+    @Nullable
+    Integer parallelism();
+
     @Nullable
     Retry retry();
 
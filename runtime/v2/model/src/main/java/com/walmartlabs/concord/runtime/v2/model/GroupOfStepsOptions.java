@@ -46,6 +46,13 @@ public interface GroupOfStepsOptions extends StepOptions {
     @Nullable
     WithItems withItems();
 
+    /**
+     * Max number of {@code withItems} iterations executed in parallel.
+     * If not specified, the iterations are executed sequentially.
+     */
+    @Nullable
+    Integer parallelism();
+
     static ImmutableGroupOfStepsOptions.Builder builder() {
         return ImmutableGroupOfStepsOptions.builder();
     }
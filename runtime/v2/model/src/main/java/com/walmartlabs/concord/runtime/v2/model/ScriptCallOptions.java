@@ -48,6 +48,13 @@ public interface ScriptCallOptions extends StepOptions {
     @Nullable
     WithItems withItems();
 
+    /**
+     * Max number of {@code withItems} iterations executed in parallel.
+     * If not specified, the iterations are executed sequentially.
+     */
+    @Nullable
+    Integer parallelism();
+
     @Nullable
     Retry retry();
 
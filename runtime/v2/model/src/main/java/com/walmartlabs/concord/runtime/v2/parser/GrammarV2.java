@@ -63,6 +63,7 @@ public final class GrammarV2 {
 
     public static final Parser<Atom, Serializable> anyVal = value.map(YamlValue::getValue);
     public static final Parser<Atom, Integer> intVal = value.map(v -> v.getValue(YamlValueType.INT));
+    public static final Parser<Atom, Integer> positiveIntVal = value.map(GrammarV2::positiveIntConverter);
     public static final Parser<Atom, String> stringVal = value.map(v -> v.getValue(YamlValueType.STRING));
     public static final Parser<Atom, Boolean> booleanVal = value.map(v -> v.getValue(YamlValueType.BOOLEAN));
     public static final Parser<Atom, Map<String, Serializable>> mapVal = value.map(v -> v.getValue(YamlValueType.OBJECT));
@@ -282,6 +283,19 @@ public final class GrammarV2 {
                 .build();
     }
 
+    private static Integer positiveIntConverter(YamlValue v) {
+        Integer i = v.getValue(YamlValueType.INT);
+        if (i > 0) {
+            return i;
+        }
+
+        throw InvalidValueException.builder()
+                .location(v.getLocation())
+                .actual(i)
+                .expected("positive integer")
+                .build();
+    }
+
     private static List<String> stringOrArrayConverter(YamlValue v) {
         if (v.getType() == YamlValueType.STRING) {
             return Collections.singletonList(v.getValue());
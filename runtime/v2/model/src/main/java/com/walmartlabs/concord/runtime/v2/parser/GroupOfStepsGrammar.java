@@ -38,6 +38,7 @@ public final class GroupOfStepsGrammar {
                             optional("out", stringOrArrayVal.map(o::out)),
                             optional("error", stepsVal.map(o::errorSteps)),
                             optional("withItems", nonNullVal.map(v -> o.withItems(WithItems.of(v)))),
+                            optional("parallelism", positiveIntVal.map(o::parallelism)),
                             optional("meta", mapVal.map(o::meta))
                     ))
                     .map(ImmutableGroupOfStepsOptions.Builder::build);
@@ -42,6 +42,7 @@ public final class ScriptGrammar {
                             optional("in", mapVal.map(o::input)),
                             optional("meta", mapVal.map(o::meta)),
                             optional("withItems", nonNullVal.map(v -> o.withItems(WithItems.of(v)))),
+                            optional("parallelism", positiveIntVal.map(o::parallelism)),
                             optional("retry", retryVal.map(o::retry)),
                             optional("error", stepsVal.map(o::errorSteps))
                     ))
@@ -51,6 +51,7 @@ public final class TaskGrammar {
                         optional("out", stringVal.map(o::out)),
                         optional("meta", mapVal.map(o::putAllMeta)),
                         optional("withItems", nonNullVal.map(v -> o.withItems(WithItems.of(v)))),
+                        optional("parallelism", positiveIntVal.map(o::parallelism)),
                         optional("retry", retryVal.map(o::retry)),
                         optional("error", stepsVal.map(o::errorSteps))
                 ))
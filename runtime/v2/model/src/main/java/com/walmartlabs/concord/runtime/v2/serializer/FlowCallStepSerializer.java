@@ -62,6 +62,10 @@ public class FlowCallStepSerializer extends StdSerializer<FlowCall> {
             gen.writeObjectField("withItems", options.withItems());
         }
 
+        if (options.parallelism() != null) {
+            gen.writeObjectField("parallelism", options.parallelism());
+        }
+
         if (options.retry() != null) {
             gen.writeObjectField("retry", options.retry());
         }
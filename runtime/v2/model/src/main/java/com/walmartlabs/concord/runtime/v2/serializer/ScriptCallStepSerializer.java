@@ -66,6 +66,10 @@ public class ScriptCallStepSerializer extends StdSerializer<ScriptCall> {
             gen.writeObjectField("withItems", options.withItems());
         }
 
+        if (options.parallelism() != null) {
+            gen.writeObjectField("parallelism", options.parallelism());
+        }
+
         if (options.retry() != null) {
             gen.writeObjectField("retry", options.retry());
         }
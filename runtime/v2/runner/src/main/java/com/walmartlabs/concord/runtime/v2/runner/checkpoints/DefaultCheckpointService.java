@@ -38,6 +38,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -50,30 +51,52 @@ public class DefaultCheckpointService implements CheckpointService {
     private final WorkingDirectory workingDirectory;
     private final ApiClient apiClient;
     private final ApiConfiguration apiConfiguration;
+    private final boolean deltaCheckpoints;
+
+    // the previous checkpoint and its files, used to create delta checkpoints
+    private UUID parentId;
+    private Map<String, String> parentFiles = Collections.emptyMap();
 
     @Inject
     public DefaultCheckpointService(InstanceId instanceId, WorkingDirectory workingDirectory, RunnerConfiguration configuration, ApiClient apiClient) {
         this.instanceId = instanceId;
         this.workingDirectory = workingDirectory;
         this.apiConfiguration = configuration.api();
+        this.deltaCheckpoints = configuration.deltaCheckpoints();
         this.apiClient = apiClient;
     }
 
     @Override
-    public void create(String name, Runtime runtime, ProcessSnapshot snapshot) {
+    public synchronized void create(String name, Runtime runtime, ProcessSnapshot snapshot) {
         UUID checkpointId = UUID.randomUUID();
 
         Path checkpointArchive = null;
         try {
-            checkpointArchive = archiveState(checkpointId, name, snapshot);
+            checkpointArchive = checkpointArchive(checkpointId, name);
 
             Map<String, Object> data = new HashMap<>();
             data.put("id", checkpointId);
             data.put("name", name);
             data.put("data", checkpointArchive);
 
-            uploadCheckpoint(instanceId.getValue(), data);
+            if (deltaCheckpoints) {
+                Map<String, String> files = StateManager.archiveDelta(workingDirectory.getValue(), snapshot, parentFiles, checkpointArchive);
+                if (parentId != null) {
+                    data.put("parentId", parentId);
+                }
+
+                uploadCheckpoint(instanceId.getValue(), data);
+
+                parentId = checkpointId;
+                parentFiles = files;
+            } else {
+                StateManager.archive(workingDirectory.getValue(), snapshot, checkpointArchive);
+                uploadCheckpoint(instanceId.getValue(), data);
+            }
         } catch (Exception e) {
+            // the next checkpoint will be a full one
+            parentId = null;
+            parentFiles = Collections.emptyMap();
             throw new RuntimeException("Checkpoint upload error", e);
         } finally {
             if (checkpointArchive != null) {
@@ -88,15 +111,13 @@ public class DefaultCheckpointService implements CheckpointService {
         log.info("create ['{}'] -> done", name);
     }
 
-    private Path archiveState(UUID checkpointId, String checkpointName, ProcessSnapshot snapshot) throws IOException {
+    private Path checkpointArchive(UUID checkpointId, String checkpointName) throws IOException {
         Path checkpointDir = workingDirectory.getValue().resolve(Constants.Files.JOB_CHECKPOINTS_DIR_NAME);
         if (!Files.exists(checkpointDir)) {
             Files.createDirectories(checkpointDir);
         }
 
-        Path result = checkpointDir.resolve(checkpointId + "_" + checkpointName + ".zip");
-        StateManager.archive(workingDirectory.getValue(), snapshot, result);
-        return result;
+        return checkpointDir.resolve(checkpointId + "_" + checkpointName + ".zip");
     }
 
     private void uploadCheckpoint(UUID instanceId, Map<String, Object> data) throws ApiException {
@@ -52,7 +52,7 @@ public final class ScriptCallCompiler implements StepCompiler<ScriptCall> {
 
         WithItems withItems = options.withItems();
         if (withItems != null) {
-            cmd = new WithItemsWrapper(cmd, withItems, Collections.emptyList());
+            cmd = new WithItemsWrapper(cmd, withItems, options.parallelism(), Collections.emptyList());
         }
 
         List<Step> errorSteps = options.errorSteps();
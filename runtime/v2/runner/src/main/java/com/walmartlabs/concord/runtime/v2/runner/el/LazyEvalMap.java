@@ -20,7 +20,9 @@ package com.walmartlabs.concord.runtime.v2.runner.el;
  * =====
  */
 
+import javax.el.ELResolver;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class LazyEvalMap implements Map<String, Object> {
@@ -33,6 +35,8 @@ public class LazyEvalMap implements Map<String, Object> {
     private final Map<String, Object> originalValues;
     private final Map<String, Object> evaluatedValues = new LinkedHashMap<>();
 
+    private ELResolver resolver;
+
     public LazyEvalMap(LazyExpressionEvaluator evaluator,
                        LazyEvalContext evalContext,
                        Map<String, Object> nonEvaluatedItems) {
@@ -118,6 +122,17 @@ public class LazyEvalMap implements Map<String, Object> {
         return result;
     }
 
+    /**
+     * Returns the resolver for the values evaluated in the scope of this map.
+     * The resolver is created once and reused for all values.
+     */
+    ELResolver resolver(Function<LazyEvalContext, ELResolver> factory) {
+        if (resolver == null) {
+            resolver = factory.apply(evalContext);
+        }
+        return resolver;
+    }
+
     private Object evalValue(String key) {
         if (evaluatedValues.containsKey(key)) {
             return evaluatedValues.get(key);
@@ -20,6 +20,8 @@ package com.walmartlabs.concord.runtime.v2.runner.el;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.AllVariablesFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.functions.HasVariableFunction;
 import com.walmartlabs.concord.runtime.v2.runner.el.resolvers.BeanELResolver;
@@ -39,13 +41,32 @@ import static com.walmartlabs.concord.runtime.v2.runner.el.ThreadLocalEvalContex
  */
 public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
+    private static final int EXPRESSION_CACHE_SIZE = 4096;
+
     private final ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
     private final TaskProviders taskProviders;
     private final FunctionMapper functionMapper;
 
+    // parsed expressions don't depend on the evaluation context
+    // (the function mapper is the same for all expressions), so they can be reused
+    private final Cache<ExpressionKey, ValueExpression> expressionCache;
+
+    // stateless resolvers, shared between all evaluations
+    private final ELResolver streamResolver;
+    private final ELResolver staticFieldResolver = new StaticFieldELResolver();
+    private final ELResolver mapResolver = new MapELResolver();
+    private final ELResolver resourceBundleResolver = new ResourceBundleELResolver();
+    private final ELResolver listResolver = new ListELResolver();
+    private final ELResolver arrayResolver = new ArrayELResolver();
+    private final ELResolver beanResolver = new BeanELResolver();
+
     public LazyExpressionEvaluator(TaskProviders taskProviders) {
         this.taskProviders = taskProviders;
         this.functionMapper = createFunctionMapper();
+        this.expressionCache = CacheBuilder.newBuilder()
+                .maximumSize(EXPRESSION_CACHE_SIZE)
+                .build();
+        this.streamResolver = expressionFactory.getStreamELResolver();
     }
 
     @Override
@@ -123,7 +144,7 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
     @Override
     public void setValue(EvalContext ctx, String expr, Object value) {
-        ELResolver resolver = createResolver(LazyEvalContext.of(ctx, null), expressionFactory);
+        ELResolver resolver = createResolver(LazyEvalContext.of(ctx, null));
 
         StandardELContext sc = new StandardELContext(expressionFactory);
         sc.putContext(ExpressionFactory.class, expressionFactory);
@@ -134,7 +155,9 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     }
 
     private <T> T evalExpr(LazyEvalContext ctx, String expr, Class<T> type) {
-        ELResolver resolver = createResolver(ctx, expressionFactory);
+        // all values of a map are evaluated using the same context, no need to create the resolvers for each value
+        LazyEvalMap scope = ctx.scope();
+        ELResolver resolver = scope != null ? scope.resolver(this::createResolver) : createResolver(ctx);
 
         StandardELContext sc = new StandardELContext(expressionFactory) {
             @Override
@@ -149,7 +172,7 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         };
         sc.putContext(ExpressionFactory.class, expressionFactory);
 
-        ValueExpression x = expressionFactory.createValueExpression(sc, expr, type);
+        ValueExpression x = parseExpr(sc, expr, type);
         try {
             Object v = withEvalContext(ctx, () -> x.getValue(sc));
             return type.cast(v);
@@ -162,12 +185,24 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         }
     }
 
+    private ValueExpression parseExpr(ELContext sc, String expr, Class<?> type) {
+        ExpressionKey key = new ExpressionKey(expr, type);
+
+        ValueExpression result = expressionCache.getIfPresent(key);
+        if (result == null) {
+            // invalid expressions are not cached, the parser throws an exception
+            result = expressionFactory.createValueExpression(sc, expr, type);
+            expressionCache.put(key, result);
+        }
+
+        return result;
+    }
+
     /**
      * Based on the original code from {@link StandardELContext#getELResolver()}.
      * Creates a {@link ELResolver} instance with "sub-resolvers" in the original order.
      */
-    private ELResolver createResolver(LazyEvalContext evalContext,
-                                      ExpressionFactory expressionFactory) {
+    private ELResolver createResolver(LazyEvalContext evalContext) {
 
         CompositeELResolver r = new CompositeELResolver();
         if (evalContext.scope() != null) {
@@ -177,16 +212,16 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         if (evalContext.context() != null) {
             r.add(new TaskResolver(evalContext.context(), taskProviders));
         }
-        r.add(expressionFactory.getStreamELResolver());
-        r.add(new StaticFieldELResolver());
-        r.add(new MapELResolver());
-        r.add(new ResourceBundleELResolver());
-        r.add(new ListELResolver());
-        r.add(new ArrayELResolver());
+        r.add(streamResolver);
+        r.add(staticFieldResolver);
+        r.add(mapResolver);
+        r.add(resourceBundleResolver);
+        r.add(listResolver);
+        r.add(arrayResolver);
         if (evalContext.context() != null) {
             r.add(new TaskMethodResolver(evalContext.context()));
         }
-        r.add(new BeanELResolver());
+        r.add(beanResolver);
         return r;
     }
 
@@ -200,4 +235,32 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     private static boolean hasExpression(String s) {
         return s.contains("${");
     }
+
+    private static final class ExpressionKey {
+
+        private final String expr;
+        private final Class<?> type;
+
+        private ExpressionKey(String expr, Class<?> type) {
+            this.expr = expr;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExpressionKey that = (ExpressionKey) o;
+            return expr.equals(that.expr) && type.equals(that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expr, type);
+        }
+    }
 }
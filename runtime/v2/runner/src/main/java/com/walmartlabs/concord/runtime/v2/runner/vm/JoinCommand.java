@@ -34,6 +34,11 @@ public class JoinCommand implements Command {
     private static final Logger log = LoggerFactory.getLogger(JoinCommand.class);
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Max time to wait for a status change before re-checking the children.
+     */
+    private static final long MAX_WAIT_TIME = 1000;
+
     private final Collection<ThreadId> ids;
 
     public JoinCommand(Collection<ThreadId> ids) {
@@ -44,15 +49,15 @@ public class JoinCommand implements Command {
     public void eval(Runtime runtime, State state, ThreadId threadId) {
         // Here's a very dumb but working solution to the problem
         // of monitoring the child "threads" state - just a loop
-        // waiting on a monitor . On each iteration it decides whether
+        // waiting on a monitor. The state wakes the loop up on every
+        // thread status change. On each iteration it decides whether
         // the join command can be removed from the stack (and thus
         // continuing the execution) or not.
         // We could've used futures instead, but it's way more
         // complicated - especially when suspend/resume are involved.
 
+        Map<ThreadId, ThreadStatus> status = state.threadStatus();
         while (true) {
-            Map<ThreadId, ThreadStatus> status = state.threadStatus();
-
             boolean allDone = status.entrySet().stream()
                     .map(e -> ids.contains(e.getKey()) ? e.getValue() : ThreadStatus.DONE)
                     .allMatch(e -> e == ThreadStatus.DONE);
@@ -86,11 +91,12 @@ public class JoinCommand implements Command {
                         .collect(Collectors.toList()));
             }
 
-            // some children are still running, wait for a bit and then check again
+            // some children are still running, wait for any of them to change the status
             try {
-                Thread.sleep(1000); // a "good enough™" value
+                status = state.awaitStatusChange(status, MAX_WAIT_TIME);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                status = state.threadStatus();
             }
         }
     }
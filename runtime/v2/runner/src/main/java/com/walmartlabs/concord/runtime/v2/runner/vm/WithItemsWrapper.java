@@ -37,6 +37,11 @@ import java.util.stream.Collectors;
  * Wraps a command into a loop specified by {@code withItems} option.
  * Creates a new call frame and keeps the item list, the current item
  * and the index as frame-local variables.
+ * <p/>
+ * If {@code parallelism} is specified, the items are processed in batches
+ * of up to {@code parallelism} items. Each item of a batch is executed in
+ * a separate thread, the next batch starts after all threads of the current
+ * batch are finished.
  */
 public class WithItemsWrapper implements Command {
 
@@ -49,11 +54,13 @@ public class WithItemsWrapper implements Command {
 
     private final Command cmd;
     private final WithItems withItems;
+    private final Integer parallelism;
     private final List<String> outVariables;
 
-    public WithItemsWrapper(Command cmd, WithItems withItems, List<String> outVariables) {
+    public WithItemsWrapper(Command cmd, WithItems withItems, Integer parallelism, List<String> outVariables) {
         this.cmd = cmd;
         this.withItems = withItems;
+        this.parallelism = parallelism;
         this.outVariables = outVariables;
     }
 
@@ -115,6 +122,11 @@ public class WithItemsWrapper implements Command {
             throw new IllegalStateException("Can't use non-serializable values in 'withItems': " + item + " (" + item.getClass() + ")");
         }
 
+        if (parallelism != null && parallelism > 1) {
+            evalParallel(state, threadId, items);
+            return;
+        }
+
         Frame loop = Frame.builder()
                 .nonRoot()
                 .build();
@@ -138,6 +150,28 @@ public class WithItemsWrapper implements Command {
         state.pushFrame(threadId, cmdFrame);
     }
 
+    private void evalParallel(State state, ThreadId threadId, ArrayList<Object> items) {
+        List<String> outVars = outVariables.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // results are stored by the item's index, so the order of "out" values
+        // is the same as in the sequential mode
+        Frame targetFrame = VMUtils.assertNearestRoot(state, threadId);
+        for (String v : outVars) {
+            VMUtils.putLocal(targetFrame, v, new ArrayList<>(Collections.nCopies(items.size(), null)));
+        }
+
+        Frame loop = Frame.builder()
+                .nonRoot()
+                .build();
+
+        loop.setLocal(CURRENT_ITEMS, items);
+        loop.push(new ParallelWithItemsNext(cmd, parallelism, 0, outVars, targetFrame));
+
+        state.pushFrame(threadId, loop);
+    }
+
     public static class WithItemsNext implements Command {
 
         private static final long serialVersionUID = 1L;
@@ -183,6 +217,129 @@ public class WithItemsWrapper implements Command {
         }
     }
 
+    /**
+     * Forks a thread for each item of the next batch and waits for them
+     * to finish using {@link JoinCommand}.
+     */
+    public static class ParallelWithItemsNext implements Command {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Command cmd;
+        private final int parallelism;
+        private final int fromIndex;
+        private final List<String> outVariables;
+        private final Frame targetFrame;
+
+        public ParallelWithItemsNext(Command cmd, int parallelism, int fromIndex, List<String> outVariables, Frame targetFrame) {
+            this.cmd = cmd;
+            this.parallelism = parallelism;
+            this.fromIndex = fromIndex;
+            this.outVariables = outVariables;
+            this.targetFrame = targetFrame;
+        }
+
+        @Override
+        public void eval(Runtime runtime, State state, ThreadId threadId) {
+            Frame loop = state.peekFrame(threadId);
+            loop.pop();
+
+            List<Serializable> items = VMUtils.assertLocal(state, threadId, CURRENT_ITEMS);
+            if (fromIndex >= items.size()) {
+                // end of the line, do nothing
+                return;
+            }
+
+            int toIndex = Math.min(fromIndex + parallelism, items.size());
+
+            // next batch
+            loop.push(new ParallelWithItemsNext(cmd, parallelism, toIndex, outVariables, targetFrame));
+
+            List<ThreadId> forkIds = new ArrayList<>(toIndex - fromIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                forkIds.add(state.nextThreadId());
+            }
+
+            loop.push(new JoinCommand(forkIds));
+
+            // push the forks in reverse, so the threads are started in the item order
+            for (int i = toIndex - 1; i >= fromIndex; i--) {
+                Command collect = new SetResultCommand(outVariables, i, targetFrame);
+                Command setItem = new SetCurrentItemCommand(outVariables, i, items.get(i));
+                loop.push(new ForkCommand(forkIds.get(i - fromIndex), collect, cmd, setItem));
+            }
+        }
+    }
+
+    /**
+     * Sets the current item and its index as local variables of the fork's frame.
+     */
+    private static class SetCurrentItemCommand implements Command {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> outVariables;
+        private final int index;
+        private final Serializable item;
+
+        private SetCurrentItemCommand(List<String> outVariables, int index, Serializable item) {
+            this.outVariables = outVariables;
+            this.index = index;
+            this.item = item;
+        }
+
+        @Override
+        public void eval(Runtime runtime, State state, ThreadId threadId) {
+            Frame frame = state.peekFrame(threadId);
+            frame.pop();
+
+            frame.setLocal(CURRENT_INDEX, index);
+            frame.setLocal(CURRENT_ITEM, item);
+
+            // the result lists were copied from the parent thread, reset them
+            // so the iterations without results produce null values
+            for (String v : outVariables) {
+                frame.setLocal(v, null);
+            }
+        }
+    }
+
+    /**
+     * Stores values of the specified variables into list variables in the target frame
+     * using the item's index.
+     */
+    private static class SetResultCommand implements Command {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> variables;
+        private final int index;
+        private final Frame targetFrame;
+
+        private SetResultCommand(List<String> variables, int index, Frame targetFrame) {
+            this.variables = variables;
+            this.index = index;
+            this.targetFrame = targetFrame;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void eval(Runtime runtime, State state, ThreadId threadId) {
+            Frame frame = state.peekFrame(threadId);
+            frame.pop();
+
+            for (String v : variables) {
+                ArrayList<Serializable> results = (ArrayList<Serializable>) targetFrame.getLocal(v);
+                Serializable result = frame.hasLocal(v) ? frame.getLocal(v) : null;
+
+                // multiple threads update the same list
+                synchronized (results) {
+                    results.set(index, result);
+                }
+            }
+        }
+    }
+
     private static class PrepareOutVariables implements Command {
 
         private static final long serialVersionUID = 1L;
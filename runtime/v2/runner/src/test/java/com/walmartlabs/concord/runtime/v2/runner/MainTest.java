@@ -514,6 +514,20 @@ public class MainTest {
         assertLog(log, ".*result: \\[10, 20, 30\\].*");
     }
 
+    @Test
+    public void testParallelWithItems() throws Exception {
+        deploy("parallelWithItems");
+
+        save(ProcessConfiguration.builder()
+                .build());
+
+        byte[] log = run();
+        for (int i = 1; i < 6; i++) {
+            assertLog(log, ".*item: " + i + ".*");
+        }
+        assertLog(log, ".*result: \\[10, 20, 30, 40, 50\\].*");
+    }
+
     @Test
     public void testUnknownMethod() throws Exception {
         deploy("unknownMethod");
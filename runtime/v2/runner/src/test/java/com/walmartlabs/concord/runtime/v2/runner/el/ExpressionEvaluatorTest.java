@@ -371,6 +371,31 @@ public class ExpressionEvaluatorTest {
         assertEquals(vars, result);
     }
 
+    @Test
+    public void testCachedExpressions() {
+        String str = "${x + 1}";
+
+        LazyExpressionEvaluator ee = new LazyExpressionEvaluator(new TaskProviders());
+
+        // same expression, different variables
+        // ---
+        assertEquals(2L, ee.eval(global(Collections.singletonMap("x", 1)), str, Object.class));
+        assertEquals(3L, ee.eval(global(Collections.singletonMap("x", 2)), str, Object.class));
+
+        // same expression, different expected type
+        // ---
+        assertEquals("3", ee.eval(global(Collections.singletonMap("x", 2)), str, String.class));
+
+        // same expression in different scopes
+        // ---
+        Map<Object, Object> input = map(
+                "x", 10,
+                "y", str);
+
+        Map<Object, Object> output = new DefaultExpressionEvaluator(new TaskProviders()).evalAsMap(scope(Collections.emptyMap()), input);
+        assertEquals(11L, output.get("y"));
+    }
+
     private static EvalContext global(Map<String, Object> vars) {
         return EvalContextFactory.global(new SingleFrameContext(vars));
     }
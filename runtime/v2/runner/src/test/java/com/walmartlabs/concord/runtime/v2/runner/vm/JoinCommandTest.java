@@ -0,0 +1,73 @@
+package com.walmartlabs.concord.runtime.v2.runner.vm;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.svm.*;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class JoinCommandTest {
+
+    @Test(timeout = 30000)
+    public void testWakeUpOnStatusChange() throws Exception {
+        State state = new InMemoryState(Frame.builder()
+                .root()
+                .build());
+
+        ThreadId parentId = state.getRootThreadId();
+        ThreadId childId = state.nextThreadId();
+        state.fork(parentId, childId);
+        state.setStatus(parentId, ThreadStatus.READY);
+
+        JoinCommand cmd = new JoinCommand(Collections.singletonList(childId));
+        state.peekFrame(parentId).push(cmd);
+
+        AtomicLong doneAt = new AtomicLong();
+        Thread parent = new Thread(() -> {
+            cmd.eval(null, state, parentId);
+            doneAt.set(System.nanoTime());
+        });
+        parent.start();
+
+        // wait until the join is waiting for the child
+        while (parent.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(parent.isAlive());
+            Thread.sleep(10);
+        }
+
+        long changedAt = System.nanoTime();
+        state.setStatus(childId, ThreadStatus.DONE);
+
+        parent.join();
+
+        // the join must proceed right away, not after the poll timeout (1s)
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(doneAt.get() - changedAt);
+        assertTrue("took " + elapsed + "ms", elapsed < 500);
+
+        // the join command is removed from the stack
+        assertNull(state.peekFrame(parentId).peek());
+    }
+}
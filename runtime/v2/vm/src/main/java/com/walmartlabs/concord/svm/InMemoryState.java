@@ -118,6 +118,9 @@ public class InMemoryState implements Serializable, State {
     public void setStatus(ThreadId threadId, ThreadStatus status) {
         synchronized (this) {
             threadStatus.put(threadId, status);
+
+            // wake up the threads waiting in awaitStatusChange
+            notifyAll();
         }
     }
 
@@ -154,6 +157,23 @@ public class InMemoryState implements Serializable, State {
         }
     }
 
+    @Override
+    public Map<ThreadId, ThreadStatus> awaitStatusChange(Map<ThreadId, ThreadStatus> snapshot, long timeoutMs) throws InterruptedException {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (threadStatus.equals(snapshot)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                wait(remaining);
+            }
+
+            return new HashMap<>(threadStatus);
+        }
+    }
+
     @Override
     public ThreadId nextThreadId() {
         synchronized (this) {
@@ -237,6 +257,8 @@ public class InMemoryState implements Serializable, State {
                         eventRefs.remove(k);
                         children.remove(k);
                     });
+
+            notifyAll();
         }
     }
 }
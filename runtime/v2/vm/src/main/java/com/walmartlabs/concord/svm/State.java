@@ -81,6 +81,12 @@ public interface State extends Serializable {
      */
     Map<ThreadId, ThreadStatus> threadStatus();
 
+    /**
+     * Waits until the thread statuses differ from the specified snapshot
+     * or until the timeout expires. Returns a new snapshot of the thread statuses.
+     */
+    Map<ThreadId, ThreadStatus> awaitStatusChange(Map<ThreadId, ThreadStatus> snapshot, long timeoutMs) throws InterruptedException;
+
     /**
      * Returns a next thread ID. Unique per {@link State} instance.
      */
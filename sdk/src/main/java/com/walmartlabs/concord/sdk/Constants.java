@@ -445,6 +445,11 @@ public class Constants {
          */
         public static final String CHECKPOINT_META_FILE_NAME = ".checkpoint";
 
+        /**
+         * File which contains the list of all files of a delta checkpoint.
+         */
+        public static final String CHECKPOINT_MANIFEST_FILE_NAME = ".checkpoint_manifest";
+
         /**
          * Policy file.
          */
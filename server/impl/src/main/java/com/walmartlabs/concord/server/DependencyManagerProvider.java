@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server;
  * =====
  */
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
 import com.walmartlabs.concord.dependencymanager.DependencyManager;
 import com.walmartlabs.concord.server.cfg.DependenciesConfiguration;
 
@@ -34,16 +36,20 @@ import java.io.IOException;
 public class DependencyManagerProvider implements Provider<DependencyManager> {
 
     private final DependenciesConfiguration cfg;
+    private final Histogram resolutionTime;
 
     @Inject
-    public DependencyManagerProvider(DependenciesConfiguration cfg) {
+    public DependencyManagerProvider(DependenciesConfiguration cfg, MetricRegistry metricRegistry) {
         this.cfg = cfg;
+        this.resolutionTime = metricRegistry.histogram("dependency-resolution-time");
     }
 
     @Override
     public DependencyManager get() {
         try {
-            return new DependencyManager(cfg.getCacheDir());
+            DependencyManager m = new DependencyManager(cfg.getCacheDir());
+            m.setResolutionListener((dependency, duration) -> resolutionTime.update(duration));
+            return m;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -30,17 +30,12 @@ import com.walmartlabs.concord.server.jooq.tables.records.AuditLogRecord;
 import com.walmartlabs.concord.server.org.EntityOwner;
 import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
 import com.walmartlabs.concord.server.user.UserType;
-import org.jooq.Configuration;
-import org.jooq.JSONB;
-import org.jooq.Record9;
-import org.jooq.SelectOnConditionStep;
+import org.jooq.*;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.time.OffsetDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.jooq.tables.AuditLog.AUDIT_LOG;
 import static com.walmartlabs.concord.server.jooq.tables.Users.USERS;
@@ -86,6 +81,62 @@ public class AuditDao extends AbstractDao {
                 .build();
     }
 
+    /**
+     * Inserts multiple audit log entries using a single INSERT.
+     * The entries get their {@code entrySeq} values in the order of the list.
+     *
+     * @return the inserted events in the same order as the entries.
+     */
+    public List<AuditEvent> insert(List<NewEntry> entries) {
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return txResult(tx -> {
+            // allocate the IDs explicitly, the order of values generated
+            // by a multi-row INSERT is not guaranteed
+            List<Long> seqs = tx.resultQuery("select nextval(pg_get_serial_sequence('audit_log', 'entry_seq')) from generate_series(1, ?)", entries.size())
+                    .fetch(0, Long.class);
+            Collections.sort(seqs);
+
+            InsertValuesStep5<AuditLogRecord, Long, UUID, String, String, JSONB> q = tx.insertInto(AUDIT_LOG)
+                    .columns(AUDIT_LOG.ENTRY_SEQ,
+                            AUDIT_LOG.USER_ID,
+                            AUDIT_LOG.ENTRY_OBJECT,
+                            AUDIT_LOG.ENTRY_ACTION,
+                            AUDIT_LOG.ENTRY_DETAILS);
+
+            for (int i = 0; i < entries.size(); i++) {
+                NewEntry e = entries.get(i);
+                q.values(seqs.get(i),
+                        e.userId,
+                        e.object.toString(),
+                        e.action.toString(),
+                        objectMapper.toJSONB(e.details));
+            }
+
+            Map<Long, OffsetDateTime> dates = new HashMap<>();
+            q.returning(AUDIT_LOG.ENTRY_SEQ, AUDIT_LOG.ENTRY_DATE)
+                    .fetch()
+                    .forEach(r -> dates.put(r.getEntrySeq(), r.getEntryDate()));
+
+            List<AuditEvent> result = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                NewEntry e = entries.get(i);
+                long seq = seqs.get(i);
+                result.add(AuditEvent.builder()
+                        .entrySeq(seq)
+                        .entryDate(dates.get(seq))
+                        .userId(e.userId)
+                        .object(e.object.toString())
+                        .action(e.action.toString())
+                        .details(e.details)
+                        .build());
+            }
+            return result;
+        });
+    }
+
     public List<AuditLogEntry> list(AuditLogFilter filter) {
         return txResult(tx -> {
             AuditLog l = AUDIT_LOG.as("l");
@@ -168,4 +219,19 @@ public class AuditDao extends AbstractDao {
 
         return b.build();
     }
+
+    public static final class NewEntry {
+
+        final UUID userId;
+        final AuditObject object;
+        final AuditAction action;
+        final Map<String, Object> details;
+
+        public NewEntry(UUID userId, AuditObject object, AuditAction action, Map<String, Object> details) {
+            this.userId = userId;
+            this.object = object;
+            this.action = action;
+            this.details = details;
+        }
+    }
 }
@@ -33,10 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
 @Named
 public class AuditLog {
@@ -60,13 +57,19 @@ public class AuditLog {
 
     private final AuditConfiguration cfg;
     private final AuditDao auditDao;
+    private final AuditLogBuffer buffer;
     private final Listeners listeners;
+    private final Set<AuditObject> durableObjects;
 
     @Inject
-    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, Listeners listeners) {
+    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, AuditLogBuffer buffer, Listeners listeners) {
         this.cfg = cfg;
         this.auditDao = auditDao;
+        this.buffer = buffer;
         this.listeners = listeners;
+
+        this.durableObjects = EnumSet.noneOf(AuditObject.class);
+        cfg.getBufferDurableObjects().forEach(o -> durableObjects.add(AuditObject.valueOf(o)));
     }
 
     public EntryBuilder add(AuditObject object, AuditAction action) {
@@ -81,6 +84,7 @@ public class AuditLog {
         private Map<String, Object> changes;
 
         private UUID userId;
+        private boolean durable;
 
         private EntryBuilder(AuditObject object, AuditAction action) {
             this.object = object;
@@ -94,6 +98,14 @@ public class AuditLog {
             return this;
         }
 
+        /**
+         * Wait until the entry is written, even if the audit log buffer is enabled.
+         */
+        public EntryBuilder durable() {
+            this.durable = true;
+            return this;
+        }
+
         public EntryBuilder field(String k, Object v) {
             if (v == null) {
                 return this;
@@ -170,6 +182,11 @@ public class AuditLog {
                 details.put("changes", changes);
             }
 
+            boolean waitForFlush = durable || durableObjects.contains(object);
+            if (buffer.add(new AuditDao.NewEntry(userId, object, action, details), waitForFlush)) {
+                return;
+            }
+
             AuditEvent ev = auditDao.insert(userId, object, action, details);
             listeners.onAuditEvent(ev);
         }
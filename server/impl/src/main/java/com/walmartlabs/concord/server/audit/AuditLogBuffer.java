@@ -0,0 +1,280 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.Listeners;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.walmartlabs.concord.server.audit.AuditDao.NewEntry;
+
+/**
+ * Queues audit log entries and writes them in batches using a single thread.
+ * The entries are written and passed to the listeners in the same order
+ * they were queued, i.e. in the order of their {@code entrySeq}.
+ * <p>
+ * "Durable" entries block the callers until the entry is written.
+ */
+@Named
+@Singleton
+public class AuditLogBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLogBuffer.class);
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final AuditDao auditDao;
+    private final Listeners listeners;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final BlockingQueue<Entry> queue;
+
+    // guards the "running" flag, so no entries are added after the worker is stopped
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private boolean running;
+
+    private Thread worker;
+
+    private final Timer flushTimer;
+    private final Histogram batchSizeHistogram;
+    private final Meter droppedEntries;
+
+    @Inject
+    public AuditLogBuffer(AuditDao auditDao,
+                          Listeners listeners,
+                          AuditConfiguration cfg,
+                          MetricRegistry metricRegistry) {
+
+        this.auditDao = auditDao;
+        this.listeners = listeners;
+
+        this.enabled = cfg.isBufferEnabled();
+        this.batchSize = cfg.getBufferBatchSize();
+        this.queue = new ArrayBlockingQueue<>(cfg.getBufferMaxEntries());
+
+        this.flushTimer = metricRegistry.timer("audit-log-buffer-flush");
+        this.batchSizeHistogram = metricRegistry.histogram("audit-log-buffer-batch-size");
+        this.droppedEntries = metricRegistry.meter("audit-log-buffer-dropped");
+        metricRegistry.gauge("audit-log-buffer-depth", () -> queue::size);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        runningLock.writeLock().lock();
+        try {
+            running = true;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        worker = new Thread(this::run, "audit-log-buffer");
+        worker.start();
+
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        // the worker flushes the remaining entries before exiting
+        try {
+            worker.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+
+        log.info("stop -> done, {} entries left", queue.size());
+    }
+
+    /**
+     * Queues an audit log entry. If {@code durable} is {@code true}, blocks
+     * until the entry is written.
+     *
+     * @return {@code false} if the buffer is not running. In that case
+     * the entry must be written directly.
+     */
+    public boolean add(NewEntry entry, boolean durable) {
+        Entry e = new Entry(entry);
+
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                return false;
+            }
+
+            // blocks if the buffer is full
+            queue.put(e);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while adding an audit log entry");
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        if (!durable) {
+            return true;
+        }
+
+        try {
+            e.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while adding an audit log entry");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+
+        return true;
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            try {
+                Entry first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // keep going, the remaining entries must be flushed
+                log.warn("run -> interrupted, flushing {} entries...", queue.size());
+            } catch (Exception e) {
+                log.error("run -> error while writing audit log entries: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean isStopped() {
+        runningLock.readLock().lock();
+        try {
+            return !running && queue.isEmpty();
+        } finally {
+            runningLock.readLock().unlock();
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        batchSizeHistogram.update(batch.size());
+
+        List<AuditEvent> events;
+        try (Timer.Context ignored = flushTimer.time()) {
+            List<NewEntry> entries = new ArrayList<>(batch.size());
+            for (Entry e : batch) {
+                entries.add(e.entry);
+            }
+
+            events = auditDao.insert(entries);
+        } catch (Exception e) {
+            log.warn("flush -> error while writing {} audit log entries, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::flushOne);
+            return;
+        }
+
+        batch.forEach(entry -> entry.result.complete(null));
+
+        // notify the listeners in the order of entrySeq
+        events.forEach(this::notifyListeners);
+    }
+
+    private void flushOne(Entry entry) {
+        List<AuditEvent> events;
+        try {
+            events = auditDao.insert(Collections.singletonList(entry.entry));
+        } catch (Exception e) {
+            droppedEntries.mark();
+            log.error("flushOne -> error while writing an audit log entry ({} {}), the entry is dropped: {}",
+                    entry.entry.object, entry.entry.action, e.getMessage(), e);
+            entry.result.completeExceptionally(e);
+            return;
+        }
+
+        entry.result.complete(null);
+        events.forEach(this::notifyListeners);
+    }
+
+    private void notifyListeners(AuditEvent ev) {
+        try {
+            listeners.onAuditEvent(ev);
+        } catch (Exception e) {
+            log.warn("notifyListeners -> error while notifying listeners (entrySeq: {}): {}", ev.entrySeq(), e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+
+        private final NewEntry entry;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private Entry(NewEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
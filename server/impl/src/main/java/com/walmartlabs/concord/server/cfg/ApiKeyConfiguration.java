@@ -45,6 +45,30 @@ public class ApiKeyConfiguration implements Serializable {
     @Config("apiKey.notifyBeforeDays")
     private List<Integer> notifyBeforeDays;
 
+    @Inject
+    @Config("apiKey.cache.enabled")
+    private boolean cacheEnabled;
+
+    @Inject
+    @Config("apiKey.cache.maxSize")
+    private int cacheMaxSize;
+
+    @Inject
+    @Config("apiKey.cache.ttl")
+    private Duration cacheTtl;
+
+    @Inject
+    @Config("apiKey.accessAudit.enabled")
+    private boolean accessAuditEnabled;
+
+    @Inject
+    @Config("apiKey.accessAudit.flushInterval")
+    private Duration accessAuditFlushInterval;
+
+    @Inject
+    @Config("apiKey.accessAudit.maxKeys")
+    private int accessAuditMaxKeys;
+
     public Duration getExpirationPeriod() {
         return expirationPeriod;
     }
@@ -56,4 +80,28 @@ public class ApiKeyConfiguration implements Serializable {
     public List<Integer> getNotifyBeforeDays() {
         return notifyBeforeDays;
     }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public boolean isAccessAuditEnabled() {
+        return accessAuditEnabled;
+    }
+
+    public Duration getAccessAuditFlushInterval() {
+        return accessAuditFlushInterval;
+    }
+
+    public int getAccessAuditMaxKeys() {
+        return accessAuditMaxKeys;
+    }
 }
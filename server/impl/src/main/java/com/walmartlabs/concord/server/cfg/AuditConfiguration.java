@@ -28,6 +28,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.List;
 
 @Named
 @Singleton
@@ -50,6 +51,22 @@ public class AuditConfiguration implements Serializable {
     @Config("audit.maxSearchInterval")
     private Duration maxSearchInterval;
 
+    @Inject
+    @Config("audit.buffer.enabled")
+    private boolean bufferEnabled;
+
+    @Inject
+    @Config("audit.buffer.maxEntries")
+    private int bufferMaxEntries;
+
+    @Inject
+    @Config("audit.buffer.batchSize")
+    private int bufferBatchSize;
+
+    @Inject
+    @Config("audit.buffer.durableObjects")
+    private List<String> bufferDurableObjects;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -65,4 +82,20 @@ public class AuditConfiguration implements Serializable {
     public Duration getMaxSearchInterval() {
         return maxSearchInterval;
     }
+
+    public boolean isBufferEnabled() {
+        return bufferEnabled;
+    }
+
+    public int getBufferMaxEntries() {
+        return bufferMaxEntries;
+    }
+
+    public int getBufferBatchSize() {
+        return bufferBatchSize;
+    }
+
+    public List<String> getBufferDurableObjects() {
+        return bufferDurableObjects;
+    }
 }
@@ -60,6 +60,18 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkpointCleanup")
     private boolean checkpointCleanup;
 
+    @Inject
+    @Config("process.cleanupBatchSize")
+    private int cleanupBatchSize;
+
+    @Inject
+    @Config("process.cleanupMaxBatches")
+    private int cleanupMaxBatches;
+
+    @Inject
+    @Config("process.checkpointMaxDeltas")
+    private int checkpointMaxDeltas;
+
     @Inject
     @Config("process.maxStateAge")
     private String maxStateAge;
@@ -87,6 +99,50 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.checkLogPermissions")
     private boolean checkLogPermissions;
 
+    @Inject
+    @Config("process.logBuffer.enabled")
+    private boolean logBufferEnabled;
+
+    @Inject
+    @Config("process.logBuffer.maxEntries")
+    private int logBufferMaxEntries;
+
+    @Inject
+    @Config("process.logBuffer.batchSize")
+    private int logBufferBatchSize;
+
+    @Inject
+    @Config("process.logTail.maxBuffers")
+    private int logTailMaxBuffers;
+
+    @Inject
+    @Config("process.logTail.bufferSize")
+    private int logTailBufferSize;
+
+    @Inject
+    @Config("process.heartbeatBuffer.enabled")
+    private boolean heartbeatBufferEnabled;
+
+    @Inject
+    @Config("process.heartbeatBuffer.flushInterval")
+    private Duration heartbeatBufferFlushInterval;
+
+    @Inject
+    @Config("process.locks.queueEnabled")
+    private boolean lockQueueEnabled;
+
+    @Inject
+    @Config("process.incrementalStateImport")
+    private boolean incrementalStateImport;
+
+    @Inject
+    @Config("process.definitionCache.enabled")
+    private boolean definitionCacheEnabled;
+
+    @Inject
+    @Config("process.definitionCache.maxWeight")
+    private int definitionCacheMaxWeight;
+
     @Inject
     public ProcessConfiguration(@Config("process.signingKeyPath") @Nullable String signingKeyPath) {
         this.signingKeyPath = signingKeyPath != null ? Paths.get(signingKeyPath) : null;
@@ -121,6 +177,18 @@ public class ProcessConfiguration implements Serializable {
         return checkpointCleanup;
     }
 
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    public int getCleanupMaxBatches() {
+        return cleanupMaxBatches;
+    }
+
+    public int getCheckpointMaxDeltas() {
+        return checkpointMaxDeltas;
+    }
+
     public String getMaxStateAge() {
         return maxStateAge;
     }
@@ -148,4 +216,48 @@ public class ProcessConfiguration implements Serializable {
     public boolean isCheckLogPermissions() {
         return checkLogPermissions;
     }
+
+    public boolean isLogBufferEnabled() {
+        return logBufferEnabled;
+    }
+
+    public int getLogBufferMaxEntries() {
+        return logBufferMaxEntries;
+    }
+
+    public int getLogBufferBatchSize() {
+        return logBufferBatchSize;
+    }
+
+    public int getLogTailMaxBuffers() {
+        return logTailMaxBuffers;
+    }
+
+    public int getLogTailBufferSize() {
+        return logTailBufferSize;
+    }
+
+    public boolean isHeartbeatBufferEnabled() {
+        return heartbeatBufferEnabled;
+    }
+
+    public Duration getHeartbeatBufferFlushInterval() {
+        return heartbeatBufferFlushInterval;
+    }
+
+    public boolean isLockQueueEnabled() {
+        return lockQueueEnabled;
+    }
+
+    public boolean isIncrementalStateImport() {
+        return incrementalStateImport;
+    }
+
+    public boolean isDefinitionCacheEnabled() {
+        return definitionCacheEnabled;
+    }
+
+    public int getDefinitionCacheMaxWeight() {
+        return definitionCacheMaxWeight;
+    }
 }
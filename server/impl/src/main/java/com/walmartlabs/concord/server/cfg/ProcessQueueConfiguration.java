@@ -40,6 +40,14 @@ public class ProcessQueueConfiguration implements Serializable {
     @Config("queue.dispatcher.batchSize")
     private int dispatcherBatchSize;
 
+    @Inject
+    @Config("queue.dispatcher.indexEnabled")
+    private boolean dispatcherIndexEnabled;
+
+    @Inject
+    @Config("queue.dispatcher.indexFullRefreshInterval")
+    private Duration dispatcherIndexFullRefreshInterval;
+
     public Duration getDispatcherPollDelay() {
         return dispatcherPollDelay;
     }
@@ -47,4 +55,12 @@ public class ProcessQueueConfiguration implements Serializable {
     public int getDispatcherBatchSize() {
         return dispatcherBatchSize;
     }
+
+    public boolean isDispatcherIndexEnabled() {
+        return dispatcherIndexEnabled;
+    }
+
+    public Duration getDispatcherIndexFullRefreshInterval() {
+        return dispatcherIndexFullRefreshInterval;
+    }
 }
@@ -40,6 +40,14 @@ public class ProcessWaitWatchdogConfiguration implements Serializable {
     @Config("process.waitCheckPollLimit")
     private int pollLimit;
 
+    @Inject
+    @Config("process.waitEvents.enabled")
+    private boolean eventsEnabled;
+
+    @Inject
+    @Config("process.waitEvents.maxEvents")
+    private int maxEvents;
+
     public Duration getPeriod() {
         return period;
     }
@@ -47,4 +55,12 @@ public class ProcessWaitWatchdogConfiguration implements Serializable {
     public int getPollLimit() {
         return pollLimit;
     }
+
+    public boolean isEventsEnabled() {
+        return eventsEnabled;
+    }
+
+    public int getMaxEvents() {
+        return maxEvents;
+    }
 }
@@ -44,6 +44,8 @@ public class RepositoryConfiguration {
 
     private final Path cacheInfoDir;
 
+    private final Path snapshotsDir;
+
     @Inject
     @Config("repositoryCache.concordFileValidationEnabled")
     private boolean concordFileValidationEnabled;
@@ -60,12 +62,22 @@ public class RepositoryConfiguration {
     @Config("repositoryCache.lockCount")
     private int lockCount;
 
+    @Inject
+    @Config("repositoryCache.snapshots.enabled")
+    private boolean snapshotsEnabled;
+
+    @Inject
+    @Config("repositoryCache.snapshots.maxSize")
+    private int snapshotsMaxSize;
+
     @Inject
     public RepositoryConfiguration(@Config("repositoryCache.cacheDir") @Nullable String cacheDir,
-                                   @Config("repositoryCache.cacheInfoDir") @Nullable String cacheInfoDir) throws IOException {
+                                   @Config("repositoryCache.cacheInfoDir") @Nullable String cacheInfoDir,
+                                   @Config("repositoryCache.snapshots.dir") @Nullable String snapshotsDir) throws IOException {
 
         this.cacheDir = getPath(cacheDir, "repoCache");
         this.cacheInfoDir = getPath(cacheInfoDir, "repoCacheInfo");
+        this.snapshotsDir = getPath(snapshotsDir, "repoSnapshots");
 
         log.info("init -> using {} ({}) to cache repositories", this.cacheDir, this.cacheInfoDir);
     }
@@ -93,4 +105,19 @@ public class RepositoryConfiguration {
     public Path getCacheInfoDir() {
         return cacheInfoDir;
     }
+
+    public Path getSnapshotsDir() {
+        return snapshotsDir;
+    }
+
+    public boolean isSnapshotsEnabled() {
+        return snapshotsEnabled;
+    }
+
+    /**
+     * @return max total size of the repository snapshots, MB
+     */
+    public int getSnapshotsMaxSize() {
+        return snapshotsMaxSize;
+    }
 }
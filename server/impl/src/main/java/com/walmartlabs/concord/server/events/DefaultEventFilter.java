@@ -20,20 +20,33 @@ package com.walmartlabs.concord.server.events;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.common.MapMatcher;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.Map;
 
 public final class DefaultEventFilter {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultEventFilter.class);
 
+    /**
+     * Compiled trigger conditions, keyed by the conditions' content.
+     */
+    private static final Cache<Map<String, Object>, MapMatcher.Compiled> matchers = CacheBuilder.newBuilder()
+            .maximumSize(4096)
+            .concurrencyLevel(32)
+            .build();
+
     public static boolean filter(Map<String, Object> conditions, TriggerEntry t) {
         try {
-            return MapMatcher.matches(conditions, t.getConditions());
+            Map<String, Object> triggerConditions = t.getConditions() != null ? t.getConditions() : Collections.emptyMap();
+            MapMatcher.Compiled m = matchers.get(triggerConditions, () -> MapMatcher.compile(triggerConditions));
+            return m.matches(conditions);
         } catch (Exception e) {
             log.warn("filter [{}, {}] -> error while matching events: {}", conditions, t, e.getMessage());
             return false;
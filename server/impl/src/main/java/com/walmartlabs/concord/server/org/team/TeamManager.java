@@ -30,6 +30,7 @@ import com.walmartlabs.concord.server.org.ResourceAccessUtils;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyCache;
 import com.walmartlabs.concord.server.user.User;
 import com.walmartlabs.concord.server.user.UserManager;
 import com.walmartlabs.concord.server.user.UserType;
@@ -39,10 +40,7 @@ import org.sonatype.siesta.ValidationErrorsException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -64,19 +62,22 @@ public class TeamManager {
     private final OrganizationManager orgManager;
     private final UserManager userManager;
     private final AuditLog auditLog;
+    private final ApiKeyCache apiKeyCache;
 
     @Inject
     public TeamManager(TeamDao teamDao,
                        OrganizationDao orgDao,
                        OrganizationManager orgManager,
                        UserManager userManager,
-                       AuditLog auditLog) {
+                       AuditLog auditLog,
+                       ApiKeyCache apiKeyCache) {
 
         this.teamDao = teamDao;
         this.orgDao = orgDao;
         this.orgManager = orgManager;
         this.userManager = userManager;
         this.auditLog = auditLog;
+        this.apiKeyCache = apiKeyCache;
     }
 
     public UUID insert(UUID orgId, String teamName, String description) {
@@ -92,6 +93,8 @@ public class TeamManager {
             return tId;
         });
 
+        apiKeyCache.invalidateUser(UserPrincipal.assertCurrent().getId());
+
         auditLog.add(AuditObject.TEAM, AuditAction.CREATE)
                 .field("orgId", orgId)
                 .field("teamId", teamId)
@@ -119,8 +122,12 @@ public class TeamManager {
     public void delete(String orgName, String teamName) {
         TeamEntry t = assertTeam(orgName, teamName, TeamRole.OWNER, true, true);
 
+        List<TeamUserEntry> members = teamDao.listUsers(t.getId());
+
         teamDao.delete(t.getId());
 
+        invalidateUsers(members.stream().map(TeamUserEntry::getUserId).collect(Collectors.toSet()));
+
         auditLog.add(AuditObject.TEAM, AuditAction.DELETE)
                 .field("orgId", t.getOrgId())
                 .field("teamId", t.getId())
@@ -152,8 +159,11 @@ public class TeamManager {
             effectiveUsers.put(id, role);
         }
 
+        Set<UUID> affectedUsers = new HashSet<>(effectiveUsers.keySet());
+
         teamDao.tx(tx -> {
             if (replace) {
+                teamDao.listMembers(tx, t.getId()).forEach(u -> affectedUsers.add(u.getUserId()));
                 teamDao.removeUsers(tx, t.getId());
             }
 
@@ -166,6 +176,8 @@ public class TeamManager {
             validateUsers(tx, t.getOrgId());
         });
 
+        invalidateUsers(affectedUsers);
+
         auditLog.add(AuditObject.TEAM, AuditAction.UPDATE)
                 .field("orgId", t.getOrgId())
                 .field("teamId", t.getId())
@@ -179,8 +191,12 @@ public class TeamManager {
     public void addLdapGroups(String orgName, String teamName, boolean replace, Collection<TeamLdapGroupEntry> groups) {
         TeamEntry t = assertTeam(orgName, teamName, TeamRole.MAINTAINER, true, true);
 
+        // the members of the previous and the new groups
+        Set<UUID> affectedUsers = new HashSet<>();
+
         teamDao.tx(tx -> {
             if (replace) {
+                teamDao.listLdapGroupMembers(tx, t.getId()).forEach(u -> affectedUsers.add(u.getUserId()));
                 teamDao.removeLdapGroups(tx, t.getId());
             }
 
@@ -193,9 +209,13 @@ public class TeamManager {
                 teamDao.upsertLdapGroup(tx, t.getId(), g.group(), role);
             }
 
+            teamDao.listLdapGroupMembers(tx, t.getId()).forEach(u -> affectedUsers.add(u.getUserId()));
+
             validateUsers(tx, t.getOrgId());
         });
 
+        invalidateUsers(affectedUsers);
+
         auditLog.add(AuditObject.TEAM, AuditAction.UPDATE)
                 .field("orgId", t.getOrgId())
                 .field("teamId", t.getId())
@@ -206,6 +226,13 @@ public class TeamManager {
                 .log();
     }
 
+    /**
+     * Removes the cached API keys of the users whose team memberships were changed.
+     */
+    private void invalidateUsers(Collection<UUID> userIds) {
+        userIds.forEach(apiKeyCache::invalidateUser);
+    }
+
     private void validateUsers(DSLContext tx, UUID orgId) {
         if (orgDao.hasOwner(tx, orgId)) {
             return;
@@ -226,6 +253,8 @@ public class TeamManager {
 
         teamDao.removeUsers(t.getId(), userIds);
 
+        invalidateUsers(userIds);
+
         auditLog.add(AuditObject.TEAM, AuditAction.UPDATE)
                 .field("orgId", t.getOrgId())
                 .field("teamId", t.getId())
@@ -23,6 +23,8 @@ package com.walmartlabs.concord.server.process;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.jooq.tables.ProcessCleanerMarkers;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
 import org.jooq.*;
@@ -33,9 +35,12 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.db.PgUtils.interval;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_CLEANER_MARKERS;
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_SEGMENTS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROCESS_CHECKPOINTS;
@@ -43,6 +48,7 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_E
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
 import static org.jooq.impl.DSL.currentOffsetDateTime;
+import static org.jooq.impl.DSL.row;
 
 @Named("process-cleaner")
 @Singleton
@@ -50,6 +56,8 @@ public class ProcessCleaner implements ScheduledTask {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessCleaner.class);
 
+    private static final String MARKER_NAME = "process-cleaner";
+
     private static final String[] EXCLUDE_STATUSES = {
             ProcessStatus.STARTING.toString(),
             ProcessStatus.RUNNING.toString(),
@@ -73,45 +81,92 @@ public class ProcessCleaner implements ScheduledTask {
     @Override
     public void performTask() {
         Field<OffsetDateTime> cutoff = currentOffsetDateTime().minus(interval(cfg.getMaxStateAge()));
-        cleanerDao.deleteOldState(cutoff, cfg);
+        deleteOldState(cutoff);
         cleanerDao.deleteOrphans(cfg);
     }
 
+    /**
+     * Removes the data of old processes in batches, each batch in its own transaction.
+     * The progress is saved after each batch, so the next run continues where
+     * the previous one stopped.
+     */
+    private void deleteOldState(Field<OffsetDateTime> cutoff) {
+        long t1 = System.currentTimeMillis();
+
+        int batchSize = cfg.getCleanupBatchSize();
+        int maxBatches = cfg.getCleanupMaxBatches();
+
+        int batches = 0;
+        int processes = 0;
+        while (batches < maxBatches && !Thread.currentThread().isInterrupted()) {
+            int n = cleanerDao.deleteOldState(cutoff, batchSize, cfg);
+            batches++;
+            processes += n;
+
+            if (n < batchSize) {
+                // reached the end of the queue, the next run starts from the beginning
+                break;
+            }
+        }
+
+        long t2 = System.currentTimeMillis();
+        log.info("deleteOldState -> removed the data of {} process(es) older than {} in {} batch(es), took {}ms",
+                processes, cutoff, batches, (t2 - t1));
+    }
+
     @Named
-    private static class CleanerDao extends AbstractDao {
+    static class CleanerDao extends AbstractDao {
 
         @Inject
         protected CleanerDao(@MainDB Configuration cfg) {
             super(cfg);
         }
 
-        void deleteOldState(Field<OffsetDateTime> cutoff, ProcessConfiguration jobCfg) {
-            long t1 = System.currentTimeMillis();
+        /**
+         * Removes the data of the next {@code batchSize} old processes.
+         *
+         * @return number of processes in the batch
+         */
+        int deleteOldState(Field<OffsetDateTime> cutoff, int batchSize, ProcessConfiguration jobCfg) {
+            return txResult(tx -> {
+                ProcessCleanerMarkers m = PROCESS_CLEANER_MARKERS.as("m");
+
+                // also prevents concurrent runs
+                Record2<OffsetDateTime, UUID> marker = tx.select(m.INSTANCE_CREATED_AT, m.INSTANCE_ID)
+                        .from(m)
+                        .where(m.CLEANER_NAME.eq(MARKER_NAME))
+                        .forUpdate()
+                        .fetchOne();
+
+                Condition filter = PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
+                        .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES));
+
+                if (marker != null && marker.value1() != null) {
+                    filter = filter.and(row(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID).gt(marker.value1(), marker.value2()));
+                }
 
-            tx(tx -> {
-                SelectConditionStep<Record1<UUID>> ids = tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                List<ProcessKey> processKeys = tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)
                         .from(PROCESS_QUEUE)
-                        .where(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
-                                .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES)));
+                        .where(filter)
+                        .orderBy(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID)
+                        .limit(batchSize)
+                        .fetch(r -> new ProcessKey(r.value1(), r.value2()));
 
-                int queueEntries = 0;
-                if (jobCfg.isQueueCleanup()) {
-                    queueEntries = tx.deleteFrom(PROCESS_QUEUE)
-                            .where(PROCESS_QUEUE.INSTANCE_ID.in(ids))
-                            .execute();
-                }
+                List<Row2<UUID, OffsetDateTime>> keys = processKeys.stream()
+                        .map(k -> row(k.getInstanceId(), k.getCreatedAt()))
+                        .collect(Collectors.toList());
 
                 int stateRecords = 0;
                 if (jobCfg.isStateCleanup()) {
                     stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT).in(keys))
                             .execute();
                 }
 
                 int events = 0;
                 if (jobCfg.isEventsCleanup()) {
                     events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_EVENTS.INSTANCE_ID, PROCESS_EVENTS.INSTANCE_CREATED_AT).in(keys))
                             .execute();
                 }
 
@@ -119,27 +174,41 @@ public class ProcessCleaner implements ScheduledTask {
                 int logSegmentEntries = 0;
                 if (jobCfg.isLogsCleanup()) {
                     logDataEntries = tx.deleteFrom(PROCESS_LOG_DATA)
-                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT).in(keys))
                             .execute();
 
                     logSegmentEntries = tx.deleteFrom(PROCESS_LOG_SEGMENTS)
-                            .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_LOG_SEGMENTS.INSTANCE_ID, PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT).in(keys))
                             .execute();
                 }
 
                 int checkpoints = 0;
                 if (jobCfg.isCheckpointCleanup()) {
                     checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_CHECKPOINTS.INSTANCE_ID, PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT).in(keys))
                             .execute();
                 }
 
-                log.info("deleteOldState -> removed older than {}: {} queue entries, {} log data entries, {} log segments, {} state item(s), {} event(s), {} checkpoint(s)",
-                        cutoff, queueEntries, logDataEntries, logSegmentEntries, stateRecords, events, checkpoints);
-            });
+                int queueEntries = 0;
+                if (jobCfg.isQueueCleanup()) {
+                    queueEntries = tx.deleteFrom(PROCESS_QUEUE)
+                            .where(row(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT).in(keys))
+                            .execute();
+                }
 
-            long t2 = System.currentTimeMillis();
-            log.info("deleteOldState -> took {}ms", (t2 - t1));
+                // save the progress, start over when the end is reached
+                ProcessKey last = processKeys.size() < batchSize ? null : processKeys.get(processKeys.size() - 1);
+                tx.update(m)
+                        .set(m.INSTANCE_CREATED_AT, last != null ? last.getCreatedAt() : null)
+                        .set(m.INSTANCE_ID, last != null ? last.getInstanceId() : null)
+                        .where(m.CLEANER_NAME.eq(MARKER_NAME))
+                        .execute();
+
+                log.debug("deleteOldState -> removed: {} queue entries, {} log data entries, {} log segments, {} state item(s), {} event(s), {} checkpoint(s)",
+                        queueEntries, logDataEntries, logSegmentEntries, stateRecords, events, checkpoints);
+
+                return processKeys.size();
+            });
         }
 
         void deleteOrphans(ProcessConfiguration jobCfg) {
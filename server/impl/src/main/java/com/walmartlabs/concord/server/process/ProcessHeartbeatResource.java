@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.walmartlabs.concord.server.process.queue.ProcessHeartbeatBuffer;
+import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -30,9 +32,12 @@ import org.sonatype.siesta.Resource;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
 import java.util.UUID;
 
 @Named
@@ -42,19 +47,57 @@ import java.util.UUID;
 public class ProcessHeartbeatResource implements Resource {
 
     private final ProcessQueueDao queueDao;
+    private final ProcessKeyCache processKeyCache;
+    private final ProcessHeartbeatBuffer heartbeatBuffer;
 
     @Inject
-    public ProcessHeartbeatResource(ProcessQueueDao queueDao) {
+    public ProcessHeartbeatResource(ProcessQueueDao queueDao,
+                                    ProcessKeyCache processKeyCache,
+                                    ProcessHeartbeatBuffer heartbeatBuffer) {
+
         this.queueDao = queueDao;
+        this.processKeyCache = processKeyCache;
+        this.heartbeatBuffer = heartbeatBuffer;
     }
 
-
     @POST
     @ApiOperation("Process heartbeat")
     @Path("{id}/ping")
     public void ping(@ApiParam @PathParam("id") UUID instanceId) {
+        if (heartbeatBuffer.isEnabled()) {
+            if (processKeyCache.get(instanceId) == null) {
+                throw new IllegalArgumentException("Process not found: " + instanceId);
+            }
+
+            heartbeatBuffer.add(instanceId);
+            return;
+        }
+
         if (!queueDao.touch(instanceId)) {
             throw new IllegalArgumentException("Process not found: " + instanceId);
         }
     }
+
+    /**
+     * Heartbeat of multiple processes, e.g. all processes of an agent.
+     * Unknown processes are ignored.
+     */
+    @POST
+    @ApiOperation("Heartbeat of multiple processes")
+    @Path("ping")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void pingAll(@ApiParam List<UUID> instanceIds) {
+        if (instanceIds == null || instanceIds.isEmpty()) {
+            return;
+        }
+
+        if (heartbeatBuffer.isEnabled()) {
+            instanceIds.stream()
+                    .filter(id -> processKeyCache.get(id) != null)
+                    .forEach(heartbeatBuffer::add);
+            return;
+        }
+
+        queueDao.touch(instanceIds);
+    }
 }
@@ -21,11 +21,13 @@ package com.walmartlabs.concord.server.process;
  */
 
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.LogBatch;
 import com.walmartlabs.concord.server.HttpUtils;
 import com.walmartlabs.concord.server.OperationResult;
 import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogTail;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
@@ -48,6 +50,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
 import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
@@ -61,10 +64,16 @@ import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.Process
 @Path("/api/v2/process")
 public class ProcessLogResourceV2 implements Resource {
 
+    /**
+     * The waiting request holds a request thread, keep it short.
+     */
+    private static final int MAX_TAIL_WAIT_SECONDS = 10;
+
     private final ProcessKeyCache processKeyCache;
     private final ProcessManager processManager;
     private final ProcessLogManager logManager;
     private final ProcessLogAccessManager logAccessManager;
+    private final ProcessLogTail logTail;
     private final ProcessConfiguration processCfg;
 
     @Inject
@@ -72,11 +81,13 @@ public class ProcessLogResourceV2 implements Resource {
                                 ProcessManager processManager,
                                 ProcessLogManager logManager,
                                 ProcessLogAccessManager logAccessManager,
+                                ProcessLogTail logTail,
                                 ProcessConfiguration processCfg) {
         this.processKeyCache = processKeyCache;
         this.processManager = processManager;
         this.logManager = logManager;
         this.logAccessManager = logAccessManager;
+        this.logTail = logTail;
         this.processCfg = processCfg;
     }
 
@@ -157,6 +168,33 @@ public class ProcessLogResourceV2 implements Resource {
         return toResponse(instanceId, l, range);
     }
 
+    /**
+     * Retrieves the process log's data starting from the specified offset.
+     * If there's no new data, waits up to {@code wait} seconds for it to appear.
+     * Clients should use the end of the returned range as the next offset.
+     */
+    @GET
+    @ApiOperation(value = "Tail the log")
+    @Path("/{id}/log/tail")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @WithTimer
+    public Response tail(@ApiParam @PathParam("id") UUID instanceId,
+                         @ApiParam @QueryParam("offset") @DefaultValue("0") int offset,
+                         @ApiParam @QueryParam("wait") @DefaultValue("5") int wait) {
+
+        if (offset < 0) {
+            throw new ValidationErrorsException("'offset' must be a positive number or zero");
+        }
+
+        if (wait < 0 || wait > MAX_TAIL_WAIT_SECONDS) {
+            throw new ValidationErrorsException("'wait' must be between 0 and " + MAX_TAIL_WAIT_SECONDS);
+        }
+
+        ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
+        ProcessLog l = logTail.read(processKey, offset, TimeUnit.SECONDS.toMillis(wait));
+        return toResponse(instanceId, l, HttpUtils.Range.builder().start(offset).build());
+    }
+
     /**
      * Appends a process' log.
      */
@@ -173,17 +211,36 @@ public class ProcessLogResourceV2 implements Resource {
         try {
             byte[] ab = IOUtils.toByteArray(data);
             int upper = logManager.log(processKey, segmentId, ab);
-
-            int logSizeLimit = processCfg.getLogSizeLimit();
-            if (upper >= logSizeLimit) {
-                logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
-                processManager.kill(processKey);
-            }
+            assertLogSize(processKey, upper);
         } catch (IOException e) {
             throw new ConcordApplicationException("Error while appending a log: " + e.getMessage());
         }
     }
 
+    /**
+     * Appends data of multiple log segments and updates the segments
+     * in a single request. Expects a {@link LogBatch}.
+     */
+    @POST
+    @Path("{id}/log/batch")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @WithTimer
+    public void appendBatch(@ApiParam @PathParam("id") UUID instanceId,
+                            InputStream data) {
+
+        ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
+
+        LogBatch batch;
+        try {
+            batch = LogBatch.read(data, processCfg.getLogSizeLimit());
+        } catch (IOException e) {
+            throw new ConcordApplicationException("Error while reading a log batch: " + e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+
+        int upper = logManager.log(processKey, batch);
+        assertLogSize(processKey, upper);
+    }
+
     public static Response toResponse(UUID instanceId, ProcessLog l, HttpUtils.Range range) {
         List<ProcessLogChunk> data = l.getChunks();
         if (data.isEmpty()) {
@@ -207,6 +264,14 @@ public class ProcessLogResourceV2 implements Resource {
         return downloadableFile(instanceId, out, actualStart, actualEnd, l.getSize());
     }
 
+    private void assertLogSize(ProcessKey processKey, int upper) {
+        int logSizeLimit = processCfg.getLogSizeLimit();
+        if (upper >= logSizeLimit) {
+            logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
+            processManager.kill(processKey);
+        }
+    }
+
     private ProcessKey assertProcessKey(UUID instanceId) {
         ProcessKey processKey = processKeyCache.get(instanceId);
         if (processKey == null) {
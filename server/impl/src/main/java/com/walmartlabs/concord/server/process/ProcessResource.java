@@ -881,6 +881,37 @@ public class ProcessResource implements Resource {
                 .build();
     }
 
+    /**
+     * Downloads the current state snapshot of a process, excluding the files
+     * the caller already has (e.g. the files of the process' repository).
+     * The archive is streamed, the file modes are stored in the local headers.
+     */
+    @POST
+    @ApiOperation(value = "Download a process state snapshot excluding the known files", response = File.class)
+    @javax.ws.rs.Path("/{id}/state/snapshot")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public Response downloadStateExcept(@ApiParam @PathParam("id") UUID instanceId,
+                                        @ApiParam StateSnapshotRequest request) {
+
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
+
+        assertProcessAccess(entry, "attachments");
+
+        Map<String, String> knownFiles = request != null ? request.knownFiles() : Collections.emptyMap();
+
+        StreamingOutput out = output -> {
+            try (ZipArchiveOutputStream dst = new ZipArchiveOutputStream(output)) {
+                stateManager.exportExcept(processKey, knownFiles, zipTo(dst));
+            }
+        };
+
+        return Response.ok(out, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + instanceId + ".zip\"")
+                .build();
+    }
+
     /**
      * Downloads a single file from the current state snapshot of a process.
      */
@@ -926,13 +957,55 @@ public class ProcessResource implements Resource {
         ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
 
         Path tmpIn = null;
-        Path tmpDir = null;
         try {
             tmpIn = IOUtils.createTempFile("attachments", ".zip");
             Files.copy(data, tmpIn, StandardCopyOption.REPLACE_EXISTING);
 
+            Path archive = tmpIn;
+            importAttachments(entry, processKey, dst -> IOUtils.unzip(archive, dst));
+        } catch (IOException e) {
+            log.error("uploadAttachments ['{}'] -> error", processKey, e);
+            throw new ConcordApplicationException("upload error: " + e.getMessage());
+        } finally {
+            if (tmpIn != null) {
+                try {
+                    Files.delete(tmpIn);
+                } catch (IOException e) {
+                    log.warn("uploadAttachments -> cleanup error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Upload process attachments. The archive is unpacked while it's being
+     * received, the file modes must be stored in the local headers
+     * (see {@link IOUtils#unixModeField(int)}).
+     *
+     * @param instanceId
+     * @param data
+     */
+    @POST
+    @ApiOperation(value = "Upload process attachments as a stream", hidden = true)
+    @javax.ws.rs.Path("{id}/attachment")
+    @Consumes("application/zip")
+    public void uploadAttachmentsStream(@PathParam("id") UUID instanceId, InputStream data) {
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
+
+        try {
+            importAttachments(entry, processKey, dst -> IOUtils.unzipStream(data, dst));
+        } catch (IOException e) {
+            log.error("uploadAttachmentsStream ['{}'] -> error", processKey, e);
+            throw new ConcordApplicationException("upload error: " + e.getMessage());
+        }
+    }
+
+    private void importAttachments(ProcessEntry entry, ProcessKey processKey, Unpacker unpacker) throws IOException {
+        Path tmpDir = null;
+        try {
             tmpDir = IOUtils.createTempDir("attachments");
-            IOUtils.unzip(tmpIn, tmpDir);
+            unpacker.unpack(tmpDir);
 
             assertAttachmentsPolicy(tmpDir, entry);
 
@@ -950,22 +1023,12 @@ public class ProcessResource implements Resource {
             }
         } catch (PolicyException e) {
             throw new ConcordApplicationException(e.getMessage(), Status.FORBIDDEN);
-        } catch (IOException e) {
-            log.error("uploadAttachments ['{}'] -> error", processKey, e);
-            throw new ConcordApplicationException("upload error: " + e.getMessage());
         } finally {
             if (tmpDir != null) {
                 try {
                     IOUtils.deleteRecursively(tmpDir);
                 } catch (IOException e) {
-                    log.warn("uploadAttachments -> cleanup error: {}", e.getMessage());
-                }
-            }
-            if (tmpIn != null) {
-                try {
-                    Files.delete(tmpIn);
-                } catch (IOException e) {
-                    log.warn("uploadAttachments -> cleanup error: {}", e.getMessage());
+                    log.warn("importAttachments -> cleanup error: {}", e.getMessage());
                 }
             }
         }
@@ -1174,4 +1237,9 @@ public class ProcessResource implements Resource {
         }
         return sb.toString();
     }
+
+    private interface Unpacker {
+
+        void unpack(Path dst) throws IOException;
+    }
 }
@@ -119,12 +119,14 @@ public class ProcessCheckpointResource implements Resource {
         ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
 
         UUID checkpointId = MultipartUtils.getUuid(input, "id");
+        // optional, the ID of the previous checkpoint for delta checkpoints
+        UUID parentId = MultipartUtils.getUuid(input, "parentId");
         String checkpointName = MultipartUtils.getString(input, "name");
         try (InputStream data = MultipartUtils.getStream(input, "data");
              TemporaryPath tmpIn = IOUtils.tempFile("checkpoint", ".zip")) {
 
             Files.copy(data, tmpIn.path(), StandardCopyOption.REPLACE_EXISTING);
-            checkpointManager.importCheckpoint(processKey, checkpointId, checkpointName, tmpIn.path());
+            checkpointManager.importCheckpoint(processKey, checkpointId, parentId, checkpointName, tmpIn.path());
         } catch (IOException e) {
             log.error("uploadCheckpoint ['{}'] -> error", processKey, e);
             throw new ConcordApplicationException("upload error: " + e.getMessage());
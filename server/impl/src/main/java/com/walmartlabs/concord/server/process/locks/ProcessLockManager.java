@@ -0,0 +1,135 @@
+package com.walmartlabs.concord.server.process.locks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.process.queue.ProcessWaitEvents;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.process.locks.ProcessLocksDao.Grant;
+import static com.walmartlabs.concord.server.process.locks.ProcessLocksDao.QueuedLockResult;
+
+/**
+ * Acquires and releases process locks.
+ * <p>
+ * In the "queue" mode the processes waiting for a lock are kept in a FIFO queue.
+ * When the lock is released, it is given to the next process in the queue
+ * and the process is resumed using {@link ProcessWaitEvents}.
+ */
+@Named
+@Singleton
+public class ProcessLockManager {
+
+    private final ProcessLocksDao dao;
+    private final ProcessWaitEvents waitEvents;
+    private final boolean queueEnabled;
+
+    private final Timer waitTime;
+
+    @Inject
+    public ProcessLockManager(ProcessLocksDao dao,
+                              ProcessWaitEvents waitEvents,
+                              ProcessConfiguration cfg,
+                              MetricRegistry metricRegistry) {
+
+        this.dao = dao;
+        this.waitEvents = waitEvents;
+        this.queueEnabled = cfg.isLockQueueEnabled();
+
+        this.waitTime = metricRegistry.timer("process-lock-wait-time");
+    }
+
+    /**
+     * Tries to acquire the lock.
+     *
+     * @return the current owner of the lock
+     */
+    public LockEntry tryLock(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        if (!queueEnabled) {
+            return dao.tryLock(instanceId, orgId, projectId, scope, lockName);
+        }
+
+        QueuedLockResult result = dao.tryLockQueued(instanceId, orgId, projectId, scope, lockName);
+        onGrant(result.grant(), instanceId);
+        return result.owner();
+    }
+
+    public void unlock(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        if (!queueEnabled) {
+            dao.delete(instanceId, orgId, projectId, scope, lockName);
+            waitEvents.lockReleased(orgId, projectId, scope, lockName);
+            return;
+        }
+
+        Grant grant = dao.unlockQueued(instanceId, orgId, projectId, scope, lockName);
+        onGrant(grant, instanceId);
+    }
+
+    /**
+     * Should be called when the lock is removed without {@link #unlock(UUID, UUID, UUID, ProcessLockScope, String)},
+     * e.g. when the owner process is finished.
+     */
+    public void onReleased(UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        if (!queueEnabled) {
+            waitEvents.lockReleased(orgId, projectId, scope, lockName);
+            return;
+        }
+
+        Grant grant = dao.handOff(orgId, projectId, scope, lockName);
+        onGrant(grant, null);
+    }
+
+    /**
+     * Releases the locks the specified process didn't unlock before finishing.
+     * The locks are given to the next processes without waiting for
+     * {@link ProcessLocksWatchdog}.
+     */
+    public void onProcessFinished(UUID instanceId) {
+        for (LockEntry l : dao.deleteAll(instanceId)) {
+            onReleased(l.orgId(), l.projectId(), l.scope(), l.name());
+        }
+    }
+
+    private void onGrant(Grant grant, UUID caller) {
+        if (grant == null) {
+            return;
+        }
+
+        Duration d = Duration.between(grant.queuedAt(), OffsetDateTime.now());
+        waitTime.update(Math.max(0, d.toMillis()), TimeUnit.MILLISECONDS);
+
+        UUID owner = grant.lock().instanceId();
+        if (!owner.equals(caller)) {
+            // the new owner is (or soon will be) suspended, waiting for the lock
+            waitEvents.processReady(owner);
+        }
+    }
+}
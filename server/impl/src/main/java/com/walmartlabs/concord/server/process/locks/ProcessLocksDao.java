@@ -22,25 +22,46 @@ package com.walmartlabs.concord.server.process.locks;
 
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.Locks;
+import com.walmartlabs.concord.server.Utils;
 import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.jooq.tables.ProcessLockWaiters;
 import com.walmartlabs.concord.server.jooq.tables.ProcessLocks;
+import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.jooq.tables.records.ProcessLocksRecord;
-import org.jooq.Configuration;
-import org.jooq.DSLContext;
-import org.jooq.SelectConditionStep;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.*;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCKS;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCK_WAITERS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.jooq.impl.DSL.count;
+import static org.jooq.impl.DSL.min;
+import static org.jooq.impl.DSL.when;
 
 @Named
 public class ProcessLocksDao extends AbstractDao {
 
+    private static final String[] FINISHED_STATUSES = Utils.toString(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    private final Locks locks;
+
     @Inject
-    protected ProcessLocksDao(@MainDB Configuration cfg) {
+    protected ProcessLocksDao(@MainDB Configuration cfg, Locks locks) {
         super(cfg);
+        this.locks = locks;
     }
 
     public LockEntry tryLock(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
@@ -75,6 +96,194 @@ public class ProcessLocksDao extends AbstractDao {
         tx(tx -> delete(tx, instanceId, orgId, projectId, scope, lockName));
     }
 
+    /**
+     * Removes all locks held by the specified process.
+     *
+     * @return the removed locks
+     */
+    public List<LockEntry> deleteAll(UUID instanceId) {
+        return txResult(tx -> {
+            ProcessLocks l = PROCESS_LOCKS.as("l");
+            return tx.deleteFrom(l)
+                    .where(l.INSTANCE_ID.eq(instanceId))
+                    .returning()
+                    .fetch(r -> LockEntry.builder()
+                            .instanceId(r.getInstanceId())
+                            .orgId(r.getOrgId())
+                            .projectId(r.getProjectId())
+                            .scope(r.getLockScope())
+                            .name(r.getLockName())
+                            .build());
+        });
+    }
+
+    /**
+     * Queued version of {@link #tryLock(UUID, UUID, UUID, ProcessLockScope, String)}.
+     * If the lock is taken, the process is added to the end of the lock's queue.
+     * A free lock is given to the first process in the queue, which is not
+     * necessarily the caller.
+     */
+    public QueuedLockResult tryLockQueued(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        return txResult(tx -> {
+            locks.lock(tx, lockKey(orgId, projectId, scope, lockName));
+
+            LockEntry owner = get(tx, orgId, projectId, scope, lockName);
+            if (owner != null) {
+                if (!owner.instanceId().equals(instanceId)) {
+                    enqueue(tx, instanceId, orgId, projectId, scope, lockName);
+                }
+                return new QueuedLockResult(owner, null);
+            }
+
+            enqueue(tx, instanceId, orgId, projectId, scope, lockName);
+
+            Grant grant = handOff(tx, orgId, projectId, scope, lockName);
+            if (grant == null) {
+                // shouldn't happen, the caller is in the queue
+                throw new IllegalStateException("Can't acquire the lock '" + lockName + "' (" + scope + ") for " + instanceId);
+            }
+
+            return new QueuedLockResult(grant.lock(), grant);
+        });
+    }
+
+    /**
+     * Releases the lock and gives it to the next process in the queue.
+     *
+     * @return the new owner of the lock or {@code null} if the queue is empty.
+     */
+    public Grant unlockQueued(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        return txResult(tx -> {
+            locks.lock(tx, lockKey(orgId, projectId, scope, lockName));
+
+            delete(tx, instanceId, orgId, projectId, scope, lockName);
+
+            // the process might still be in the queue, e.g. if it releases
+            // a lock it didn't acquire
+            dequeue(tx, instanceId, scope, lockName);
+
+            return handOff(tx, orgId, projectId, scope, lockName);
+        });
+    }
+
+    /**
+     * Gives the lock to the next process in the queue if the lock is free.
+     *
+     * @return the new owner of the lock or {@code null} if the lock is taken
+     * or the queue is empty.
+     */
+    public Grant handOff(UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        return txResult(tx -> {
+            locks.lock(tx, lockKey(orgId, projectId, scope, lockName));
+            return handOff(tx, orgId, projectId, scope, lockName);
+        });
+    }
+
+    /**
+     * @return the number of waiting processes and the oldest {@code QUEUED_AT}
+     * value for each lock with a non-empty queue.
+     */
+    public Map<String, QueueStats> queueStatistics() {
+        return txResult(tx -> {
+            ProcessLockWaiters w = PROCESS_LOCK_WAITERS.as("w");
+            Field<UUID> scopeId = when(w.LOCK_SCOPE.eq(ProcessLockScope.ORG), w.ORG_ID).otherwise(w.PROJECT_ID);
+
+            Map<String, QueueStats> result = new HashMap<>();
+            tx.select(w.LOCK_SCOPE, scopeId, w.LOCK_NAME, count(), min(w.QUEUED_AT))
+                    .from(w)
+                    .groupBy(w.LOCK_SCOPE, scopeId, w.LOCK_NAME)
+                    .forEach(r -> result.put(r.value1() + "/" + r.value2() + "/" + r.value3(), new QueueStats(r.value4(), r.value5())));
+            return result;
+        });
+    }
+
+    private Grant handOff(DSLContext tx, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        if (get(tx, orgId, projectId, scope, lockName) != null) {
+            return null;
+        }
+
+        ProcessLockWaiters w = PROCESS_LOCK_WAITERS.as("w");
+        ProcessQueue q = PROCESS_QUEUE.as("q");
+
+        while (true) {
+            Record5<UUID, UUID, UUID, OffsetDateTime, String> next = tx.select(w.INSTANCE_ID, w.ORG_ID, w.PROJECT_ID, w.QUEUED_AT, q.CURRENT_STATUS)
+                    .from(w)
+                    .join(q).on(q.INSTANCE_ID.eq(w.INSTANCE_ID))
+                    .where(waiterFilter(w, orgId, projectId, scope, lockName))
+                    .orderBy(w.WAITER_SEQ)
+                    .limit(1)
+                    .fetchOne();
+
+            if (next == null) {
+                return null;
+            }
+
+            dequeue(tx, next.value1(), scope, lockName);
+
+            // skip the processes that are no longer waiting
+            if (isFinished(next.value5())) {
+                continue;
+            }
+
+            insert(tx, next.value1(), next.value2(), next.value3(), scope, lockName);
+
+            LockEntry lock = LockEntry.builder()
+                    .instanceId(next.value1())
+                    .orgId(next.value2())
+                    .projectId(next.value3())
+                    .scope(scope)
+                    .name(lockName)
+                    .build();
+
+            return new Grant(lock, next.value4());
+        }
+    }
+
+    private static void enqueue(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        ProcessLockWaiters w = PROCESS_LOCK_WAITERS.as("w");
+        tx.insertInto(w, w.INSTANCE_ID, w.ORG_ID, w.PROJECT_ID, w.LOCK_SCOPE, w.LOCK_NAME)
+                .values(instanceId, orgId, projectId, scope, lockName)
+                .onConflictDoNothing()
+                .execute();
+    }
+
+    private static void dequeue(DSLContext tx, UUID instanceId, ProcessLockScope scope, String lockName) {
+        ProcessLockWaiters w = PROCESS_LOCK_WAITERS.as("w");
+        tx.deleteFrom(w)
+                .where(w.INSTANCE_ID.eq(instanceId)
+                        .and(w.LOCK_SCOPE.eq(scope))
+                        .and(w.LOCK_NAME.eq(lockName)))
+                .execute();
+    }
+
+    private static Condition waiterFilter(ProcessLockWaiters w, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        Condition c = w.LOCK_NAME.eq(lockName)
+                .and(w.LOCK_SCOPE.eq(scope));
+
+        switch (scope) {
+            case ORG:
+                return c.and(w.ORG_ID.eq(orgId));
+            case PROJECT:
+                return c.and(w.PROJECT_ID.eq(projectId));
+            default:
+                throw new IllegalArgumentException("unknown lock scope: " + scope);
+        }
+    }
+
+    private static boolean isFinished(String status) {
+        for (String s : FINISHED_STATUSES) {
+            if (s.equals(status)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lockKey(UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
+        UUID scopeId = scope == ProcessLockScope.ORG ? orgId : projectId;
+        return "process-lock/" + scope + "/" + scopeId + "/" + lockName;
+    }
+
     private boolean insert(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
         ProcessLocks l = PROCESS_LOCKS.as("l");
         return tx.insertInto(l, l.INSTANCE_ID, l.ORG_ID, l.PROJECT_ID, l.LOCK_SCOPE, l.LOCK_NAME)
@@ -119,4 +328,67 @@ public class ProcessLocksDao extends AbstractDao {
                         .and(l.LOCK_NAME.eq(lockName)))
                 .execute();
     }
+
+    public static final class QueuedLockResult {
+
+        private final LockEntry owner;
+        private final Grant grant;
+
+        private QueuedLockResult(LockEntry owner, Grant grant) {
+            this.owner = owner;
+            this.grant = grant;
+        }
+
+        /**
+         * The current owner of the lock.
+         */
+        public LockEntry owner() {
+            return owner;
+        }
+
+        /**
+         * The lock was given to a queued process during the call, {@code null} otherwise.
+         */
+        public Grant grant() {
+            return grant;
+        }
+    }
+
+    public static final class Grant {
+
+        private final LockEntry lock;
+        private final OffsetDateTime queuedAt;
+
+        private Grant(LockEntry lock, OffsetDateTime queuedAt) {
+            this.lock = lock;
+            this.queuedAt = queuedAt;
+        }
+
+        public LockEntry lock() {
+            return lock;
+        }
+
+        public OffsetDateTime queuedAt() {
+            return queuedAt;
+        }
+    }
+
+    public static final class QueueStats {
+
+        private final int length;
+        private final OffsetDateTime oldestQueuedAt;
+
+        private QueueStats(int length, OffsetDateTime oldestQueuedAt) {
+            this.length = length;
+            this.oldestQueuedAt = oldestQueuedAt;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public OffsetDateTime oldestQueuedAt() {
+            return oldestQueuedAt;
+        }
+    }
 }
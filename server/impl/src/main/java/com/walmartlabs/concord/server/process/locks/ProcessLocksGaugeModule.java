@@ -0,0 +1,83 @@
+package com.walmartlabs.concord.server.process.locks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.DerivativeGauge;
+import com.codahale.metrics.Gauge;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import com.google.inject.multibindings.Multibinder;
+import com.walmartlabs.concord.server.process.locks.ProcessLocksDao.QueueStats;
+import com.walmartlabs.concord.server.sdk.metrics.GaugeProvider;
+
+import javax.inject.Named;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Named
+public class ProcessLocksGaugeModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        Provider<ProcessLocksDao> locksDaoProvider = getProvider(ProcessLocksDao.class);
+
+        // create the base gauge that caches all individual values
+        Gauge<Map<String, QueueStats>> base = new CachedGauge<Map<String, QueueStats>>(15, TimeUnit.SECONDS) {
+            @Override
+            protected Map<String, QueueStats> loadValue() {
+                return locksDaoProvider.get().queueStatistics();
+            }
+        };
+
+        Multibinder<GaugeProvider> gauges = Multibinder.newSetBinder(binder(), GaugeProvider.class);
+        gauges.addBinding().toInstance(create(base, "process-lock-queue-length", QueueStats::length));
+        gauges.addBinding().toInstance(create(base, "process-lock-queue-max-wait", s -> {
+            // in seconds
+            return Duration.between(s.oldestQueuedAt(), OffsetDateTime.now()).getSeconds();
+        }));
+    }
+
+    private static <T> GaugeProvider<Map<String, T>> create(Gauge<Map<String, QueueStats>> base, String name, Function<QueueStats, T> fn) {
+        return new GaugeProvider<Map<String, T>>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Gauge<Map<String, T>> gauge() {
+                return new DerivativeGauge<Map<String, QueueStats>, Map<String, T>>(base) {
+                    @Override
+                    protected Map<String, T> transform(Map<String, QueueStats> value) {
+                        Map<String, T> result = new HashMap<>(value.size());
+                        value.forEach((k, v) -> result.put(k, fn.apply(v)));
+                        return result;
+                    }
+                };
+            }
+        };
+    }
+}
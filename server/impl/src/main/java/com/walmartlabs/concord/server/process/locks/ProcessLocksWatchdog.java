@@ -23,8 +23,10 @@ package com.walmartlabs.concord.server.process.locks;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.Utils;
+import com.walmartlabs.concord.server.jooq.tables.ProcessLockWaiters;
 import com.walmartlabs.concord.server.jooq.tables.ProcessLocks;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessLocksRecord;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
 import org.jooq.Configuration;
@@ -36,14 +38,19 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCKS;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCK_WAITERS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 
 /**
  * Takes care of processes dead process locks.
  * E.g. removes locks for finished processes.
+ * <p>
+ * With the wait events enabled, such locks are normally released as soon as
+ * the process is finished, see {@link ProcessLockManager#onProcessFinished(UUID)}.
  */
 @Named("process-locks-watchdog")
 @Singleton
@@ -52,10 +59,12 @@ public class ProcessLocksWatchdog implements ScheduledTask {
     private static final Logger log = LoggerFactory.getLogger(ProcessLocksWatchdog.class);
 
     private final WatchdogDao dao;
+    private final ProcessLockManager lockManager;
 
     @Inject
-    public ProcessLocksWatchdog(WatchdogDao dao) {
+    public ProcessLocksWatchdog(WatchdogDao dao, ProcessLockManager lockManager) {
         this.dao = dao;
+        this.lockManager = lockManager;
     }
 
     @Override
@@ -66,8 +75,12 @@ public class ProcessLocksWatchdog implements ScheduledTask {
 
     @Override
     public void performTask() {
-        int count = dao.deleteStalledLocks();
-        log.debug("performTask -> {} locks deleted", count);
+        List<ProcessLocksRecord> deleted = dao.deleteStalledLocks();
+        deleted.forEach(l -> lockManager.onReleased(l.getOrgId(), l.getProjectId(), l.getLockScope(), l.getLockName()));
+        log.debug("performTask -> {} locks deleted", deleted.size());
+
+        int waiters = dao.deleteStalledWaiters();
+        log.debug("performTask -> {} lock waiters deleted", waiters);
     }
 
     @Named
@@ -85,7 +98,23 @@ public class ProcessLocksWatchdog implements ScheduledTask {
             super(cfg);
         }
 
-        public int deleteStalledLocks() {
+        public int deleteStalledWaiters() {
+            return txResult(tx -> {
+                ProcessQueue q = PROCESS_QUEUE.as("q");
+                ProcessLockWaiters w = PROCESS_LOCK_WAITERS.as("w");
+
+                SelectConditionStep<Record1<UUID>> finishedProcesses = tx.select(q.INSTANCE_ID)
+                        .from(q)
+                        .where(q.INSTANCE_ID.eq(w.INSTANCE_ID)
+                                .and(q.CURRENT_STATUS.in(Utils.toString(FINISHED_STATUSES))));
+
+                return tx.deleteFrom(w)
+                        .where(w.INSTANCE_ID.in(finishedProcesses))
+                        .execute();
+            });
+        }
+
+        public List<ProcessLocksRecord> deleteStalledLocks() {
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
                 ProcessLocks l = PROCESS_LOCKS.as("l");
@@ -97,7 +126,8 @@ public class ProcessLocksWatchdog implements ScheduledTask {
 
                 return tx.deleteFrom(l)
                         .where(l.INSTANCE_ID.in(finishedProcesses))
-                        .execute();
+                        .returning()
+                        .fetch();
             });
         }
     }
@@ -0,0 +1,336 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.Listeners;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.Range;
+import com.walmartlabs.concord.server.sdk.log.ProcessLogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogChunk;
+
+/**
+ * Buffers process log appends and writes them in batches. Consecutive chunks
+ * of the same process and segment are merged into a single chunk.
+ * <p>
+ * The callers are blocked until their data is written, so the resulting log
+ * ranges can be returned the same way as with the non-buffered appends.
+ */
+@Named
+@Singleton
+public class ProcessLogBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogBuffer.class);
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final ProcessLogsDao logsDao;
+    private final Listeners listeners;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final BlockingQueue<Entry> queue;
+
+    // guards the "running" flag, so no entries are added after the worker is stopped
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private boolean running;
+
+    private Thread worker;
+
+    private final Timer flushTimer;
+    private final Histogram batchSizeHistogram;
+    private final Histogram chunkCountHistogram;
+
+    @Inject
+    public ProcessLogBuffer(ProcessLogsDao logsDao,
+                            Listeners listeners,
+                            ProcessConfiguration cfg,
+                            MetricRegistry metricRegistry) {
+
+        this.logsDao = logsDao;
+        this.listeners = listeners;
+
+        this.enabled = cfg.isLogBufferEnabled();
+        this.batchSize = cfg.getLogBufferBatchSize();
+        this.queue = new ArrayBlockingQueue<>(cfg.getLogBufferMaxEntries());
+
+        this.flushTimer = metricRegistry.timer("process-log-buffer-flush");
+        this.batchSizeHistogram = metricRegistry.histogram("process-log-buffer-batch-size");
+        this.chunkCountHistogram = metricRegistry.histogram("process-log-buffer-chunk-count");
+        metricRegistry.gauge("process-log-buffer-depth", () -> queue::size);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        runningLock.writeLock().lock();
+        try {
+            running = true;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        worker = new Thread(this::run, "process-log-buffer");
+        worker.start();
+
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        // the worker flushes the remaining entries before exiting
+        try {
+            worker.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+
+        log.info("stop -> done, {} entries left", queue.size());
+    }
+
+    /**
+     * Appends a chunk to the process log using the buffer. Blocks until the chunk is written.
+     *
+     * @return the new chunk range or {@code null} if the buffer is not running.
+     * In the latter case the chunk must be appended directly.
+     */
+    public Range append(ProcessKey processKey, long segmentId, byte[] data) {
+        Entry e = new Entry(processKey, segmentId, data);
+
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                return null;
+            }
+
+            // blocks if the buffer is full
+            queue.put(e);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while appending a log: " + processKey);
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        try {
+            return e.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while appending a log: " + processKey);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            try {
+                Entry first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (isStopped()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // keep going, the remaining entries must be flushed
+                log.warn("run -> interrupted, flushing {} entries...", queue.size());
+            } catch (Exception e) {
+                log.error("run -> error while flushing logs: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean isStopped() {
+        runningLock.readLock().lock();
+        try {
+            return !running && queue.isEmpty();
+        } finally {
+            runningLock.readLock().unlock();
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        batchSizeHistogram.update(batch.size());
+
+        List<Run> runs = coalesce(batch);
+        chunkCountHistogram.update(runs.size());
+
+        List<Range> ranges;
+        try (Timer.Context ignored = flushTimer.time()) {
+            List<LogChunk> chunks = new ArrayList<>(runs.size());
+            for (Run r : runs) {
+                chunks.add(new LogChunk(r.processKey, r.segmentId, r.data()));
+            }
+
+            ranges = logsDao.append(chunks);
+        } catch (Exception e) {
+            batch.forEach(entry -> entry.result.completeExceptionally(e));
+            throw e;
+        }
+
+        // calculate the range of each individual entry
+        List<ProcessLogEntry> appended = new ArrayList<>(batch.size());
+        for (int i = 0; i < runs.size(); i++) {
+            Range runRange = ranges.get(i);
+
+            int lower = runRange.lower();
+            for (Entry entry : runs.get(i).entries) {
+                Range range = Range.builder()
+                        .lowerMode(runRange.lowerMode())
+                        .lower(lower)
+                        .upper(lower + entry.data.length)
+                        .upperMode(runRange.upperMode())
+                        .build();
+
+                lower += entry.data.length;
+
+                entry.result.complete(range);
+
+                appended.add(ProcessLogEntry.builder()
+                        .processKey(entry.processKey)
+                        .range(range)
+                        .msg(entry.data)
+                        .build());
+            }
+        }
+
+        // notify the listeners in the same order the data was appended
+        for (ProcessLogEntry entry : appended) {
+            try {
+                listeners.onProcessLogAppend(entry);
+            } catch (Exception e) {
+                log.warn("flush -> error while notifying listeners ({}): {}", entry.processKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Merges consecutive entries of the same process and segment.
+     * The order of entries of each process is preserved.
+     */
+    static List<Run> coalesce(List<Entry> entries) {
+        List<Run> result = new ArrayList<>();
+
+        // the last run of each process
+        Map<ProcessKey, Run> last = new HashMap<>();
+
+        for (Entry e : entries) {
+            Run r = last.get(e.processKey);
+            if (r == null || r.segmentId != e.segmentId) {
+                r = new Run(e.processKey, e.segmentId);
+                result.add(r);
+                last.put(e.processKey, r);
+            }
+
+            r.entries.add(e);
+        }
+
+        return result;
+    }
+
+    static final class Entry {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final byte[] data;
+        private final CompletableFuture<Range> result = new CompletableFuture<>();
+
+        Entry(ProcessKey processKey, long segmentId, byte[] data) { // NOSONAR
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+    }
+
+    static final class Run {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Run(ProcessKey processKey, long segmentId) {
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+        }
+
+        byte[] data() {
+            if (entries.size() == 1) {
+                return entries.get(0).data;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Entry e : entries) {
+                out.write(e.data, 0, e.data.length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
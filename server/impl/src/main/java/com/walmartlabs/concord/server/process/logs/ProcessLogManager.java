@@ -21,9 +21,11 @@ package com.walmartlabs.concord.server.process.logs;
  */
 
 import com.codahale.metrics.Counter;
+import com.walmartlabs.concord.common.LogBatch;
 import com.walmartlabs.concord.common.LogUtils;
 import com.walmartlabs.concord.server.Listeners;
 import com.walmartlabs.concord.server.process.LogSegment;
+import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.Range;
 import com.walmartlabs.concord.server.sdk.log.ProcessLogEntry;
@@ -33,12 +35,14 @@ import org.jooq.DSLContext;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.ws.rs.core.Response;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.common.LogUtils.LogLevel;
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.*;
 
 @Named
 @Singleton
@@ -47,6 +51,7 @@ public class ProcessLogManager {
     private static final long SYSTEM_SEGMENT_ID = 0;
     private static final String SYSTEM_SEGMENT_NAME = "system";
     private final ProcessLogsDao logsDao;
+    private final ProcessLogBuffer logBuffer;
     private final Listeners listeners;
 
     @InjectCounter
@@ -54,10 +59,12 @@ public class ProcessLogManager {
 
     @Inject
     public ProcessLogManager(ProcessLogsDao logsDao,
+                             ProcessLogBuffer logBuffer,
                              Listeners listeners,
                              Counter logBytesAppended) {
 
         this.logsDao = logsDao;
+        this.logBuffer = logBuffer;
         this.listeners = listeners;
         this.logBytesAppended = logBytesAppended;
     }
@@ -110,7 +117,14 @@ public class ProcessLogManager {
     }
 
     public int log(ProcessKey processKey, long segmentId, byte[] msg) {
-        Range range = logsDao.append(processKey, segmentId, msg);
+        // the buffer notifies the listeners itself
+        Range range = logBuffer.append(processKey, segmentId, msg);
+        if (range != null) {
+            logBytesAppended.inc(msg.length);
+            return range.upper();
+        }
+
+        range = logsDao.append(processKey, segmentId, msg);
         logBytesAppended.inc(msg.length);
 
         ProcessLogEntry entry = ProcessLogEntry.builder()
@@ -124,6 +138,62 @@ public class ProcessLogManager {
         return range.upper();
     }
 
+    /**
+     * Appends the data of multiple log segments and updates the segments
+     * in a single transaction.
+     *
+     * @return the end of the process log after the append or -1 if
+     * the batch contains no data.
+     */
+    public int log(ProcessKey processKey, LogBatch batch) {
+        List<LogChunk> chunks = new ArrayList<>(batch.data().size());
+        List<LogBatch.Data> data = new ArrayList<>(batch.data().size());
+        for (LogBatch.Data d : batch.data()) {
+            if (d.bytes().length == 0) {
+                continue;
+            }
+
+            chunks.add(new LogChunk(processKey, d.segmentId(), d.bytes()));
+            data.add(d);
+        }
+
+        List<SegmentUpdate> updates = new ArrayList<>(batch.statuses().size());
+        for (LogBatch.Status s : batch.statuses()) {
+            updates.add(new SegmentUpdate(s.segmentId(), parseStatus(s.status()), s.warnings(), s.errors()));
+        }
+
+        List<Range> ranges = logsDao.append(processKey, chunks, updates);
+
+        int upper = -1;
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            byte[] msg = data.get(i).bytes();
+
+            logBytesAppended.inc(msg.length);
+            upper = Math.max(upper, range.upper());
+
+            listeners.onProcessLogAppend(ProcessLogEntry.builder()
+                    .processKey(processKey)
+                    .range(range)
+                    .msg(msg)
+                    .build());
+        }
+
+        return upper;
+    }
+
+    private static LogSegment.Status parseStatus(String s) {
+        if (s == null) {
+            return null;
+        }
+
+        try {
+            return LogSegment.Status.valueOf(s);
+        } catch (IllegalArgumentException e) {
+            throw new ConcordApplicationException("Invalid segment status: " + s, Response.Status.BAD_REQUEST);
+        }
+    }
+
     private void log(ProcessKey processKey, LogLevel level, String msg, Object... args) {
         log(processKey, LogUtils.formatMessage(level, msg, args));
     }
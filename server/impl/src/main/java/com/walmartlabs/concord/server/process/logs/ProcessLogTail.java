@@ -0,0 +1,246 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.log.ProcessLogEntry;
+import com.walmartlabs.concord.server.sdk.log.ProcessLogListener;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+
+/**
+ * Keeps the most recent data of process logs that are being "tailed" by
+ * the clients. Fed directly by the log appends handled by this server instance,
+ * so the clients can wait for new data without polling the DB.
+ */
+@Named
+@Singleton
+public class ProcessLogTail implements ProcessLogListener {
+
+    private static final long BUFFER_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private final ProcessLogsDao logsDao;
+    private final int bufferSize;
+    private final Cache<UUID, TailBuffer> buffers;
+
+    private final Meter hits;
+    private final Meter misses;
+
+    @Inject
+    public ProcessLogTail(ProcessConfiguration cfg, ProcessLogsDao logsDao, MetricRegistry metricRegistry) {
+        this.logsDao = logsDao;
+        this.bufferSize = cfg.getLogTailBufferSize();
+
+        // buffers are created only for the processes that someone is watching
+        this.buffers = CacheBuilder.newBuilder()
+                .maximumSize(cfg.getLogTailMaxBuffers())
+                .expireAfterAccess(BUFFER_TTL, TimeUnit.MILLISECONDS)
+                .build();
+
+        this.hits = metricRegistry.meter("process-log-tail-hits");
+        this.misses = metricRegistry.meter("process-log-tail-misses");
+    }
+
+    @Override
+    public void onAppend(ProcessLogEntry entry) {
+        TailBuffer b = buffers.getIfPresent(entry.processKey().getInstanceId());
+        if (b == null) {
+            return;
+        }
+
+        b.append(entry.range().lower(), entry.msg());
+    }
+
+    /**
+     * Returns the log data starting from {@code offset}. If there's no new data,
+     * waits up to {@code waitMs} for it to appear. The DB is used only when
+     * the requested data is not available in memory.
+     */
+    public ProcessLog read(ProcessKey processKey, int offset, long waitMs) {
+        TailBuffer b = buffer(processKey.getInstanceId());
+
+        ProcessLog result = b.read(offset, waitMs);
+        if (result != null && !result.getChunks().isEmpty()) {
+            hits.mark();
+            return result;
+        }
+
+        // a gap in the buffer or no new data. The latter is possible when the data
+        // was appended via another server instance
+        misses.mark();
+
+        ProcessLog l = logsDao.data(processKey, offset, null);
+        b.init(l.getSize());
+
+        if (!l.getChunks().isEmpty() || result != null || waitMs <= 0) {
+            return l;
+        }
+
+        // the buffer wasn't initialized before, now we can wait for new data
+        result = b.read(offset, waitMs);
+        if (result != null && !result.getChunks().isEmpty()) {
+            return result;
+        }
+
+        return l;
+    }
+
+    private TailBuffer buffer(UUID instanceId) {
+        try {
+            return buffers.get(instanceId, () -> new TailBuffer(bufferSize));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A ring buffer with the last {@code capacity} bytes of a log.
+     * Starts empty and grows as the data is appended.
+     */
+    static final class TailBuffer {
+
+        private static final int MIN_SIZE = 4096;
+
+        private final int capacity;
+        private byte[] data = new byte[0];
+
+        // log offsets of the first buffered byte and the end of the log
+        private long start = -1;
+        private long end = -1;
+
+        TailBuffer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void init(int size) {
+            if (start >= 0) {
+                return;
+            }
+
+            start = size;
+            end = size;
+        }
+
+        synchronized void append(int lower, byte[] ab) {
+            if (start >= 0 && lower < end) {
+                // already seen or arrived out of order
+                return;
+            }
+
+            if (start < 0 || lower > end) {
+                // missed some data, start over
+                start = lower;
+                end = lower;
+            }
+
+            grow(Math.min(lower + ab.length - start, capacity));
+
+            int skip = Math.max(0, ab.length - data.length);
+            for (int i = skip; i < ab.length; i++) {
+                data[(int) ((lower + i) % data.length)] = ab[i];
+            }
+
+            end = lower + ab.length;
+            start = Math.max(start, end - data.length);
+
+            notifyAll();
+        }
+
+        synchronized int allocated() {
+            return data.length;
+        }
+
+        /**
+         * Makes sure the buffer can hold {@code size} bytes, keeps the buffered data.
+         */
+        private void grow(long size) {
+            if (size <= data.length) {
+                return;
+            }
+
+            int n = Math.max(data.length, Math.min(MIN_SIZE, capacity));
+            while (n < size) {
+                n = (int) Math.min(n * 2L, capacity);
+            }
+
+            byte[] ab = new byte[n];
+            for (long o = start; o < end; o++) {
+                ab[(int) (o % n)] = data[(int) (o % data.length)];
+            }
+            data = ab;
+        }
+
+        /**
+         * @return the data starting from {@code offset} (the list of chunks is empty
+         * if there's no new data) or {@code null} if the buffer doesn't have
+         * the requested data.
+         */
+        synchronized ProcessLog read(int offset, long waitMs) {
+            if (start < 0 || offset < start || offset > end) {
+                return null;
+            }
+
+            long deadline = System.currentTimeMillis() + waitMs;
+            while (end == offset) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (offset < start || offset > end) {
+                return null;
+            }
+
+            byte[] ab = new byte[(int) (end - offset)];
+            for (int i = 0; i < ab.length; i++) {
+                ab[i] = data[(int) ((offset + i) % data.length)];
+            }
+
+            if (ab.length == 0) {
+                return new ProcessLog((int) end, Collections.emptyList());
+            }
+
+            return new ProcessLog((int) end, Collections.singletonList(new ProcessLogChunk(offset, ab)));
+        }
+    }
+}
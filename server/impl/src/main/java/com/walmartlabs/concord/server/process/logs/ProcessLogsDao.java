@@ -35,8 +35,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.Serializable;
 import java.time.OffsetDateTime;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.db.PgUtils.upperRange;
 import static com.walmartlabs.concord.server.jooq.Routines.*;
@@ -80,6 +79,95 @@ public class ProcessLogsDao extends AbstractDao {
         return PgIntRange.parse(r.getLogRange().toString());
     }
 
+    /**
+     * Appends multiple chunks in a single transaction. Chunks of the same process
+     * are appended in the order they are listed.
+     *
+     * @return the new chunk ranges, in the same order as the chunks.
+     */
+    public List<Range> append(List<LogChunk> chunks) {
+        return txResult(tx -> append(tx, chunks));
+    }
+
+    /**
+     * Appends multiple chunks of a process and updates the process' log segments
+     * in a single transaction. The segments are updated after all chunks are appended.
+     *
+     * @return the new chunk ranges, in the same order as the chunks.
+     */
+    public List<Range> append(ProcessKey processKey, List<LogChunk> chunks, List<SegmentUpdate> updates) {
+        return txResult(tx -> {
+            List<Range> result = append(tx, chunks);
+
+            for (SegmentUpdate u : updates) {
+                updateSegment(tx, processKey, u.segmentId, u.status, u.warnings, u.errors);
+            }
+
+            return result;
+        });
+    }
+
+    private static List<Range> append(DSLContext tx, List<LogChunk> chunks) {
+        List<Range> result = new ArrayList<>(chunks.size());
+
+        // the range functions can't see the rows inserted by the same statement,
+        // so each statement can contain only one chunk per process
+        List<LogChunk> batch = new ArrayList<>();
+        Set<UUID> instanceIds = new HashSet<>();
+        for (LogChunk c : chunks) {
+            if (!instanceIds.add(c.processKey.getInstanceId())) {
+                result.addAll(insert(tx, batch));
+
+                batch.clear();
+                instanceIds.clear();
+                instanceIds.add(c.processKey.getInstanceId());
+            }
+
+            batch.add(c);
+        }
+
+        result.addAll(insert(tx, batch));
+        return result;
+    }
+
+    private static List<Range> insert(DSLContext tx, List<LogChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        InsertQuery<ProcessLogDataRecord> q = tx.insertQuery(PROCESS_LOG_DATA);
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i > 0) {
+                q.newRecord();
+            }
+
+            LogChunk c = chunks.get(i);
+            UUID instanceId = c.processKey.getInstanceId();
+            OffsetDateTime createdAt = c.processKey.getCreatedAt();
+
+            q.addValue(PROCESS_LOG_DATA.INSTANCE_ID, value(instanceId));
+            q.addValue(PROCESS_LOG_DATA.INSTANCE_CREATED_AT, value(createdAt));
+            q.addValue(PROCESS_LOG_DATA.SEGMENT_ID, value(c.segmentId));
+            q.addValue(PROCESS_LOG_DATA.SEGMENT_RANGE, processLogDataSegmentNextRange2(instanceId, createdAt, c.segmentId, c.data.length));
+            q.addValue(PROCESS_LOG_DATA.LOG_RANGE, processLogDataNextRange2(instanceId, createdAt, c.data.length));
+            q.addValue(PROCESS_LOG_DATA.CHUNK_DATA, value(c.data));
+        }
+
+        q.setReturning(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.LOG_RANGE);
+        q.execute();
+
+        Map<UUID, Range> ranges = new HashMap<>();
+        for (ProcessLogDataRecord r : q.getReturnedRecords()) {
+            ranges.put(r.getInstanceId(), PgIntRange.parse(r.getLogRange().toString()));
+        }
+
+        List<Range> result = new ArrayList<>(chunks.size());
+        for (LogChunk c : chunks) {
+            result.add(ranges.get(c.processKey.getInstanceId()));
+        }
+        return result;
+    }
+
     public long createSegment(ProcessKey processKey, UUID correlationId, String name, OffsetDateTime createdAt, String status) {
         return txResult(tx -> tx.insertInto(PROCESS_LOG_SEGMENTS)
                 .columns(PROCESS_LOG_SEGMENTS.INSTANCE_ID,
@@ -291,6 +379,34 @@ public class ProcessLogsDao extends AbstractDao {
                 .build();
     }
 
+    public static final class LogChunk {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final byte[] data;
+
+        public LogChunk(ProcessKey processKey, long segmentId, byte[] data) { // NOSONAR
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+    }
+
+    public static final class SegmentUpdate {
+
+        private final long segmentId;
+        private final LogSegment.Status status;
+        private final Integer warnings;
+        private final Integer errors;
+
+        public SegmentUpdate(long segmentId, LogSegment.Status status, Integer warnings, Integer errors) {
+            this.segmentId = segmentId;
+            this.status = status;
+            this.warnings = warnings;
+            this.errors = errors;
+        }
+    }
+
     public static final class ProcessLogChunk implements Serializable {
 
         private final int start;
@@ -0,0 +1,211 @@
+package com.walmartlabs.concord.server.process.pipelines.processors;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.sdk.Constants;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.pipelines.processors.RepositoryProcessor.RepositoryInfo;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches parsed process definitions of repository-based processes.
+ * <p>
+ * Besides the repository's ID, commit ID and path, the key contains
+ * a fingerprint of the definition files in the workspace: the root
+ * {@code concord.yml} files and the YAML files in the {@code concord}
+ * directory (and in the default v1 definition directories for the v1
+ * runtime). So the cached definition is not used if the process' payload
+ * contains additional or modified definition files (e.g. in a payload archive).
+ * <p>
+ * Definitions with {@code imports} or with custom {@code resources} are not
+ * cached. The imports must be processed for each process and the custom
+ * resources can point to any file in the workspace.
+ */
+@Named
+@Singleton
+public class ProcessDefinitionCache {
+
+    private static final List<String> DIR_NAMES = Collections.singletonList(Constants.Files.PROJECT_FILES_DIR_NAME);
+
+    private static final List<String> V1_DIR_NAMES = ImmutableList.<String>builder()
+            .add(Constants.Files.PROJECT_FILES_DIR_NAME)
+            .add(Constants.Files.DEFINITIONS_DIR_NAMES)
+            .add(Constants.Files.PROFILES_DIR_NAME)
+            .build();
+
+    private static final Pattern RESOURCES_SECTION = Pattern.compile("^resources\\s*:", Pattern.MULTILINE);
+
+    private final boolean enabled;
+    private final Cache<Key, ProcessDefinition> cache;
+
+    @Inject
+    public ProcessDefinitionCache(ProcessConfiguration cfg, MetricRegistry metricRegistry) {
+        this.enabled = cfg.isDefinitionCacheEnabled();
+
+        // the weight is the total size of the definition files
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(cfg.getDefinitionCacheMaxWeight())
+                .weigher((Key k, ProcessDefinition v) -> k.weight)
+                .recordStats()
+                .build();
+
+        metricRegistry.gauge("process-definition-cache-hits", () -> () -> cache.stats().hitCount());
+        metricRegistry.gauge("process-definition-cache-misses", () -> () -> cache.stats().missCount());
+        metricRegistry.gauge("process-definition-cache-evictions", () -> () -> cache.stats().evictionCount());
+        metricRegistry.gauge("process-definition-cache-size", () -> cache::size);
+    }
+
+    /**
+     * @return the cache key or {@code null} if the process definition can't be cached.
+     */
+    public Key key(RepositoryInfo repo, String runtime, Path workDir) throws IOException {
+        if (!enabled || repo == null || repo.getCommitInfo() == null || repo.getCommitInfo().getId() == null) {
+            return null;
+        }
+
+        Hasher h = Hashing.sha256().newHasher();
+        long size = 0;
+
+        for (String n : Constants.Files.PROJECT_ROOT_FILE_NAMES) {
+            Path f = workDir.resolve(n);
+            if (!Files.isRegularFile(f)) {
+                continue;
+            }
+
+            byte[] ab = Files.readAllBytes(f);
+            if (RESOURCES_SECTION.matcher(new String(ab, StandardCharsets.UTF_8)).find()) {
+                return null;
+            }
+
+            h.putString(n, StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putInt(ab.length)
+                    .putBytes(ab);
+            size += ab.length;
+        }
+
+        for (Path f : listDefinitionFiles(workDir, runtime)) {
+            byte[] ab = Files.readAllBytes(f);
+            h.putString(workDir.relativize(f).toString(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putInt(ab.length)
+                    .putBytes(ab);
+            size += ab.length;
+        }
+
+        return new Key(repo.getId(), repo.getCommitInfo().getId(), repo.getPath(), runtime,
+                h.hash().toString(), (int) Math.min(size, Integer.MAX_VALUE));
+    }
+
+    public ProcessDefinition get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(Key key, ProcessDefinition pd) {
+        if (pd.imports() != null && !pd.imports().isEmpty()) {
+            return;
+        }
+
+        cache.put(key, pd);
+    }
+
+    private static List<Path> listDefinitionFiles(Path workDir, String runtime) throws IOException {
+        List<String> dirNames = "concord-v2".equals(runtime) ? DIR_NAMES : V1_DIR_NAMES; // TODO constants
+
+        List<Path> result = new ArrayList<>();
+        for (String n : dirNames) {
+            Path dir = workDir.resolve(n);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+
+            try (Stream<Path> s = Files.walk(dir)) {
+                result.addAll(s.filter(ProcessDefinitionCache::isYaml)
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isYaml(Path p) {
+        String n = p.getFileName().toString();
+        return (n.endsWith(".yml") || n.endsWith(".yaml")) && Files.isRegularFile(p);
+    }
+
+    public static final class Key {
+
+        private final UUID repoId;
+        private final String commitId;
+        private final String path;
+        private final String runtime;
+        private final String fingerprint;
+        private final int weight;
+
+        private Key(UUID repoId, String commitId, String path, String runtime, String fingerprint, int weight) {
+            this.repoId = repoId;
+            this.commitId = commitId;
+            this.path = path;
+            this.runtime = runtime;
+            this.fingerprint = fingerprint;
+            this.weight = weight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(repoId, key.repoId) &&
+                    Objects.equals(commitId, key.commitId) &&
+                    Objects.equals(path, key.path) &&
+                    Objects.equals(runtime, key.runtime) &&
+                    Objects.equals(fingerprint, key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repoId, commitId, path, runtime, fingerprint);
+        }
+    }
+}
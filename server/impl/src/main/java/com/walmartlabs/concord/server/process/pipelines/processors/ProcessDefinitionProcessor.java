@@ -54,13 +54,16 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
     private final ProjectLoader projectLoader;
     private final ImportsNormalizerFactory importsNormalizer;
+    private final ProcessDefinitionCache definitionCache;
 
     @Inject
     public ProcessDefinitionProcessor(ProjectLoader projectLoader,
-                                      ImportsNormalizerFactory importsNormalizer) {
+                                      ImportsNormalizerFactory importsNormalizer,
+                                      ProcessDefinitionCache definitionCache) {
 
         this.projectLoader = projectLoader;
         this.importsNormalizer = importsNormalizer;
+        this.definitionCache = definitionCache;
     }
 
     @Override
@@ -76,14 +79,23 @@ public class ProcessDefinitionProcessor implements PayloadProcessor {
 
         try {
             String runtime = getRuntimeType(payload);
-            ProjectLoader.Result result = projectLoader.loadProject(workDir, runtime, importsNormalizer.forProject(projectId));
 
-            List<Snapshot> snapshots = result.snapshots();
-            for (Snapshot s : snapshots) {
-                payload = addSnapshot(payload, s);
+            ProcessDefinitionCache.Key cacheKey = definitionCache.key(payload.getHeader(RepositoryProcessor.REPOSITORY_INFO_KEY), runtime, workDir);
+            ProcessDefinition pd = cacheKey != null ? definitionCache.get(cacheKey) : null;
+            if (pd == null) {
+                ProjectLoader.Result result = projectLoader.loadProject(workDir, runtime, importsNormalizer.forProject(projectId));
+
+                List<Snapshot> snapshots = result.snapshots();
+                for (Snapshot s : snapshots) {
+                    payload = addSnapshot(payload, s);
+                }
+
+                pd = result.projectDefinition();
+                if (cacheKey != null) {
+                    definitionCache.put(cacheKey, pd);
+                }
             }
 
-            ProcessDefinition pd = result.projectDefinition();
             int depsCount = pd.configuration().dependencies().size();
             if (depsCount > MAX_DEPENDENCIES_COUNT) {
                 String msg = String.format("Too many dependencies. Current: %d, maximum allowed: %d", depsCount, MAX_DEPENDENCIES_COUNT);
@@ -31,6 +31,7 @@ import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.keys.HeaderKey;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.repository.RepositoryManager;
+import com.walmartlabs.concord.server.repository.RepositorySnapshots;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import org.slf4j.Logger;
@@ -91,7 +92,16 @@ public class RepositoryProcessor implements PayloadProcessor {
 
         Path dst = payload.getHeader(Payload.WORKSPACE_DIR);
 
-        Payload newPayload = repositoryManager.withLock(repo.getUrl(), () -> {
+        // the same commit was already exported before, no need to fetch the repository
+        RepositorySnapshots.Result cached = repositoryManager.exportSnapshot(repo, dst);
+        if (cached != null) {
+            RepositoryInfo i = toRepositoryInfo(repo, cached.info(), cached.branch());
+            return chain.process(payload
+                    .putHeader(REPOSITORY_INFO_KEY, i)
+                    .putHeader(REPOSITORY_SNAPSHOT, Collections.singletonList(cached.snapshot())));
+        }
+
+        Exported exported = repositoryManager.withLock(repo.getUrl(), () -> {
             try {
                 Repository repository = payload.getHeader(Payload.REPOSITORY);
                 if (repository == null) {
@@ -99,19 +109,7 @@ public class RepositoryProcessor implements PayloadProcessor {
                 }
 
                 Snapshot snapshot = repository.export(dst);
-                com.walmartlabs.concord.repository.RepositoryInfo info = repository.info();
-                String branch = repository.branch();
-
-                CommitInfo ci = null;
-                if (info != null) {
-                    ci = new CommitInfo(info.getCommitId(), info.getAuthor(), info.getMessage());
-                }
-
-                RepositoryInfo i = new RepositoryInfo(repo.getId(), repo.getName(), repo.getUrl(), repo.getPath(), branch, repo.getCommitId(), ci);
-                return payload
-                        .putHeader(REPOSITORY_INFO_KEY, i)
-                        .putHeader(Payload.REPOSITORY, repository)
-                        .putHeader(REPOSITORY_SNAPSHOT, Collections.singletonList(snapshot));
+                return new Exported(repository, repository.info(), snapshot);
             } catch (Exception e) {
                 log.error("process -> repository error", e);
                 logManager.error(processKey, "Error while processing a repository: " + repo.getUrl(), e);
@@ -119,7 +117,25 @@ public class RepositoryProcessor implements PayloadProcessor {
             }
         });
 
-        return chain.process(newPayload);
+        String branch = exported.repository.branch();
+
+        // copied from the exported files, no need to hold the repository's lock
+        repositoryManager.storeSnapshot(repo, exported.info, branch, dst, exported.snapshot);
+
+        RepositoryInfo i = toRepositoryInfo(repo, exported.info, branch);
+        return chain.process(payload
+                .putHeader(REPOSITORY_INFO_KEY, i)
+                .putHeader(Payload.REPOSITORY, exported.repository)
+                .putHeader(REPOSITORY_SNAPSHOT, Collections.singletonList(exported.snapshot)));
+    }
+
+    private static RepositoryInfo toRepositoryInfo(RepositoryEntry repo, com.walmartlabs.concord.repository.RepositoryInfo info, String branch) {
+        CommitInfo ci = null;
+        if (info != null) {
+            ci = new CommitInfo(info.getCommitId(), info.getAuthor(), info.getMessage());
+        }
+
+        return new RepositoryInfo(repo.getId(), repo.getName(), repo.getUrl(), repo.getPath(), branch, repo.getCommitId(), ci);
     }
 
     private RepositoryEntry getRepositoryEntry(Payload payload) {
@@ -145,6 +161,19 @@ public class RepositoryProcessor implements PayloadProcessor {
         return repo;
     }
 
+    private static final class Exported {
+
+        private final Repository repository;
+        private final com.walmartlabs.concord.repository.RepositoryInfo info;
+        private final Snapshot snapshot;
+
+        private Exported(Repository repository, com.walmartlabs.concord.repository.RepositoryInfo info, Snapshot snapshot) {
+            this.repository = repository;
+            this.info = info;
+            this.snapshot = snapshot;
+        }
+    }
+
     public static final class RepositoryInfo implements Serializable {
 
         private final UUID id;
@@ -0,0 +1,168 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects process heartbeats and writes them using a single UPDATE
+ * every {@code flushInterval}.
+ * <p>
+ * A heartbeat can reach the DB up to {@code flushInterval} later than it was
+ * received, see {@link #getMaxDelay()}.
+ */
+@Named
+@Singleton
+public class ProcessHeartbeatBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessHeartbeatBuffer.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final ProcessQueueDao queueDao;
+
+    private final boolean enabled;
+    private final long flushInterval;
+
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    private Thread worker;
+
+    private final Timer flushTimer;
+
+    @Inject
+    public ProcessHeartbeatBuffer(ProcessQueueDao queueDao,
+                                  ProcessConfiguration cfg,
+                                  MetricRegistry metricRegistry) {
+
+        this.queueDao = queueDao;
+
+        this.enabled = cfg.isHeartbeatBufferEnabled();
+        this.flushInterval = cfg.getHeartbeatBufferFlushInterval().toMillis();
+
+        this.flushTimer = metricRegistry.timer("process-heartbeat-buffer-flush");
+        metricRegistry.gauge("process-heartbeat-buffer-size", () -> pending::size);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        worker = new Thread(this::run, "process-heartbeat-buffer");
+        worker.start();
+
+        log.info("start -> done, flush interval {}ms", flushInterval);
+    }
+
+    @Override
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+
+        // write the remaining heartbeats
+        flush();
+
+        log.info("stop -> done");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return max delay between receiving a heartbeat and writing it into the DB
+     */
+    public long getMaxDelay() {
+        return enabled ? flushInterval : 0;
+    }
+
+    /**
+     * Records a heartbeat of the specified process. The process must exist.
+     */
+    public void add(UUID instanceId) {
+        pending.add(instanceId);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(flushInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("run -> error while writing heartbeats: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // heartbeats received after this point are written either now or
+        // with the next flush, the timestamp is taken when the UPDATE runs
+        List<UUID> ids = new ArrayList<>(pending);
+        pending.removeAll(ids);
+
+        // sorted to keep the same order of updates on all server instances
+        Collections.sort(ids);
+
+        try (Timer.Context ignored = flushTimer.time()) {
+            for (List<UUID> batch : Lists.partition(ids, MAX_BATCH_SIZE)) {
+                queueDao.touch(batch);
+            }
+        }
+    }
+}
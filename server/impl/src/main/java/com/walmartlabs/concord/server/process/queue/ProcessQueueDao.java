@@ -348,6 +348,18 @@ public class ProcessQueueDao extends AbstractDao {
         });
     }
 
+    /**
+     * Updates {@code last_updated_at} of the specified processes in a single transaction.
+     *
+     * @return the number of updated processes
+     */
+    public int touch(Collection<UUID> instanceIds) {
+        return txResult(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentOffsetDateTime())
+                .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))
+                .execute());
+    }
+
     public ProcessEntry get(ProcessKey processKey) {
         return get(processKey, DEFAULT_INCLUDES);
     }
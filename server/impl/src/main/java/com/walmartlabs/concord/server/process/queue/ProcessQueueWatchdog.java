@@ -117,6 +117,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
     private final PayloadManager payloadManager;
     private final ProcessManager processManager;
     private final ProcessQueueManager queueManager;
+    private final ProcessHeartbeatBuffer heartbeatBuffer;
 
     @Inject
     public ProcessQueueWatchdog(ProcessWatchdogConfiguration cfg,
@@ -127,7 +128,8 @@ public class ProcessQueueWatchdog implements ScheduledTask {
                                 UserDao userDao,
                                 PayloadManager payloadManager,
                                 ProcessManager processManager,
-                                ProcessQueueManager queueManager) {
+                                ProcessQueueManager queueManager,
+                                ProcessHeartbeatBuffer heartbeatBuffer) {
         this.cfg = cfg;
 
         this.queueDao = queueDao;
@@ -138,6 +140,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         this.payloadManager = payloadManager;
         this.processManager = processManager;
         this.queueManager = queueManager;
+        this.heartbeatBuffer = heartbeatBuffer;
     }
 
     @Override
@@ -199,8 +202,14 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         public void run() {
             String maxAge = cfg.getMaxStalledAge();
 
+            // buffered heartbeats are written with a delay (on any server instance)
+            long heartbeatDelay = heartbeatBuffer.getMaxDelay();
+
             watchdogDao.transaction(tx -> {
                 Field<OffsetDateTime> cutOff = currentOffsetDateTime().minus(interval(maxAge));
+                if (heartbeatDelay > 0) {
+                    cutOff = cutOff.minus(interval(heartbeatDelay + " milliseconds"));
+                }
 
                 List<ProcessKey> pks = watchdogDao.pollStalled(tx, POTENTIAL_STALLED_STATUSES, cutOff, 1);
                 for (ProcessKey pk : pks) {
@@ -0,0 +1,90 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.sdk.EventType;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.process.locks.ProcessLockManager;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.sdk.events.ProcessEvent;
+import com.walmartlabs.concord.server.sdk.events.ProcessEventListener;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * Publishes {@link ProcessWaitEvents} for the process status changes and
+ * new sleep wait conditions. Locks left by finished processes are released
+ * immediately.
+ */
+@Named
+@Singleton
+public class ProcessWaitEventListener implements ProcessEventListener {
+
+    private static final Set<String> FINAL_STATUSES = new HashSet<>(Arrays.asList(
+            ProcessStatus.FINISHED.name(),
+            ProcessStatus.FAILED.name(),
+            ProcessStatus.CANCELLED.name(),
+            ProcessStatus.TIMED_OUT.name()));
+
+    private final ProcessWaitEvents waitEvents;
+    private final ProcessLockManager lockManager;
+    private final ConcordObjectMapper objectMapper;
+
+    @Inject
+    public ProcessWaitEventListener(ProcessWaitEvents waitEvents,
+                                    ProcessLockManager lockManager,
+                                    ConcordObjectMapper objectMapper) {
+
+        this.waitEvents = waitEvents;
+        this.lockManager = lockManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void onEvents(List<ProcessEvent> events) {
+        if (!waitEvents.isEnabled()) {
+            return;
+        }
+
+        for (ProcessEvent e : events) {
+            Map<String, Object> data = e.data();
+            if (data == null) {
+                continue;
+            }
+
+            if (EventType.PROCESS_STATUS.name().equals(e.eventType())) {
+                if (FINAL_STATUSES.contains(data.get("status"))) {
+                    UUID instanceId = e.processKey().getInstanceId();
+                    waitEvents.processFinished(instanceId);
+                    lockManager.onProcessFinished(instanceId);
+                }
+            } else if (EventType.PROCESS_WAIT.name().equals(e.eventType())) {
+                if (WaitType.PROCESS_SLEEP.name().equals(data.get("type"))) {
+                    ProcessSleepCondition c = (ProcessSleepCondition) objectMapper.fromString(objectMapper.toString(data), AbstractWaitCondition.class);
+                    waitEvents.sleepStarted(e.processKey().getInstanceId(), c.until());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import static com.walmartlabs.concord.server.process.queue.ProcessWaitEvents.*;
+
+/**
+ * Handles {@link ProcessWaitEvents} by checking only the processes
+ * waiting for the specific event.
+ */
+@Named
+@Singleton
+public class ProcessWaitEventWorker implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessWaitEventWorker.class);
+
+    private static final long POLL_TIMEOUT = 1000;
+
+    private final ProcessWaitEvents waitEvents;
+    private final ProcessWaitWatchdog watchdog;
+
+    private final Timer handleTimer;
+
+    private Thread worker;
+
+    @Inject
+    public ProcessWaitEventWorker(ProcessWaitEvents waitEvents,
+                                  ProcessWaitWatchdog watchdog,
+                                  MetricRegistry metricRegistry) {
+
+        this.waitEvents = waitEvents;
+        this.watchdog = watchdog;
+
+        this.handleTimer = metricRegistry.timer("process-wait-events-handle");
+    }
+
+    @Override
+    public void start() {
+        if (!waitEvents.isEnabled()) {
+            return;
+        }
+
+        worker = new Thread(this::run, "process-wait-event-worker");
+        worker.start();
+
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        // the remaining events are dropped, the periodic check takes care of them
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+
+        log.info("stop -> done");
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WaitEvent e;
+            try {
+                e = waitEvents.poll(POLL_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (e == null) {
+                continue;
+            }
+
+            try (Timer.Context ignored = handleTimer.time()) {
+                handle(e);
+            } catch (Exception ex) {
+                log.warn("run -> error while handling {}: {}", e, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void handle(WaitEvent e) {
+        if (e instanceof ProcessFinished) {
+            watchdog.onProcessFinished(((ProcessFinished) e).instanceId);
+        } else if (e instanceof LockReleased) {
+            LockReleased l = (LockReleased) e;
+            watchdog.onLockReleased(l.orgId, l.projectId, l.scope, l.name);
+        } else if (e instanceof ProcessReady) {
+            watchdog.onProcessReady(((ProcessReady) e).instanceId);
+        } else {
+            log.warn("handle -> unknown event: {}", e);
+        }
+    }
+}
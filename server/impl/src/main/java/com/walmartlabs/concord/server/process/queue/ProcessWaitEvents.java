@@ -0,0 +1,198 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessWaitWatchdogConfiguration;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process bus of events that can resolve wait conditions: finished processes,
+ * released locks, expired sleep timeouts and locks handed over to queued processes. The events are handled by
+ * {@link ProcessWaitEventWorker}.
+ * <p>
+ * Delivery is not guaranteed, e.g. the events are dropped when the queue is full
+ * or the server restarts. {@link ProcessWaitWatchdog} periodically checks
+ * all waiting processes anyway.
+ * <p>
+ * Only the sleep timeouts that expire before the next periodic check are queued,
+ * the longer ones are left to the periodic check. Otherwise long sleeps
+ * could fill up the queue.
+ */
+@Named
+@Singleton
+public class ProcessWaitEvents {
+
+    /**
+     * The events are usually published before the transaction is committed.
+     * The delay gives the transaction a chance to complete before the waiting
+     * processes are checked.
+     */
+    private static final long EVENT_DELAY = 250;
+
+    private final boolean enabled;
+    private final int maxEvents;
+    private final long sleepHorizon;
+    private final DelayQueue<WaitEvent> queue = new DelayQueue<>();
+
+    private final Meter dropped;
+
+    @Inject
+    public ProcessWaitEvents(ProcessWaitWatchdogConfiguration cfg, MetricRegistry metricRegistry) {
+        this.enabled = cfg.isEventsEnabled();
+        this.maxEvents = cfg.getMaxEvents();
+        this.sleepHorizon = cfg.getPeriod().toMillis();
+
+        this.dropped = metricRegistry.meter("process-wait-events-dropped");
+        metricRegistry.gauge("process-wait-events-queue-size", () -> queue::size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void processFinished(UUID instanceId) {
+        add(new ProcessFinished(instanceId, System.currentTimeMillis() + EVENT_DELAY));
+    }
+
+    public void lockReleased(UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+        add(new LockReleased(orgId, projectId, scope, name, System.currentTimeMillis() + EVENT_DELAY));
+    }
+
+    public void sleepStarted(UUID instanceId, Date until) {
+        long now = System.currentTimeMillis();
+        if (until.getTime() > now + sleepHorizon) {
+            return;
+        }
+
+        add(new ProcessReady(instanceId, Math.max(until.getTime(), now + EVENT_DELAY)));
+    }
+
+    /**
+     * The process can proceed, e.g. it received the lock it was waiting for.
+     */
+    public void processReady(UUID instanceId) {
+        add(new ProcessReady(instanceId, System.currentTimeMillis() + EVENT_DELAY));
+    }
+
+    /**
+     * Waits for the next event up to {@code timeoutMs}.
+     *
+     * @return the next event or {@code null} if there's no events yet.
+     */
+    WaitEvent poll(long timeoutMs) throws InterruptedException {
+        return queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void add(WaitEvent e) {
+        if (!enabled) {
+            return;
+        }
+
+        // the size check is not atomic, the limit is approximate
+        if (queue.size() >= maxEvents) {
+            dropped.mark();
+            return;
+        }
+
+        queue.add(e);
+    }
+
+    abstract static class WaitEvent implements Delayed {
+
+        private final long dueAt;
+
+        private WaitEvent(long dueAt) {
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    static final class ProcessFinished extends WaitEvent {
+
+        final UUID instanceId;
+
+        private ProcessFinished(UUID instanceId, long dueAt) {
+            super(dueAt);
+            this.instanceId = instanceId;
+        }
+
+        @Override
+        public String toString() {
+            return "ProcessFinished{instanceId=" + instanceId + "}";
+        }
+    }
+
+    static final class LockReleased extends WaitEvent {
+
+        final UUID orgId;
+        final UUID projectId;
+        final ProcessLockScope scope;
+        final String name;
+
+        private LockReleased(UUID orgId, UUID projectId, ProcessLockScope scope, String name, long dueAt) {
+            super(dueAt);
+            this.orgId = orgId;
+            this.projectId = projectId;
+            this.scope = scope;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "LockReleased{orgId=" + orgId + ", projectId=" + projectId + ", scope=" + scope + ", name=" + name + "}";
+        }
+    }
+
+    static final class ProcessReady extends WaitEvent {
+
+        final UUID instanceId;
+
+        private ProcessReady(UUID instanceId, long dueAt) {
+            super(dueAt);
+            this.instanceId = instanceId;
+        }
+
+        @Override
+        public String toString() {
+            return "ProcessReady{instanceId=" + instanceId + "}";
+        }
+    }
+}
@@ -22,17 +22,17 @@ package com.walmartlabs.concord.server.process.queue;
 
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.db.PgUtils;
 import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.Locks;
 import com.walmartlabs.concord.server.cfg.ProcessWaitWatchdogConfiguration;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
 import org.immutables.value.Value;
-import org.jooq.Configuration;
-import org.jooq.JSONB;
-import org.jooq.Record5;
-import org.jooq.SelectConditionStep;
+import org.jooq.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +47,12 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QU
 /**
  * Takes care of processes with wait conditions.
  * E.g. waiting for other processes to finish, locking, etc.
+ * <p>
+ * If {@link ProcessWaitEvents} are enabled, the waiting processes are also
+ * checked as soon as something they wait for happens. In that case
+ * each waiting process is handled under a DB lock, so the same process
+ * is never handled concurrently by the periodic check and the events.
+ * This makes the periodic check more expensive, see {@link #processLocked(UUID)}.
  */
 @Named("process-wait-watchdog")
 @Singleton
@@ -63,6 +69,7 @@ public class ProcessWaitWatchdog implements ScheduledTask {
     private final ProcessWaitWatchdogConfiguration cfg;
     private final WatchdogDao dao;
     private final ProcessQueueManager queueManager;
+    private final Locks locks;
     private final Map<WaitType, ProcessWaitHandler<AbstractWaitCondition>> processWaitHandlers;
 
     @Inject
@@ -70,11 +77,13 @@ public class ProcessWaitWatchdog implements ScheduledTask {
     public ProcessWaitWatchdog(ProcessWaitWatchdogConfiguration cfg,
                                WatchdogDao dao,
                                ProcessQueueManager queueManager,
+                               Locks locks,
                                Set<ProcessWaitHandler> handlers) {
 
         this.cfg = cfg;
         this.dao = dao;
         this.queueManager = queueManager;
+        this.locks = locks;
         this.processWaitHandlers = new HashMap<>();
 
         handlers.forEach(h -> this.processWaitHandlers.put(h.getType(), h));
@@ -95,13 +104,92 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             }
 
             for (WaitingProcess p : processes) {
-                WaitType type = p.waits().type();
-                processHandler(type, p);
+                if (cfg.isEventsEnabled()) {
+                    processLocked(p.instanceId());
+                } else {
+                    WaitType type = p.waits().type();
+                    processHandler(type, p);
+                }
                 lastId = p.id();
             }
         }
     }
 
+    /**
+     * Checks the processes waiting for the specified process to finish.
+     */
+    public void onProcessFinished(UUID instanceId) {
+        dao.findWaiters(processCompletionFilter(instanceId)).forEach(this::processLocked);
+    }
+
+    /**
+     * Checks the processes waiting for the specified lock, in the order of their IDs.
+     */
+    public void onLockReleased(UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+        dao.findWaiters(processLockFilter(orgId, projectId, scope, name)).forEach(this::processLocked);
+    }
+
+    /**
+     * Checks the specified process, e.g. when its sleep timeout expires.
+     */
+    public void onProcessReady(UUID instanceId) {
+        processLocked(instanceId);
+    }
+
+    /**
+     * @return a subset of {@link ProcessCompletionCondition} that matches the processes
+     * waiting for the specified process.
+     */
+    static Map<String, Object> processCompletionFilter(UUID instanceId) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("type", WaitType.PROCESS_COMPLETION.name());
+        m.put("processes", Collections.singletonList(instanceId));
+        return m;
+    }
+
+    /**
+     * @return a subset of {@link ProcessLockCondition} that matches the processes
+     * waiting for the specified lock.
+     */
+    static Map<String, Object> processLockFilter(UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("type", WaitType.PROCESS_LOCK.name());
+        m.put("scope", scope.name());
+        m.put("name", name);
+        if (scope == ProcessLockScope.ORG) {
+            m.put("orgId", orgId);
+        } else {
+            m.put("projectId", projectId);
+        }
+        return m;
+    }
+
+    /**
+     * Handles the process under an advisory lock on its ID.
+     * <p>
+     * Each call opens a transaction and takes an advisory lock. The transaction's
+     * connection is held while the handler runs, and the handler opens its
+     * own transactions (i.e. takes another connection from the pool).
+     * With the events enabled, {@link #performTask()} pays this for every
+     * waiting process, so the periodic check uses up to twice as many
+     * connections and makes an extra round-trip per process.
+     */
+    private void processLocked(UUID instanceId) {
+        dao.tx(tx -> {
+            // not using the string keys, those are hashed into a small number of locks
+            // and can be taken by the handlers themselves
+            locks.lock(tx, instanceId.getMostSignificantBits() ^ instanceId.getLeastSignificantBits());
+
+            // the wait conditions might've been changed while we were waiting for the lock
+            WaitingProcess p = dao.get(tx, instanceId);
+            if (p == null) {
+                return;
+            }
+
+            processHandler(p.waits().type(), p);
+        });
+    }
+
     private void processHandler(WaitType type, WaitingProcess p) {
         ProcessWaitHandler<AbstractWaitCondition> handler = processWaitHandlers.get(type);
         if (handler == null) {
@@ -147,7 +235,7 @@ public class ProcessWaitWatchdog implements ScheduledTask {
     }
 
     @Named
-    private static final class WatchdogDao extends AbstractDao {
+    static final class WatchdogDao extends AbstractDao {
 
         private final ConcordObjectMapper objectMapper;
 
@@ -158,6 +246,41 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             this.objectMapper = objectMapper;
         }
 
+        @Override
+        public void tx(Tx t) {
+            super.tx(t);
+        }
+
+        public WaitingProcess get(DSLContext tx, UUID instanceId) {
+            ProcessQueue q = PROCESS_QUEUE.as("q");
+            return tx.select(
+                    q.INSTANCE_ID,
+                    q.CURRENT_STATUS,
+                    q.CREATED_AT,
+                    q.ID_SEQ,
+                    q.WAIT_CONDITIONS)
+                    .from(q)
+                    .where(q.INSTANCE_ID.eq(instanceId)
+                            .and(q.WAIT_CONDITIONS.isNotNull()))
+                    .fetchOne(this::toWaitingProcess);
+        }
+
+        /**
+         * @return IDs of the processes with wait conditions that contain
+         * the specified values, in the order of {@code ID_SEQ}.
+         */
+        public List<UUID> findWaiters(Map<String, Object> condition) {
+            return txResult(tx -> {
+                ProcessQueue q = PROCESS_QUEUE.as("q");
+                return tx.select(q.INSTANCE_ID)
+                        .from(q)
+                        .where(q.WAIT_CONDITIONS.isNotNull()
+                                .and(PgUtils.jsonbContains(q.WAIT_CONDITIONS, objectMapper.toJSONB(condition))))
+                        .orderBy(q.ID_SEQ)
+                        .fetch(q.INSTANCE_ID);
+            });
+        }
+
         public List<WaitingProcess> nextWaitItems(Long lastId, int pollLimit) {
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
@@ -176,14 +299,18 @@ public class ProcessWaitWatchdog implements ScheduledTask {
 
                 return s.orderBy(q.ID_SEQ)
                         .limit(pollLimit)
-                        .fetch(r -> WaitingProcess.builder()
-                                .instanceId(r.value1())
-                                .status(ProcessStatus.valueOf(r.value2()))
-                                .instanceCreatedAt(r.value3())
-                                .id(r.value4())
-                                .waits(objectMapper.fromJSONB(r.value5(), AbstractWaitCondition.class))
-                                .build());
+                        .fetch(this::toWaitingProcess);
             });
         }
+
+        private WaitingProcess toWaitingProcess(Record5<UUID, String, OffsetDateTime, Long, JSONB> r) {
+            return WaitingProcess.builder()
+                    .instanceId(r.value1())
+                    .status(ProcessStatus.valueOf(r.value2()))
+                    .instanceCreatedAt(r.value3())
+                    .id(r.value4())
+                    .waits(objectMapper.fromJSONB(r.value5(), AbstractWaitCondition.class))
+                    .build();
+        }
     }
 }
@@ -23,6 +23,9 @@ package com.walmartlabs.concord.server.process.queue.dispatcher;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.walmartlabs.concord.common.MapMatcher;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
@@ -37,7 +40,9 @@ import com.walmartlabs.concord.server.process.SessionTokenCreator;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.queueclient.message.Message;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
@@ -53,7 +58,9 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -78,6 +85,20 @@ public class Dispatcher extends PeriodicTask {
     private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(30);
     private static final long LOCK_KEY = 1552468327245L;
 
+    /**
+     * Status updates are recorded using the transaction's start time, so we
+     * need to look a bit further back than the last seen value.
+     */
+    private static final long INDEX_REFRESH_OVERLAP = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Compiled agent requirements, keyed by the requirements' content.
+     */
+    private static final LoadingCache<Map<String, Object>, MapMatcher.Compiled> agentMatchers = CacheBuilder.newBuilder()
+            .maximumSize(4096)
+            .concurrencyLevel(32)
+            .build(CacheLoader.from(MapMatcher::compile));
+
     private final Locks locks;
     private final DispatcherDao dao;
     private final WebSocketChannelManager channelManager;
@@ -88,8 +109,15 @@ public class Dispatcher extends PeriodicTask {
 
     private final int batchSize;
 
+    private final EnqueuedProcessIndex index;
+    private final long indexFullRefreshInterval;
+    private long lastFullRefresh;
+    private OffsetDateTime lastSeenUpdate;
+
     private final Histogram dispatchedCountHistogram;
+    private final Histogram requestedSlotsHistogram;
     private final Timer responseTimer;
+    private final Timer queueToAgentTimer;
 
     private final SessionTokenCreator sessionTokenCreator;
 
@@ -119,7 +147,20 @@ public class Dispatcher extends PeriodicTask {
         this.sessionTokenCreator = sessionTokenCreator;
 
         this.dispatchedCountHistogram = metricRegistry.histogram("process-queue-dispatcher-dispatched-count");
+        this.requestedSlotsHistogram = metricRegistry.histogram("process-queue-dispatcher-requested-slots");
         this.responseTimer = metricRegistry.timer("process-queue-dispatcher-response-timer");
+        this.queueToAgentTimer = metricRegistry.timer("process-queue-dispatcher-queue-to-agent");
+
+        if (cfg.isDispatcherIndexEnabled()) {
+            this.index = new EnqueuedProcessIndex();
+            this.indexFullRefreshInterval = cfg.getDispatcherIndexFullRefreshInterval().toMillis();
+
+            metricRegistry.gauge("process-queue-dispatcher-index-size", () -> index::size);
+            metricRegistry.gauge("process-queue-dispatcher-index-buckets", () -> index::bucketCount);
+        } else {
+            this.index = null;
+            this.indexFullRefreshInterval = 0;
+        }
     }
 
     @Override
@@ -134,14 +175,23 @@ public class Dispatcher extends PeriodicTask {
         }
 
         List<Request> l = requests.entrySet().stream()
-                .map(e -> new Request(e.getKey(), e.getValue()))
+                .map(e -> new Request(e.getKey(), e.getValue(), batchSize))
                 .collect(Collectors.toList());
 
+        l.forEach(r -> requestedSlotsHistogram.update(r.maxProcesses));
+
+        if (index != null) {
+            refreshIndex();
+        }
+
         // prepare all responses in a single transaction
         // take a global lock to avoid races
         List<Match> matches = dao.txResult(tx -> {
             locks.lock(tx, LOCK_KEY);
             try {
+                if (index != null) {
+                    return matchIndexed(tx, l);
+                }
                 return match(tx, l);
             } finally {
                 filters.forEach(Filter::cleanup);
@@ -150,15 +200,23 @@ public class Dispatcher extends PeriodicTask {
 
         dispatchedCountHistogram.update(matches.size());
 
+        if (index != null) {
+            matches.forEach(m -> index.remove(m.response.key().getInstanceId()));
+        }
+
         // no matches, retry after a delay
         if (matches.isEmpty()) {
             return false;
         }
 
+        // group the matches by request, a request can receive multiple processes
+        Map<Request, List<ProcessQueueEntry>> responses = new LinkedHashMap<>();
+        matches.forEach(m -> responses.computeIfAbsent(m.request, k -> new ArrayList<>()).add(m.response));
+
         // send all responses in parallel
-        withTimer(responseTimer, () -> matches.stream()
+        withTimer(responseTimer, () -> responses.entrySet().stream()
                 .parallel()
-                .forEach(this::sendResponse));
+                .forEach(e -> sendResponse(e.getKey(), e.getValue())));
 
         return true;
     }
@@ -190,7 +248,11 @@ public class Dispatcher extends PeriodicTask {
 
                 if (pass(tx, e, startingProcesses)) {
                     matches.add(new Match(req, e));
-                    inbox.remove(req);
+
+                    req.remaining--;
+                    if (req.remaining <= 0) {
+                        inbox.remove(req);
+                    }
 
                     if (inbox.isEmpty()) {
                         break;
@@ -215,11 +277,101 @@ public class Dispatcher extends PeriodicTask {
         return matches;
     }
 
+    private List<Match> matchIndexed(DSLContext tx, List<Request> requests) {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        List<Match> matches = new ArrayList<>();
+        Set<UUID> taken = new HashSet<>();
+        for (Request req : requests) {
+            // page through the candidates, the oldest entries can be blocked
+            // by the filters or locked by another server
+            EnqueuedProcessIndex.Item after = null;
+            while (req.remaining > 0) {
+                List<EnqueuedProcessIndex.Item> candidates = index.candidates(req.request.getCapabilities(), taken, now, after, batchSize);
+                if (candidates.isEmpty()) {
+                    break;
+                }
+
+                after = candidates.get(candidates.size() - 1);
+
+                for (EnqueuedProcessIndex.Item i : candidates) {
+                    // lock the row and make sure the process is still ENQUEUED
+                    ProcessQueueEntry e = dao.lockEnqueued(tx, i.getKey());
+                    if (e == null) {
+                        // the row can be locked by someone else, keep the entry
+                        // if the process is still ENQUEUED
+                        if (!dao.isEnqueued(tx, i.getKey())) {
+                            index.remove(i.getKey().getInstanceId());
+                        }
+                        continue;
+                    }
+
+                    List<ProcessQueueEntry> startingProcesses = matches.stream().map(m -> m.response).collect(Collectors.toList());
+
+                    if (pass(tx, e, startingProcesses)) {
+                        matches.add(new Match(req, e));
+                        taken.add(i.getKey().getInstanceId());
+                        queueToAgentTimer.update(Duration.between(i.getLastUpdatedAt(), now).toMillis(), TimeUnit.MILLISECONDS);
+
+                        req.remaining--;
+                        if (req.remaining <= 0) {
+                            break;
+                        }
+                    }
+                }
+
+                if (candidates.size() < batchSize) {
+                    break;
+                }
+            }
+        }
+
+        for (Match m : matches) {
+            queueManager.updateStatus(tx, m.response.key(), ProcessStatus.STARTING);
+        }
+
+        return matches;
+    }
+
+    private void refreshIndex() {
+        long t = System.currentTimeMillis();
+
+        if (lastSeenUpdate == null || t - lastFullRefresh >= indexFullRefreshInterval) {
+            List<DispatcherDao.IndexUpdate> l = dao.listEnqueued();
+            index.reset(l.stream()
+                    .map(DispatcherDao.IndexUpdate::toItem)
+                    .collect(Collectors.toList()));
+
+            lastFullRefresh = t;
+            lastSeenUpdate = l.stream()
+                    .map(u -> u.lastUpdatedAt)
+                    .max(Comparator.naturalOrder())
+                    .orElse(OffsetDateTime.now());
+
+            return;
+        }
+
+        // evict the processes that left ENQUEUED, the entries missed here
+        // are removed on the next dispatch attempt or the next full refresh
+        OffsetDateTime since = lastSeenUpdate.minus(INDEX_REFRESH_OVERLAP, ChronoUnit.MILLIS);
+        for (DispatcherDao.IndexUpdate u : dao.listUpdated(since)) {
+            if (u.enqueued) {
+                index.put(u.toItem());
+            } else {
+                index.remove(u.processKey.getInstanceId());
+            }
+
+            if (u.lastUpdatedAt.isAfter(lastSeenUpdate)) {
+                lastSeenUpdate = u.lastUpdatedAt;
+            }
+        }
+    }
+
     private static Request findRequest(ProcessQueueEntry candidate, List<Request> requests) {
+        MapMatcher.Compiled m = agentMatchers.getUnchecked(getAgentRequirements(candidate));
         for (Request req : requests) {
             Map<String, Object> capabilities = req.request.getCapabilities();
-            Map<String, Object> m = getAgentRequirements(candidate);
-            if (MapMatcher.matches(capabilities, m)) {
+            if (m.matches(capabilities)) {
                 return req;
             }
         }
@@ -227,9 +379,12 @@ public class Dispatcher extends PeriodicTask {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
     private static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
-        Map<String, Object> requirements = entry.requirements();
+        return getAgentRequirements(entry.requirements());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getAgentRequirements(Map<String, Object> requirements) {
         if (requirements == null) {
             return Collections.emptyMap();
         }
@@ -252,41 +407,61 @@ public class Dispatcher extends PeriodicTask {
         return true;
     }
 
-    private void sendResponse(Match match) {
-        WebSocketChannel channel = match.request.channel;
-        long correlationId = match.request.request.getCorrelationId();
-        ProcessQueueEntry item = match.response;
+    private void sendResponse(Request request, List<ProcessQueueEntry> items) {
+        WebSocketChannel channel = request.channel;
+        long correlationId = request.request.getCorrelationId();
 
-        try {
-            SecretReference secret = null;
-            if (item.repoId() != null) {
-                secret = dao.getSecretReference(item.repoId());
+        List<ProcessResponse> l = new ArrayList<>(items.size());
+        for (ProcessQueueEntry item : items) {
+            try {
+                l.add(toResponse(correlationId, item));
+            } catch (Exception e) {
+                log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
             }
+        }
 
-            // backward compatibility with old process queue entries that are not normalized
-            Imports imports = importsNormalizerFactory.forProject(item.projectId())
-                    .normalize(item.imports());
-
-            ProcessResponse resp = new ProcessResponse(correlationId,
-                    sessionTokenCreator.create(item.key()),
-                    item.key().getInstanceId(),
-                    secret != null ? secret.orgName : null,
-                    item.repoUrl(),
-                    item.repoPath(),
-                    item.commitId(),
-                    secret != null ? secret.secretName : null,
-                    imports);
-
-            if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
-                log.warn("sendResponse ['{}'] -> failed", correlationId);
-            }
+        if (l.isEmpty()) {
+            return;
+        }
+
+        // old agents don't know about batches
+        Message resp;
+        if (request.isBatch()) {
+            resp = new ProcessBatchResponse(correlationId, l);
+        } else {
+            resp = l.get(0);
+        }
 
+        if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
+            log.warn("sendResponse ['{}'] -> failed", correlationId);
+        }
+
+        for (ProcessQueueEntry item : items) {
             logManager.info(item.key(), "Acquired by: " + channel.getUserAgent());
-        } catch (Exception e) {
-            log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
         }
     }
 
+    private ProcessResponse toResponse(long correlationId, ProcessQueueEntry item) {
+        SecretReference secret = null;
+        if (item.repoId() != null) {
+            secret = dao.getSecretReference(item.repoId());
+        }
+
+        // backward compatibility with old process queue entries that are not normalized
+        Imports imports = importsNormalizerFactory.forProject(item.projectId())
+                .normalize(item.imports());
+
+        return new ProcessResponse(correlationId,
+                sessionTokenCreator.create(item.key()),
+                item.key().getInstanceId(),
+                secret != null ? secret.orgName : null,
+                item.repoUrl(),
+                item.repoPath(),
+                item.commitId(),
+                secret != null ? secret.secretName : null,
+                imports);
+    }
+
     @Named
     public static class DispatcherDao extends AbstractDao {
 
@@ -308,56 +483,173 @@ public class Dispatcher extends PeriodicTask {
             return super.txResult(t);
         }
 
+        /**
+         * Returns all ENQUEUED processes. Used to (re)build the dispatcher's index.
+         */
         @WithTimer
-        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
-            offsetHistogram.update(offset);
+        public List<IndexUpdate> listEnqueued() {
+            try (DSLContext tx = DSL.using(cfg)) {
+                return tx.select(PROCESS_QUEUE.INSTANCE_ID,
+                        PROCESS_QUEUE.CREATED_AT,
+                        PROCESS_QUEUE.LAST_UPDATED_AT,
+                        PROCESS_QUEUE.START_AT,
+                        field(PROCESS_QUEUE.WAIT_CONDITIONS.isNotNull()),
+                        PROCESS_QUEUE.REQUIREMENTS,
+                        inline(true))
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString()))
+                        .fetch(this::toIndexUpdate);
+            }
+        }
 
+        /**
+         * Returns processes updated since the specified moment. Includes the
+         * processes that are no longer ENQUEUED, except for RUNNING ones:
+         * their heartbeats update the records constantly and a process can't
+         * become RUNNING without going through STARTING first.
+         */
+        @WithTimer
+        public List<IndexUpdate> listUpdated(OffsetDateTime since) {
+            try (DSLContext tx = DSL.using(cfg)) {
+                return tx.select(PROCESS_QUEUE.INSTANCE_ID,
+                        PROCESS_QUEUE.CREATED_AT,
+                        PROCESS_QUEUE.LAST_UPDATED_AT,
+                        PROCESS_QUEUE.START_AT,
+                        field(PROCESS_QUEUE.WAIT_CONDITIONS.isNotNull()),
+                        PROCESS_QUEUE.REQUIREMENTS,
+                        field(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())))
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CURRENT_STATUS.ne(ProcessStatus.RUNNING.toString())
+                                .and(PROCESS_QUEUE.LAST_UPDATED_AT.ge(since)))
+                        .fetch(this::toIndexUpdate);
+            }
+        }
+
+        /**
+         * Checks if the process is still ENQUEUED without locking the record.
+         */
+        public boolean isEnqueued(DSLContext tx, ProcessKey processKey) {
+            return tx.fetchExists(selectOne()
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_QUEUE.CREATED_AT.eq(processKey.getCreatedAt()))
+                            .and(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString()))));
+        }
+
+        /**
+         * Locks the process' queue record if the process is still ready to be dispatched.
+         *
+         * @return the queue entry or {@code null} if the process is locked by someone else
+         * or can't be dispatched anymore
+         */
+        @WithTimer
+        public ProcessQueueEntry lockEnqueued(DSLContext tx, ProcessKey processKey) {
             ProcessQueue q = PROCESS_QUEUE.as("q");
+            return selectEntry(tx, q)
+                    .where(q.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(q.CREATED_AT.eq(processKey.getCreatedAt()))
+                            .and(readyToDispatch(q)))
+                    .forUpdate()
+                    .of(q)
+                    .skipLocked()
+                    .fetchOne(this::toEntry);
+        }
 
-            Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
+        @WithTimer
+        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
+            offsetHistogram.update(offset);
 
-            SelectJoinStep<Record13<UUID, OffsetDateTime, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB>> s =
-                    tx.select(
-                            q.INSTANCE_ID,
-                            q.CREATED_AT,
-                            q.PROJECT_ID,
-                            orgIdField,
-                            q.INITIATOR_ID,
-                            q.PARENT_INSTANCE_ID,
-                            q.REPO_PATH,
-                            q.REPO_URL,
-                            q.COMMIT_ID,
-                            q.REPO_ID,
-                            q.IMPORTS,
-                            q.REQUIREMENTS,
-                            q.EXCLUSIVE)
-                            .from(q);
-
-            s.where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
-                    .and(or(q.START_AT.isNull(),
-                            q.START_AT.le(currentOffsetDateTime())))
-                    .and(q.WAIT_CONDITIONS.isNull()));
+            ProcessQueue q = PROCESS_QUEUE.as("q");
 
-            return s.orderBy(q.LAST_UPDATED_AT)
+            return selectEntry(tx, q)
+                    .where(readyToDispatch(q))
+                    .orderBy(q.LAST_UPDATED_AT)
                     .offset(offset)
                     .limit(limit)
                     .forUpdate()
                     .of(q)
                     .skipLocked()
-                    .fetch(r -> ProcessQueueEntry.builder()
-                            .key(new ProcessKey(r.value1(), r.value2()))
-                            .projectId(r.value3())
-                            .orgId(r.value4())
-                            .initiatorId(r.value5())
-                            .parentInstanceId(r.value6())
-                            .repoPath(r.value7())
-                            .repoUrl(r.value8())
-                            .commitId(r.value9())
-                            .repoId(r.value10())
-                            .imports(objectMapper.fromJSONB(r.value11(), Imports.class))
-                            .requirements(objectMapper.fromJSONB(r.value12()))
-                            .exclusive(objectMapper.fromJSONB(r.value13()))
-                            .build());
+                    .fetch(this::toEntry);
+        }
+
+        private static Condition readyToDispatch(ProcessQueue q) {
+            return q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+                    .and(or(q.START_AT.isNull(),
+                            q.START_AT.le(currentOffsetDateTime())))
+                    .and(q.WAIT_CONDITIONS.isNull());
+        }
+
+        private static SelectJoinStep<Record13<UUID, OffsetDateTime, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB>> selectEntry(DSLContext tx, ProcessQueue q) {
+            Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
+
+            return tx.select(
+                    q.INSTANCE_ID,
+                    q.CREATED_AT,
+                    q.PROJECT_ID,
+                    orgIdField,
+                    q.INITIATOR_ID,
+                    q.PARENT_INSTANCE_ID,
+                    q.REPO_PATH,
+                    q.REPO_URL,
+                    q.COMMIT_ID,
+                    q.REPO_ID,
+                    q.IMPORTS,
+                    q.REQUIREMENTS,
+                    q.EXCLUSIVE)
+                    .from(q);
+        }
+
+        private ProcessQueueEntry toEntry(Record13<UUID, OffsetDateTime, UUID, UUID, UUID, UUID, String, String, String, UUID, JSONB, JSONB, JSONB> r) {
+            return ProcessQueueEntry.builder()
+                    .key(new ProcessKey(r.value1(), r.value2()))
+                    .projectId(r.value3())
+                    .orgId(r.value4())
+                    .initiatorId(r.value5())
+                    .parentInstanceId(r.value6())
+                    .repoPath(r.value7())
+                    .repoUrl(r.value8())
+                    .commitId(r.value9())
+                    .repoId(r.value10())
+                    .imports(objectMapper.fromJSONB(r.value11(), Imports.class))
+                    .requirements(objectMapper.fromJSONB(r.value12()))
+                    .exclusive(objectMapper.fromJSONB(r.value13()))
+                    .build();
+        }
+
+        private IndexUpdate toIndexUpdate(Record7<UUID, OffsetDateTime, OffsetDateTime, OffsetDateTime, Boolean, JSONB, Boolean> r) {
+            Map<String, Object> requirements = objectMapper.fromJSONB(r.value6());
+            return new IndexUpdate(new ProcessKey(r.value1(), r.value2()),
+                    r.value3(),
+                    r.value4(),
+                    r.value5(),
+                    getAgentRequirements(requirements),
+                    r.value7());
+        }
+
+        public static final class IndexUpdate {
+
+            private final ProcessKey processKey;
+            private final OffsetDateTime lastUpdatedAt;
+            private final OffsetDateTime startAt;
+            private final boolean waiting;
+            private final Map<String, Object> agentRequirements;
+            private final boolean enqueued;
+
+            IndexUpdate(ProcessKey processKey, OffsetDateTime lastUpdatedAt,
+                        OffsetDateTime startAt, boolean waiting, Map<String, Object> agentRequirements,
+                        boolean enqueued) {
+
+                this.processKey = processKey;
+                this.lastUpdatedAt = lastUpdatedAt;
+                this.startAt = startAt;
+                this.waiting = waiting;
+                this.agentRequirements = agentRequirements;
+                this.enqueued = enqueued;
+            }
+
+            private EnqueuedProcessIndex.Item toItem() {
+                return new EnqueuedProcessIndex.Item(processKey, lastUpdatedAt, startAt, waiting, agentRequirements);
+            }
         }
 
         public SecretReference getSecretReference(UUID repoId) {
@@ -376,10 +668,23 @@ public class Dispatcher extends PeriodicTask {
 
         private final WebSocketChannel channel;
         private final ProcessRequest request;
+        private final int maxProcesses;
+
+        // number of processes the request can still accept
+        private int remaining;
 
-        private Request(WebSocketChannel channel, ProcessRequest request) {
+        private Request(WebSocketChannel channel, ProcessRequest request, int limit) {
             this.channel = channel;
             this.request = request;
+
+            Integer n = request.getMaxProcesses();
+            this.maxProcesses = n != null ? Math.max(1, Math.min(n, limit)) : 1;
+            this.remaining = this.maxProcesses;
+        }
+
+        private boolean isBatch() {
+            Integer n = request.getMaxProcesses();
+            return n != null && n > 1;
         }
     }
 
@@ -0,0 +1,209 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.MapMatcher;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * In-memory index of ENQUEUED processes. Entries are bucketed by their
+ * agent requirements, so an agent's capabilities are matched once per
+ * distinct set of requirements instead of once per queue entry.
+ * <p>
+ * The index is only a hint: the DB row must be locked and re-checked
+ * before the process can be handed off to an agent.
+ */
+public class EnqueuedProcessIndex {
+
+    private static final Comparator<Item> ORDER = Comparator.comparing(Item::getLastUpdatedAt)
+            .thenComparing(i -> i.getKey().getInstanceId());
+
+    private final Map<UUID, Item> items = new HashMap<>();
+    private final Map<Map<String, Object>, Bucket> buckets = new HashMap<>();
+
+    /**
+     * Adds or replaces the specified entry.
+     */
+    public synchronized void put(Item item) {
+        remove(item.getKey().getInstanceId());
+
+        items.put(item.getKey().getInstanceId(), item);
+        buckets.computeIfAbsent(item.getAgentRequirements(), Bucket::new)
+                .items.add(item);
+    }
+
+    public synchronized void remove(UUID instanceId) {
+        Item prev = items.remove(instanceId);
+        if (prev == null) {
+            return;
+        }
+
+        Bucket bucket = buckets.get(prev.getAgentRequirements());
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.items.remove(prev);
+        if (bucket.items.isEmpty()) {
+            buckets.remove(prev.getAgentRequirements());
+        }
+    }
+
+    /**
+     * Replaces the whole content of the index.
+     */
+    public synchronized void reset(Collection<Item> newItems) {
+        items.clear();
+        buckets.clear();
+        newItems.forEach(this::put);
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    public synchronized int bucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Returns up to {@code limit} oldest entries that can be handled by an agent
+     * with the specified capabilities. Entries that are waiting for something
+     * or scheduled to start later than {@code now} are skipped.
+     */
+    public List<Item> candidates(Map<String, Object> capabilities, Set<UUID> exclude, OffsetDateTime now, int limit) {
+        return candidates(capabilities, exclude, now, null, limit);
+    }
+
+    /**
+     * Same as {@link #candidates(Map, Set, OffsetDateTime, int)}, but starts
+     * after the specified entry. Used to fetch the next page of candidates.
+     */
+    public synchronized List<Item> candidates(Map<String, Object> capabilities, Set<UUID> exclude, OffsetDateTime now, Item after, int limit) {
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(Comparator.comparing(PeekingIterator::peek, ORDER));
+        for (Bucket b : buckets.values()) {
+            if (!b.matcher.matches(capabilities)) {
+                continue;
+            }
+
+            Set<Item> l = after != null ? b.items.tailSet(after, false) : b.items;
+            PeekingIterator it = new PeekingIterator(l.iterator());
+            if (it.peek() != null) {
+                heads.add(it);
+            }
+        }
+
+        List<Item> result = new ArrayList<>();
+        while (!heads.isEmpty() && result.size() < limit) {
+            PeekingIterator it = heads.poll();
+
+            Item i = it.next();
+            if (isReady(i, now) && !exclude.contains(i.getKey().getInstanceId())) {
+                result.add(i);
+            }
+
+            if (it.peek() != null) {
+                heads.add(it);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isReady(Item i, OffsetDateTime now) {
+        if (i.isWaiting()) {
+            return false;
+        }
+
+        return i.getStartAt() == null || !i.getStartAt().isAfter(now);
+    }
+
+    public static final class Item {
+
+        private final ProcessKey key;
+        private final OffsetDateTime lastUpdatedAt;
+        private final OffsetDateTime startAt;
+        private final boolean waiting;
+        private final Map<String, Object> agentRequirements;
+
+        public Item(ProcessKey key, OffsetDateTime lastUpdatedAt, OffsetDateTime startAt, boolean waiting, Map<String, Object> agentRequirements) {
+            this.key = key;
+            this.lastUpdatedAt = lastUpdatedAt;
+            this.startAt = startAt;
+            this.waiting = waiting;
+            this.agentRequirements = agentRequirements != null ? agentRequirements : Collections.emptyMap();
+        }
+
+        public ProcessKey getKey() {
+            return key;
+        }
+
+        public OffsetDateTime getLastUpdatedAt() {
+            return lastUpdatedAt;
+        }
+
+        public OffsetDateTime getStartAt() {
+            return startAt;
+        }
+
+        public boolean isWaiting() {
+            return waiting;
+        }
+
+        public Map<String, Object> getAgentRequirements() {
+            return agentRequirements;
+        }
+    }
+
+    private static final class Bucket {
+
+        private final MapMatcher.Compiled matcher;
+        private final NavigableSet<Item> items = new TreeSet<>(ORDER);
+
+        private Bucket(Map<String, Object> agentRequirements) {
+            this.matcher = MapMatcher.compile(agentRequirements);
+        }
+    }
+
+    private static final class PeekingIterator {
+
+        private final Iterator<Item> delegate;
+        private Item next;
+
+        private PeekingIterator(Iterator<Item> delegate) {
+            this.delegate = delegate;
+            this.next = delegate.hasNext() ? delegate.next() : null;
+        }
+
+        private Item peek() {
+            return next;
+        }
+
+        private Item next() {
+            Item result = next;
+            next = delegate.hasNext() ? delegate.next() : null;
+            return result;
+        }
+    }
+}
@@ -37,11 +37,13 @@ import java.nio.file.StandardCopyOption;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.time.OffsetDateTime;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROCESS_CHECKPOINTS;
+import static org.jooq.impl.DSL.inline;
 
 @Named
 public class ProcessCheckpointDao extends AbstractDao {
@@ -70,7 +72,27 @@ public class ProcessCheckpointDao extends AbstractDao {
                 .fetchOne(PROCESS_CHECKPOINTS.CHECKPOINT_ID));
     }
 
-    public void importCheckpoint(ProcessKey processKey, UUID checkpointId, String checkpointName, Path data) {
+    public boolean exists(ProcessKey processKey, UUID checkpointId) {
+        return txResult(tx -> tx.fetchExists(tx.selectOne()
+                .from(PROCESS_CHECKPOINTS)
+                .where(PROCESS_CHECKPOINTS.CHECKPOINT_ID.eq(checkpointId)
+                        .and(PROCESS_CHECKPOINTS.INSTANCE_ID.eq(processKey.getInstanceId())
+                                .and(PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))))));
+    }
+
+    /**
+     * @return ID of the previous checkpoint if the specified checkpoint is a delta checkpoint.
+     */
+    public UUID getParentId(ProcessKey processKey, UUID checkpointId) {
+        return txResult(tx -> tx.select(PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID)
+                .from(PROCESS_CHECKPOINTS)
+                .where(PROCESS_CHECKPOINTS.CHECKPOINT_ID.eq(checkpointId)
+                        .and(PROCESS_CHECKPOINTS.INSTANCE_ID.eq(processKey.getInstanceId())
+                                .and(PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))))
+                .fetchOne(PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID));
+    }
+
+    public void importCheckpoint(ProcessKey processKey, UUID checkpointId, UUID parentId, String checkpointName, Path data) {
         tx(tx -> {
             String sql = tx.insertInto(PROCESS_CHECKPOINTS)
                     .columns(PROCESS_CHECKPOINTS.INSTANCE_ID,
@@ -78,8 +100,9 @@ public class ProcessCheckpointDao extends AbstractDao {
                             PROCESS_CHECKPOINTS.CHECKPOINT_ID,
                             PROCESS_CHECKPOINTS.CHECKPOINT_NAME,
                             PROCESS_CHECKPOINTS.CHECKPOINT_DATE,
-                            PROCESS_CHECKPOINTS.CHECKPOINT_DATA)
-                    .values((UUID) null, null, null, null, null, null)
+                            PROCESS_CHECKPOINTS.CHECKPOINT_DATA,
+                            PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID)
+                    .values((UUID) null, null, null, null, null, null, null)
                     .getSQL();
 
             tx.connection(conn -> {
@@ -91,8 +114,35 @@ public class ProcessCheckpointDao extends AbstractDao {
                     ps.setTimestamp(5, new Timestamp(new Date().getTime()));
                     try (InputStream in = Files.newInputStream(data)) {
                         ps.setBinaryStream(6, in);
+                        ps.setObject(7, parentId);
+                        ps.execute();
                     }
+                }
+            });
+        });
+    }
+
+    /**
+     * Replaces the checkpoint's data with the specified full (non-delta) checkpoint data.
+     */
+    public void replaceWithFull(ProcessKey processKey, UUID checkpointId, Path data) {
+        tx(tx -> {
+            String sql = tx.update(PROCESS_CHECKPOINTS)
+                    .set(PROCESS_CHECKPOINTS.CHECKPOINT_DATA, (byte[]) null)
+                    .set(PROCESS_CHECKPOINTS.PARENT_CHECKPOINT_ID, inline((UUID) null))
+                    .where(PROCESS_CHECKPOINTS.CHECKPOINT_ID.eq((UUID) null)
+                            .and(PROCESS_CHECKPOINTS.INSTANCE_ID.eq((UUID) null)
+                                    .and(PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT.eq((OffsetDateTime) null))))
+                    .getSQL();
+
+            tx.connection(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql);
+                     InputStream in = Files.newInputStream(data)) {
 
+                    ps.setBinaryStream(1, in);
+                    ps.setObject(2, checkpointId);
+                    ps.setObject(3, processKey.getInstanceId());
+                    ps.setObject(4, processKey.getCreatedAt());
                     ps.execute();
                 }
             });
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.process.state;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.TemporaryPath;
 import com.walmartlabs.concord.sdk.Constants;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
 import com.walmartlabs.concord.server.org.ResourceAccessLevel;
 import com.walmartlabs.concord.server.org.project.ProjectAccessManager;
 import com.walmartlabs.concord.server.process.OutVariablesUtils;
@@ -32,8 +33,12 @@ import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.siesta.ValidationErrorsException;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -41,31 +46,37 @@ import javax.inject.Named;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static com.walmartlabs.concord.sdk.Constants.Files.CHECKPOINT_MANIFEST_FILE_NAME;
 import static com.walmartlabs.concord.sdk.Constants.Files.CHECKPOINT_META_FILE_NAME;
 
 @Named
 public class ProcessCheckpointManager {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcessCheckpointManager.class);
+
     private final ProcessCheckpointDao checkpointDao;
     private final ProcessQueueDao queueDao;
     private final ProcessStateManager stateManager;
     private final ProjectAccessManager projectAccessManager;
+    private final int maxDeltas;
 
     @Inject
     protected ProcessCheckpointManager(ProcessCheckpointDao checkpointDao,
                                        ProcessQueueDao queueDao,
                                        ProcessStateManager stateManager,
-                                       ProjectAccessManager projectAccessManager) {
+                                       ProjectAccessManager projectAccessManager,
+                                       ProcessConfiguration cfg) {
 
         this.checkpointDao = checkpointDao;
         this.queueDao = queueDao;
         this.stateManager = stateManager;
         this.projectAccessManager = projectAccessManager;
+        this.maxDeltas = cfg.getCheckpointMaxDeltas();
     }
 
     public UUID getRecentCheckpointId(ProcessKey processKey, String checkpointName) {
@@ -77,45 +88,56 @@ public class ProcessCheckpointManager {
      *
      * @param processKey     process key
      * @param checkpointId   process checkpoint ID
+     * @param parentId       ID of the previous checkpoint if {@code data} is a delta checkpoint
      * @param checkpointName process checkpoint name
      * @param data           checkpoint data file
      */
-    public void importCheckpoint(ProcessKey processKey, UUID checkpointId, String checkpointName, Path data) {
-        checkpointDao.importCheckpoint(processKey, checkpointId, checkpointName, data);
+    public void importCheckpoint(ProcessKey processKey, UUID checkpointId, UUID parentId, String checkpointName, Path data) {
+        if (parentId != null && !checkpointDao.exists(processKey, parentId)) {
+            throw new ValidationErrorsException("Parent checkpoint not found: " + parentId);
+        }
+
+        checkpointDao.importCheckpoint(processKey, checkpointId, parentId, checkpointName, data);
+
+        if (parentId == null) {
+            return;
+        }
+
+        // too many deltas make the restore slower, replace the whole chain with a full checkpoint
+        List<UUID> chain = chain(processKey, checkpointId);
+        if (chain.size() - 1 >= maxDeltas) {
+            compact(processKey, chain);
+        }
     }
 
     /**
      * Restore process to a saved checkpoint.
      */
     public CheckpointInfo restoreCheckpoint(ProcessKey processKey, UUID checkpointId) {
-        try (TemporaryPath checkpointArchive = IOUtils.tempFile("checkpoint", ".zip")) {
+        try (TemporaryPath extractedDir = IOUtils.tempDir("unzipped-checkpoint")) {
 
-            String checkpointName = export(processKey, checkpointId, checkpointArchive.path());
+            String checkpointName = extract(processKey, chain(processKey, checkpointId), extractedDir.path());
             if (checkpointName == null) {
                 return null;
             }
 
-            try (TemporaryPath extractedDir = IOUtils.tempDir("unzipped-checkpoint")) {
-                IOUtils.unzip(checkpointArchive.path(), extractedDir.path());
-
-                // TODO: only for v1 runtime
-                String eventName = readCheckpointEventName(extractedDir.path());
+            // TODO: only for v1 runtime
+            String eventName = readCheckpointEventName(extractedDir.path());
 
-                stateManager.tx(tx -> {
-                    stateManager.deleteDirectory(tx, processKey, Constants.Files.CONCORD_SYSTEM_DIR_NAME);
-                    stateManager.deleteDirectory(tx, processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
-                    stateManager.importPath(tx, processKey, null, extractedDir.path(), (p, attrs) -> true);
-                });
-
-                Map<String, Object> out = OutVariablesUtils.read(extractedDir.path().resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME));
-                if (out.isEmpty()) {
-                    queueDao.removeMeta(processKey, "out");
-                } else {
-                    queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
-                }
+            stateManager.tx(tx -> {
+                stateManager.deleteDirectory(tx, processKey, Constants.Files.CONCORD_SYSTEM_DIR_NAME);
+                stateManager.deleteDirectory(tx, processKey, Constants.Files.JOB_ATTACHMENTS_DIR_NAME);
+                stateManager.importPath(tx, processKey, null, extractedDir.path(), (p, attrs) -> true);
+            });
 
-                return CheckpointInfo.of(checkpointName, eventName);
+            Map<String, Object> out = OutVariablesUtils.read(extractedDir.path().resolve(Constants.Files.JOB_ATTACHMENTS_DIR_NAME));
+            if (out.isEmpty()) {
+                queueDao.removeMeta(processKey, "out");
+            } else {
+                queueDao.updateMeta(processKey, Collections.singletonMap("out", out));
             }
+
+            return CheckpointInfo.of(checkpointName, eventName);
         } catch (Exception e) {
             throw new RuntimeException("Restore checkpoint '" + checkpointId + "' error", e);
         }
@@ -177,7 +199,100 @@ public class ProcessCheckpointManager {
         return checkpointName;
     }
 
-    private String export(ProcessKey processKey, UUID checkpointId, Path dest) {
-        return checkpointDao.export(processKey, checkpointId, dest);
+    /**
+     * Returns the IDs of the specified checkpoint and all previous checkpoints
+     * it depends on. The last element is the ID of a full checkpoint.
+     */
+    private List<UUID> chain(ProcessKey processKey, UUID checkpointId) {
+        List<UUID> result = new ArrayList<>();
+
+        UUID id = checkpointId;
+        while (id != null) {
+            if (result.contains(id)) {
+                throw new IllegalStateException("Invalid checkpoint chain: " + result);
+            }
+
+            result.add(id);
+            id = checkpointDao.getParentId(processKey, id);
+        }
+
+        return result;
+    }
+
+    /**
+     * Extracts the checkpoint chain into the specified directory, starting
+     * from the full checkpoint and applying the deltas in order.
+     *
+     * @return the checkpoint name or {@code null} if the checkpoint doesn't exist.
+     */
+    private String extract(ProcessKey processKey, List<UUID> chain, Path dest) throws IOException {
+        String checkpointName = null;
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            UUID id = chain.get(i);
+
+            try (TemporaryPath checkpointArchive = IOUtils.tempFile("checkpoint", ".zip")) {
+                checkpointName = checkpointDao.export(processKey, id, checkpointArchive.path());
+                if (checkpointName == null) {
+                    if (i == 0) {
+                        return null;
+                    }
+                    throw new IllegalStateException("Checkpoint not found: " + id);
+                }
+
+                IOUtils.unzip(checkpointArchive.path(), dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            applyManifest(dest);
+        }
+
+        return checkpointName;
+    }
+
+    private void compact(ProcessKey processKey, List<UUID> chain) {
+        UUID checkpointId = chain.get(0);
+
+        try (TemporaryPath extractedDir = IOUtils.tempDir("unzipped-checkpoint");
+             TemporaryPath checkpointArchive = IOUtils.tempFile("checkpoint", ".zip")) {
+
+            extract(processKey, chain, extractedDir.path());
+
+            try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(checkpointArchive.path()))) {
+                IOUtils.zip(zip, extractedDir.path());
+            }
+
+            checkpointDao.replaceWithFull(processKey, checkpointId, checkpointArchive.path());
+        } catch (Exception e) {
+            // the delta chain is still valid, just longer
+            log.warn("compact ['{}', '{}'] -> error: {}", processKey, checkpointId, e.getMessage());
+            return;
+        }
+
+        log.info("compact ['{}', '{}'] -> done, {} deltas merged", processKey, checkpointId, chain.size() - 1);
+    }
+
+    /**
+     * Removes the files that are not listed in the checkpoint's manifest, i.e. the files
+     * that were removed since the previous checkpoint.
+     */
+    private static void applyManifest(Path dir) throws IOException {
+        Path manifest = dir.resolve(CHECKPOINT_MANIFEST_FILE_NAME);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+
+        Set<String> files = new HashSet<>(Files.readAllLines(manifest));
+        Files.delete(manifest);
+
+        List<Path> removed;
+        try (Stream<Path> s = Files.walk(dir)) {
+            removed = s.filter(Files::isRegularFile)
+                    .filter(p -> !files.contains(dir.relativize(p).toString()))
+                    .collect(Collectors.toList());
+        }
+
+        for (Path p : removed) {
+            Files.delete(p);
+        }
     }
 }
@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process.state;
  * =====
  */
 
+import com.google.common.hash.HashCode;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.db.AbstractDao;
@@ -41,6 +42,7 @@ import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
 import org.jooq.Field;
@@ -57,6 +59,8 @@ import java.io.OutputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -80,6 +84,7 @@ public class ProcessStateManager extends AbstractDao {
 
     private static final String PATH_SEPARATOR = "/";
     private static final int INSERT_BATCH_SIZE = 10;
+    private static final int DELETE_BATCH_SIZE = 1000;
 
     private final SecretStoreConfiguration secretCfg;
     private final PolicyManager policyManager;
@@ -87,6 +92,7 @@ public class ProcessStateManager extends AbstractDao {
     private final ProcessKeyCache processKeyCache;
 
     private final Set<String> secureFiles;
+    private final boolean incrementalImport;
 
     @Inject
     protected ProcessStateManager(@MainDB Configuration cfg,
@@ -102,6 +108,7 @@ public class ProcessStateManager extends AbstractDao {
         this.processKeyCache = processKeyCache;
 
         this.secureFiles = Collections.unmodifiableSet(new HashSet<>(stateCfg.getSecureFiles()));
+        this.incrementalImport = stateCfg.isIncrementalStateImport();
     }
 
     @Override
@@ -305,6 +312,11 @@ public class ProcessStateManager extends AbstractDao {
         OffsetDateTime instanceCreatedAt = processKey.getCreatedAt();
 
         tx(tx -> {
+            if (incrementalImport) {
+                importPath(tx, processKey, null, src, filter, true);
+                return;
+            }
+
             delete(tx, instanceId, instanceCreatedAt);
             importPath(tx, processKey, null, src, filter);
         });
@@ -320,11 +332,26 @@ public class ProcessStateManager extends AbstractDao {
 
     @WithTimer
     public void importPath(DSLContext tx, ProcessKey processKey, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
+        importPath(tx, processKey, path, src, filter, false);
+    }
+
+    /**
+     * Imports data from the specified directory or a file.
+     * In the incremental mode the files with the same content and permissions
+     * as the already stored ones are skipped.
+     *
+     * @param removeMissing if {@code true} the existing items that weren't
+     *                      imported are removed
+     */
+    private void importPath(DSLContext tx, ProcessKey processKey, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter, boolean removeMissing) {
         PolicyEngine policyEngine = assertPolicy(tx, processKey, src, filter);
 
         String prefix = fixPath(path);
 
-        List<BatchItem> batch = new ArrayList<>();
+        Map<String, StoredItem> existing = incrementalImport ? listItems(tx, processKey, prefix) : null;
+
+        Set<String> imported = new HashSet<>();
+        List<BatchItem> items = new ArrayList<>();
         try {
             Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
                 @Override
@@ -351,28 +378,45 @@ public class ProcessStateManager extends AbstractDao {
                     int unixMode = Posix.unixMode(permissions);
                     boolean needsEncryption = secureFiles.contains(n);
 
-                    tx.deleteFrom(PROCESS_STATE).where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
-                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
-                            .and(PROCESS_STATE.ITEM_PATH.eq(n)))
-                            .execute();
+                    // don't keep the hashes of encrypted items, those are always replaced
+                    byte[] hash = null;
+                    if (incrementalImport && !needsEncryption) {
+                        hash = sha256(file);
+                    }
+
+                    imported.add(n);
 
-                    batch.add(new BatchItem(n, file, unixMode, needsEncryption));
-                    if (batch.size() >= INSERT_BATCH_SIZE) {
-                        insert(tx, processKey.getInstanceId(), processKey.getCreatedAt(), batch);
-                        batch.clear();
+                    if (existing != null && isUnchanged(existing.get(n), unixMode, hash)) {
+                        return FileVisitResult.CONTINUE;
                     }
 
+                    items.add(new BatchItem(n, file, unixMode, needsEncryption, hash));
                     return FileVisitResult.CONTINUE;
                 }
             });
-
-            if (!batch.isEmpty()) {
-                insert(tx, processKey.getInstanceId(), processKey.getCreatedAt(), batch);
-            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
+        Set<String> toDelete = new HashSet<>();
+        items.forEach(i -> toDelete.add(i.itemPath));
+        if (removeMissing && existing != null) {
+            existing.keySet().stream()
+                    .filter(n -> !imported.contains(n))
+                    .forEach(toDelete::add);
+        }
+
+        if (existing != null) {
+            // no need to delete anything that doesn't exist yet
+            toDelete.retainAll(existing.keySet());
+        }
+
+        deleteItems(tx, processKey, toDelete);
+
+        for (int i = 0; i < items.size(); i += INSERT_BATCH_SIZE) {
+            insert(tx, processKey.getInstanceId(), processKey.getCreatedAt(), items.subList(i, Math.min(i + INSERT_BATCH_SIZE, items.size())));
+        }
+
         assertPolicy(tx, processKey, policyEngine);
     }
 
@@ -413,6 +457,74 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    /**
+     * Exports all data of a process instance except the items the caller
+     * already has. Items without stored hashes (e.g. encrypted items or items
+     * imported in the non-incremental mode) are always exported.
+     *
+     * @param knownItems versions of the items the caller already has, in
+     *                   the {@code "sha256hex:unixMode"} format, mapped by
+     *                   item paths
+     */
+    public boolean exportExcept(ProcessKey processKey, Map<String, String> knownItems, ItemConsumer consumer) {
+        if (knownItems.isEmpty()) {
+            return export(processKey, consumer);
+        }
+
+        try (DSLContext tx = DSL.using(cfg)) {
+            Map<String, StoredItem> stored = listItems(tx, processKey, null);
+            if (stored.isEmpty()) {
+                return false;
+            }
+
+            List<String> skip = new ArrayList<>();
+            stored.forEach((n, i) -> {
+                if (i.hash == null || i.unixMode == null) {
+                    return;
+                }
+
+                String version = HashCode.fromBytes(i.hash).toString() + ":" + i.unixMode;
+                if (version.equals(knownItems.get(n))) {
+                    skip.add(n);
+                }
+            });
+
+            if (skip.isEmpty()) {
+                return export(processKey, consumer);
+            }
+
+            String sql = tx
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
+                    .from(PROCESS_STATE)
+                    .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
+                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((OffsetDateTime) null))
+                            .and(PROCESS_STATE.ITEM_PATH.ne(DSL.all(DSL.val(new String[0])))))
+                    .getSQL();
+
+            tx.connection(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setObject(1, processKey.getInstanceId());
+                    ps.setObject(2, processKey.getCreatedAt());
+                    ps.setArray(3, conn.createArrayOf("varchar", skip.toArray(new String[0])));
+
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String n = rs.getString(1);
+                            int unixMode = rs.getInt(2);
+                            boolean encrypted = rs.getBoolean(3);
+                            try (InputStream in = rs.getBinaryStream(4);
+                                 InputStream processed = encrypted ? decrypt(in) : in) {
+                                consumer.accept(n, unixMode, processed);
+                            }
+                        }
+                    }
+                }
+            });
+
+            return true;
+        }
+    }
+
     /**
      * Exports elements whose path begins with the specified value.
      */
@@ -503,10 +615,69 @@ public class ProcessStateManager extends AbstractDao {
                 .execute();
     }
 
+    private void deleteItems(DSLContext tx, ProcessKey processKey, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        List<String> l = new ArrayList<>(paths);
+        for (int i = 0; i < l.size(); i += DELETE_BATCH_SIZE) {
+            tx.deleteFrom(PROCESS_STATE)
+                    .where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                            .and(PROCESS_STATE.ITEM_PATH.in(l.subList(i, Math.min(i + DELETE_BATCH_SIZE, l.size())))))
+                    .execute();
+        }
+    }
+
+    private static Map<String, StoredItem> listItems(DSLContext tx, ProcessKey processKey, String prefix) {
+        Condition c = PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        if (prefix != null) {
+            c = c.and(PROCESS_STATE.ITEM_PATH.startsWith(prefix));
+        }
+
+        Map<String, StoredItem> result = new HashMap<>();
+        tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_HASH)
+                .from(PROCESS_STATE)
+                .where(c)
+                .forEach(r -> result.put(r.value1(), new StoredItem(r.value2(), r.value3())));
+
+        return result;
+    }
+
+    private static boolean isUnchanged(StoredItem stored, int unixMode, byte[] hash) {
+        if (stored == null || stored.hash == null || hash == null) {
+            return false;
+        }
+
+        return stored.unixMode != null && stored.unixMode == unixMode && Arrays.equals(stored.hash, hash);
+    }
+
+    private static byte[] sha256(Path file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        byte[] ab = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(ab)) > 0) {
+                md.update(ab, 0, read);
+            }
+        }
+
+        return md.digest();
+    }
+
     private void insert(DSLContext tx, UUID instanceId, OffsetDateTime instanceCreatedAt, Collection<BatchItem> batch) {
         String sql = tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values((UUID) null, null, null, null, null, null)
+                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_HASH)
+                .values((UUID) null, null, null, null, null, null, null)
                 .getSQL();
 
         List<InputStream> streams = new LinkedList<>();
@@ -539,6 +710,9 @@ public class ProcessStateManager extends AbstractDao {
                         // IS_ENCRYPTED
                         ps.setBoolean(6, item.needsEncryption);
 
+                        // ITEM_HASH
+                        ps.setBytes(7, item.hash);
+
                         ps.addBatch();
                     }
 
@@ -723,6 +897,7 @@ public class ProcessStateManager extends AbstractDao {
         public void accept(String name, int unixMode, InputStream src) {
             ZipArchiveEntry entry = new ZipArchiveEntry(name);
             entry.setUnixMode(unixMode);
+            entry.addExtraField(IOUtils.unixModeField(unixMode));
 
             try {
                 dst.putArchiveEntry(entry);
@@ -758,12 +933,25 @@ public class ProcessStateManager extends AbstractDao {
         private final Path path;
         private final int unixMode;
         private final boolean needsEncryption;
+        private final byte[] hash;
 
-        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption) {
+        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption, byte[] hash) { // NOSONAR
             this.itemPath = itemPath;
             this.path = path;
             this.unixMode = unixMode;
             this.needsEncryption = needsEncryption;
+            this.hash = hash;
+        }
+    }
+
+    private static final class StoredItem {
+
+        private final Integer unixMode;
+        private final byte[] hash;
+
+        private StoredItem(Integer unixMode, byte[] hash) { // NOSONAR
+            this.unixMode = unixMode;
+            this.hash = hash;
         }
     }
 }
@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.repository;
  * =====
  */
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.process.loader.ProjectLoader;
@@ -57,13 +58,15 @@ public class RepositoryManager {
     private final SecretManager secretManager;
     private final RepositoryCache repositoryCache;
     private final RepositoryConfiguration repoCfg;
+    private final RepositorySnapshots snapshots;
 
     @Inject
     public RepositoryManager(ObjectMapper objectMapper,
                              GitConfiguration gitCfg,
                              RepositoryConfiguration repoCfg,
                              ProjectDao projectDao,
-                             SecretManager secretManager) throws IOException {
+                             SecretManager secretManager,
+                             MetricRegistry metricRegistry) throws IOException {
 
         GitClientConfiguration gitCliCfg = GitClientConfiguration.builder()
                 .oauthToken(gitCfg.getOauthToken())
@@ -89,6 +92,14 @@ public class RepositoryManager {
                 repoCfg.getMaxAge(),
                 repoCfg.getLockCount(),
                 objectMapper);
+
+        if (repoCfg.isSnapshotsEnabled()) {
+            this.snapshots = new RepositorySnapshots(repoCfg.getSnapshotsDir(),
+                    repoCfg.getSnapshotsMaxSize() * 1024L * 1024L,
+                    metricRegistry);
+        } else {
+            this.snapshots = null;
+        }
     }
 
     public void testConnection(UUID orgId, UUID projectId, String uri, String branch, String commitId, String path, String secretName) {
@@ -146,6 +157,44 @@ public class RepositoryManager {
         return fetch(repository.getUrl(), repository.getBranch(), repository.getCommitId(), repository.getPath(), secret, checkRemoteCommitId);
     }
 
+    /**
+     * Exports the previously saved snapshot of the repository's commit.
+     * Only the repositories with a specific commit ID can have snapshots.
+     *
+     * @return the result or {@code null} if there's no snapshot of the commit.
+     */
+    public RepositorySnapshots.Result exportSnapshot(RepositoryEntry repository, Path dst) {
+        if (snapshots == null || repository.getCommitId() == null) {
+            return null;
+        }
+
+        try {
+            return snapshots.export(repository.getUrl(), repository.getCommitId(), repository.getPath(), dst);
+        } catch (IOException e) {
+            // the caller falls back to the regular export which overwrites the files
+            log.warn("exportSnapshot ['{}', '{}', '{}'] -> error: {}", repository.getUrl(), repository.getCommitId(), repository.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves a snapshot of the repository's commit, using the files previously
+     * exported into {@code src}. Doesn't require the repository's lock.
+     */
+    public void storeSnapshot(RepositoryEntry repository, RepositoryInfo info, String branch, Path src, Snapshot snapshot) {
+        if (snapshots == null || repository.getCommitId() == null) {
+            return;
+        }
+
+        // only the snapshots that record the exported files can be used
+        // to tell the repository's files apart from the rest of the directory
+        if (!(snapshot instanceof LastModifiedSnapshot)) {
+            return;
+        }
+
+        snapshots.put(repository.getUrl(), repository.getCommitId(), repository.getPath(), info, branch, src, snapshot);
+    }
+
     public <T> T withLock(String repoUrl, Callable<T> f) {
         long start = System.currentTimeMillis();
         try {
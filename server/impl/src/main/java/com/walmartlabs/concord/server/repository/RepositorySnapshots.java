@@ -0,0 +1,336 @@
+package com.walmartlabs.concord.server.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.repository.LastModifiedSnapshot;
+import com.walmartlabs.concord.repository.RepositoryInfo;
+import com.walmartlabs.concord.repository.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps copies of exported repository commits. Processes started with
+ * the same commit ID get the files from the copy, without fetching
+ * the repository.
+ * <p>
+ * The least recently used snapshots are removed when the total size
+ * of the snapshots exceeds the limit.
+ */
+public class RepositorySnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositorySnapshots.class);
+
+    private final Path baseDir;
+    private final long maxSize;
+
+    // in the access order, guarded by "this"
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Timer exportTimer;
+
+    public RepositorySnapshots(Path baseDir, long maxSize, MetricRegistry metricRegistry) throws IOException {
+        this.baseDir = baseDir;
+        this.maxSize = maxSize;
+
+        // the snapshots are not preserved between restarts
+        if (Files.exists(baseDir)) {
+            try (Stream<Path> s = Files.list(baseDir)) {
+                for (Path p : s.collect(Collectors.toList())) {
+                    IOUtils.deleteRecursively(p);
+                }
+            }
+        } else {
+            Files.createDirectories(baseDir);
+        }
+
+        this.hits = metricRegistry.meter("repository-snapshot-hits");
+        this.misses = metricRegistry.meter("repository-snapshot-misses");
+        this.exportTimer = metricRegistry.timer("repository-snapshot-export");
+        metricRegistry.gauge("repository-snapshot-size", () -> this::getTotalSize);
+    }
+
+    /**
+     * Exports the snapshot of the specified commit into {@code dst}.
+     * If the snapshot can't be copied (e.g. its files were removed),
+     * the snapshot is invalidated and the error is rethrown.
+     *
+     * @return the result or {@code null} if there's no snapshot of the commit.
+     */
+    public Result export(String url, String commitId, String path, Path dst) throws IOException {
+        Key key = new Key(url, commitId, path);
+
+        Entry e;
+        synchronized (this) {
+            e = entries.get(key);
+            if (e == null) {
+                misses.mark();
+                return null;
+            }
+
+            e.users++;
+        }
+
+        try (Timer.Context ignored = exportTimer.time()) {
+            LastModifiedSnapshot snapshot = new LastModifiedSnapshot();
+            try {
+                copy(e.dir, dst, snapshot);
+            } catch (IOException ex) {
+                log.warn("export ['{}', '{}', '{}'] -> error while copying the snapshot, removing...", url, commitId, path);
+                invalidate(key, e);
+                throw ex;
+            }
+
+            hits.mark();
+            return new Result(e.info, e.branch, snapshot);
+        } finally {
+            release(e);
+        }
+    }
+
+    /**
+     * Saves a snapshot of the specified commit. The snapshot is a copy of
+     * the files previously exported into {@code src}, as recorded by
+     * the export's {@code snapshot}. Other files in {@code src} are ignored.
+     */
+    public void put(String url, String commitId, String path, RepositoryInfo info, String branch, Path src, Snapshot snapshot) {
+        Key key = new Key(url, commitId, path);
+
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return;
+            }
+        }
+
+        Path dir = baseDir.resolve(UUID.randomUUID().toString());
+        try {
+            long size = copyExported(src, dir, snapshot);
+            if (size > maxSize) {
+                delete(dir);
+                return;
+            }
+
+            Entry e = new Entry(dir, size, info, branch);
+
+            List<Entry> evicted;
+            synchronized (this) {
+                if (entries.putIfAbsent(key, e) != null) {
+                    evicted = Collections.singletonList(e);
+                } else {
+                    totalSize += size;
+                    evicted = evict();
+                }
+            }
+
+            for (Entry ee : evicted) {
+                delete(ee);
+            }
+        } catch (Exception ex) {
+            log.warn("put ['{}', '{}', '{}'] -> error: {}", url, commitId, path, ex.getMessage());
+            delete(dir);
+        }
+    }
+
+    synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Copies the snapshot's files into the process' directory.
+     */
+    void copy(Path src, Path dst, LastModifiedSnapshot snapshot) throws IOException {
+        IOUtils.copy(src, dst, Collections.emptyList(), snapshot, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the least recently used snapshots until the total size is within the limit.
+     * Snapshots that are being exported are skipped.
+     */
+    private List<Entry> evict() {
+        List<Entry> result = new ArrayList<>();
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Entry e = it.next();
+            if (e.users > 0) {
+                continue;
+            }
+
+            it.remove();
+            totalSize -= e.size;
+            result.add(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the snapshot. The files are deleted when the snapshot
+     * is no longer used.
+     */
+    private synchronized void invalidate(Key key, Entry e) {
+        if (entries.remove(key, e)) {
+            totalSize -= e.size;
+            e.removed = true;
+        }
+    }
+
+    private void release(Entry e) {
+        synchronized (this) {
+            e.users--;
+            if (e.users > 0 || !e.removed) {
+                return;
+            }
+        }
+
+        delete(e);
+    }
+
+    /**
+     * Copies the exported files from {@code src} to {@code dst}.
+     *
+     * @return the total size of the copied files
+     */
+    private static long copyExported(Path src, Path dst, Snapshot snapshot) throws IOException {
+        AtomicLong size = new AtomicLong();
+
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!snapshot.contains(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                Path target = dst.resolve(src.relativize(file));
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.COPY_ATTRIBUTES);
+
+                size.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Files.createDirectories(dst);
+        return size.get();
+    }
+
+    private static void delete(Entry e) {
+        delete(e.dir);
+    }
+
+    private static void delete(Path dir) {
+        try {
+            IOUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            log.warn("delete ['{}'] -> error: {}", dir, e.getMessage());
+        }
+    }
+
+    public static final class Result {
+
+        private final RepositoryInfo info;
+        private final String branch;
+        private final Snapshot snapshot;
+
+        private Result(RepositoryInfo info, String branch, Snapshot snapshot) {
+            this.info = info;
+            this.branch = branch;
+            this.snapshot = snapshot;
+        }
+
+        public RepositoryInfo info() {
+            return info;
+        }
+
+        public String branch() {
+            return branch;
+        }
+
+        public Snapshot snapshot() {
+            return snapshot;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Path dir;
+        private final long size;
+        private final RepositoryInfo info;
+        private final String branch;
+
+        // guarded by the RepositorySnapshots instance
+        private int users;
+        private boolean removed;
+
+        private Entry(Path dir, long size, RepositoryInfo info, String branch) {
+            this.dir = dir;
+            this.size = size;
+            this.info = info;
+            this.branch = branch;
+        }
+    }
+
+    private static final class Key {
+
+        private final String url;
+        private final String commitId;
+        private final String path;
+
+        private Key(String url, String commitId, String path) {
+            this.url = url;
+            this.commitId = commitId;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return url.equals(key.url) &&
+                    commitId.equals(key.commitId) &&
+                    Objects.equals(path, key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, commitId, path);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.walmartlabs.concord.server.security.apikey;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.audit.ActionSource;
+import com.walmartlabs.concord.server.audit.AuditAction;
+import com.walmartlabs.concord.server.audit.AuditLog;
+import com.walmartlabs.concord.server.audit.AuditObject;
+import com.walmartlabs.concord.server.cfg.ApiKeyConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Summarizes the usage of API keys. Instead of an ACCESS audit log entry
+ * per request, a single entry with the number of requests is written
+ * for each used key every {@code flushInterval}.
+ */
+@Named
+@Singleton
+public class ApiKeyAccessAuditor implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ApiKeyAccessAuditor.class);
+
+    private final AuditLog auditLog;
+
+    private final boolean enabled;
+    private final long flushInterval;
+    private final int maxKeys;
+
+    private final ConcurrentMap<UUID, Usage> usages = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    private final Timer flushTimer;
+
+    @Inject
+    public ApiKeyAccessAuditor(AuditLog auditLog,
+                               ApiKeyConfiguration cfg,
+                               MetricRegistry metricRegistry) {
+
+        this.auditLog = auditLog;
+
+        this.enabled = cfg.isAccessAuditEnabled();
+        this.flushInterval = cfg.getAccessAuditFlushInterval().toMillis();
+        this.maxKeys = cfg.getAccessAuditMaxKeys();
+
+        this.flushTimer = metricRegistry.timer("api-key-access-audit-flush");
+        metricRegistry.gauge("api-key-access-audit-size", () -> usages::size);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+
+        worker = new Thread(this::run, "api-key-access-auditor");
+        worker.start();
+
+        log.info("start -> done, flush interval {}ms", flushInterval);
+    }
+
+    @Override
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        running = false;
+
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+
+        // write the remaining summaries
+        flush();
+
+        log.info("stop -> done");
+    }
+
+    /**
+     * Records a usage of the specified key.
+     *
+     * @return {@code false} if the usage can't be recorded (e.g. the auditor
+     * is not running or too many keys are tracked already). In that case
+     * the access must be logged directly.
+     */
+    public boolean record(UUID userId, UUID keyId) {
+        if (!running) {
+            return false;
+        }
+
+        if (usages.size() >= maxKeys && !usages.containsKey(keyId)) {
+            return false;
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+
+        // the usage is updated atomically, so no counts are lost if the entry
+        // is being flushed at the same time
+        usages.compute(keyId, (k, u) -> {
+            if (u == null) {
+                u = new Usage(userId, now);
+            }
+
+            u.count++;
+            u.lastAccessAt = now;
+            return u;
+        });
+
+        return true;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(flushInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("run -> error while writing API key usage: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flush() {
+        if (usages.isEmpty()) {
+            return;
+        }
+
+        List<UUID> keyIds = new ArrayList<>(usages.keySet());
+
+        try (Timer.Context ignored = flushTimer.time()) {
+            for (UUID keyId : keyIds) {
+                Usage u = usages.remove(keyId);
+                if (u == null) {
+                    continue;
+                }
+
+                auditLog.add(AuditObject.SYSTEM, AuditAction.ACCESS)
+                        .userId(u.userId)
+                        .field("realm", ApiKeyRealm.REALM_NAME)
+                        .field("apiKeyId", keyId)
+                        .field("count", u.count)
+                        .field("firstAccessAt", u.firstAccessAt)
+                        .field("lastAccessAt", u.lastAccessAt)
+                        .actionSource(ActionSource.API_REQUEST)
+                        .log();
+            }
+        }
+    }
+
+    private static final class Usage {
+
+        private final UUID userId;
+        private final OffsetDateTime firstAccessAt;
+
+        private OffsetDateTime lastAccessAt;
+        private long count;
+
+        private Usage(UUID userId, OffsetDateTime firstAccessAt) {
+            this.userId = userId;
+            this.firstAccessAt = firstAccessAt;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.walmartlabs.concord.server.security.apikey;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.server.cfg.ApiKeyConfiguration;
+import com.walmartlabs.concord.server.user.UserEntry;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches API keys and their users, so authenticated requests made with the same
+ * key don't have to hit the DB every time. Entries are keyed by the key's hash.
+ * <p>
+ * Entries are invalidated when the key is deleted or the user is changed
+ * on this server instance. Changes made via other instances become visible
+ * after the entries expire.
+ */
+@Named
+@Singleton
+public class ApiKeyCache {
+
+    private final ApiKeyDao apiKeyDao;
+    private final boolean enabled;
+    private final Cache<String, CachedKey> keys;
+
+    private final Meter hits;
+    private final Meter misses;
+
+    @Inject
+    public ApiKeyCache(ApiKeyDao apiKeyDao, ApiKeyConfiguration cfg, MetricRegistry metricRegistry) {
+        this.apiKeyDao = apiKeyDao;
+        this.enabled = cfg.isCacheEnabled();
+        this.keys = CacheBuilder.newBuilder()
+                .maximumSize(cfg.getCacheMaxSize())
+                .expireAfterWrite(cfg.getCacheTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+
+        this.hits = metricRegistry.meter("api-key-cache-hits");
+        this.misses = metricRegistry.meter("api-key-cache-misses");
+    }
+
+    /**
+     * Returns an active (non-expired) key or {@code null} if there's no such key.
+     */
+    public ApiKeyEntry find(String key) {
+        if (!enabled) {
+            return apiKeyDao.find(key);
+        }
+
+        String hash = ApiKeyDao.hash(key);
+
+        CachedKey k = keys.getIfPresent(hash);
+        if (k != null && !isExpired(k.entry)) {
+            hits.mark();
+            return k.entry;
+        }
+
+        misses.mark();
+
+        ApiKeyEntry e = apiKeyDao.find(key);
+        if (e == null) {
+            keys.invalidate(hash);
+            return null;
+        }
+
+        keys.put(hash, new CachedKey(e));
+        return e;
+    }
+
+    /**
+     * Returns the user of the specified key. The user is loaded using {@code loader}
+     * if it's not cached yet.
+     */
+    public Optional<UserEntry> getUser(String key, Supplier<Optional<UserEntry>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        CachedKey k = keys.getIfPresent(ApiKeyDao.hash(key));
+        if (k == null) {
+            return loader.get();
+        }
+
+        UserEntry u = k.user;
+        if (u != null) {
+            return Optional.of(u);
+        }
+
+        Optional<UserEntry> result = loader.get();
+        result.ifPresent(e -> k.user = e);
+        return result;
+    }
+
+    public void invalidateKey(UUID keyId) {
+        keys.asMap().values().removeIf(k -> k.entry.getId().equals(keyId));
+    }
+
+    public void invalidateUser(UUID userId) {
+        keys.asMap().values().removeIf(k -> k.entry.getUserId().equals(userId));
+    }
+
+    private static boolean isExpired(ApiKeyEntry e) {
+        OffsetDateTime expiredAt = e.getExpiredAt();
+        return expiredAt != null && !expiredAt.isAfter(OffsetDateTime.now());
+    }
+
+    private static final class CachedKey {
+
+        private final ApiKeyEntry entry;
+        private volatile UserEntry user;
+
+        private CachedKey(ApiKeyEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
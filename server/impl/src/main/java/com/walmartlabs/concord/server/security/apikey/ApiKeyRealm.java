@@ -43,15 +43,23 @@ import java.util.Arrays;
 @Named
 public class ApiKeyRealm extends AuthorizingRealm {
 
-    private static final String REALM_NAME = "apikey";
+    static final String REALM_NAME = "apikey";
 
     private final UserManager userManager;
     private final AuditLog auditLog;
+    private final ApiKeyCache apiKeyCache;
+    private final ApiKeyAccessAuditor accessAuditor;
 
     @Inject
-    public ApiKeyRealm(UserManager userManager, AuditLog auditLog) {
+    public ApiKeyRealm(UserManager userManager,
+                       AuditLog auditLog,
+                       ApiKeyCache apiKeyCache,
+                       ApiKeyAccessAuditor accessAuditor) {
+
         this.userManager = userManager;
         this.auditLog = auditLog;
+        this.apiKeyCache = apiKeyCache;
+        this.accessAuditor = accessAuditor;
     }
 
     @Override
@@ -64,7 +72,7 @@ public class ApiKeyRealm extends AuthorizingRealm {
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
         ApiKey t = (ApiKey) token;
 
-        UserEntry u = userManager.get(t.getUserId()).orElse(null);
+        UserEntry u = apiKeyCache.getUser(t.getKey(), () -> userManager.get(t.getUserId())).orElse(null);
         if (u == null) {
             return null;
         }
@@ -73,11 +81,13 @@ public class ApiKeyRealm extends AuthorizingRealm {
             throw new AuthenticationException("User account '" + u.getName() + "' is disabled");
         }
 
-        auditLog.add(AuditObject.SYSTEM, AuditAction.ACCESS)
-                .userId(u.getId())
-                .field("realm", REALM_NAME)
-                .field("apiKeyId", t.getKeyId())
-                .log();
+        if (!accessAuditor.record(u.getId(), t.getKeyId())) {
+            auditLog.add(AuditObject.SYSTEM, AuditAction.ACCESS)
+                    .userId(u.getId())
+                    .field("realm", REALM_NAME)
+                    .field("apiKeyId", t.getKeyId())
+                    .log();
+        }
 
         UserPrincipal p = new UserPrincipal(REALM_NAME, u);
         return new SimpleAccount(Arrays.asList(p, t), t.getKey(), getName());
@@ -65,13 +65,15 @@ public class ApiKeyResource implements Resource {
 
     private final ApiKeyConfiguration cfg;
     private final ApiKeyDao apiKeyDao;
+    private final ApiKeyCache apiKeyCache;
     private final UserManager userManager;
     private final AuditLog auditLog;
 
     @Inject
-    public ApiKeyResource(ApiKeyConfiguration cfg, ApiKeyDao apiKeyDao, UserManager userManager, AuditLog auditLog) {
+    public ApiKeyResource(ApiKeyConfiguration cfg, ApiKeyDao apiKeyDao, ApiKeyCache apiKeyCache, UserManager userManager, AuditLog auditLog) {
         this.cfg = cfg;
         this.apiKeyDao = apiKeyDao;
+        this.apiKeyCache = apiKeyCache;
         this.userManager = userManager;
         this.auditLog = auditLog;
     }
@@ -161,6 +163,7 @@ public class ApiKeyResource implements Resource {
         assertOwner(userId);
 
         apiKeyDao.delete(id);
+        apiKeyCache.invalidateKey(id);
 
         auditLog.add(AuditObject.API_KEY, AuditAction.DELETE)
                 .field("id", id)
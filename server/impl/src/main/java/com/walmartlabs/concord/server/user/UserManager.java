@@ -29,6 +29,7 @@ import com.walmartlabs.concord.server.org.team.TeamManager;
 import com.walmartlabs.concord.server.org.team.TeamRole;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.security.UserPrincipal;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyCache;
 import com.walmartlabs.concord.server.security.ldap.LdapGroupSearchResult;
 
 import javax.inject.Inject;
@@ -43,13 +44,15 @@ public class UserManager {
     private final UserDao userDao;
     private final TeamDao teamDao;
     private final AuditLog auditLog;
+    private final ApiKeyCache apiKeyCache;
     private final Map<UserType, UserInfoProvider> userInfoProviders;
 
     @Inject
-    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, List<UserInfoProvider> providers) {
+    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, ApiKeyCache apiKeyCache, List<UserInfoProvider> providers) {
         this.userDao = userDao;
         this.teamDao = teamDao;
         this.auditLog = auditLog;
+        this.apiKeyCache = apiKeyCache;
 
         this.userInfoProviders = new HashMap<>();
         providers.forEach(p -> this.userInfoProviders.put(p.getUserType(), p));
@@ -109,6 +112,8 @@ public class UserManager {
             return Optional.empty();
         }
 
+        apiKeyCache.invalidateUser(userId);
+
         Map<String, Object> changes = DiffUtils.compare(prevEntry, newEntry);
         // some callers (e.g. the LDAP realm) update user records regardless of whether there was
         // any actual changes or not
@@ -180,6 +185,7 @@ public class UserManager {
         }
 
         userDao.enable(userId);
+        apiKeyCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -196,6 +202,7 @@ public class UserManager {
         }
 
         userDao.disable(userId);
+        apiKeyCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
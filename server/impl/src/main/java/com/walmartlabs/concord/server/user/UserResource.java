@@ -25,6 +25,7 @@ import com.walmartlabs.concord.server.OperationResult;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyCache;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -53,11 +54,13 @@ public class UserResource implements Resource {
 
     private final UserManager userManager;
     private final UserDao userDao;
+    private final ApiKeyCache apiKeyCache;
 
     @Inject
-    public UserResource(UserManager userManager, UserDao userDao) {
+    public UserResource(UserManager userManager, UserDao userDao, ApiKeyCache apiKeyCache) {
         this.userManager = userManager;
         this.userDao = userDao;
+        this.apiKeyCache = apiKeyCache;
     }
 
     /**
@@ -130,6 +133,7 @@ public class UserResource implements Resource {
         }
 
         userDao.delete(id);
+        apiKeyCache.invalidateUser(id);
         return new DeleteUserResponse();
     }
 
@@ -151,6 +155,7 @@ public class UserResource implements Resource {
                 .orElseThrow(() -> new ConcordApplicationException("User not found: " + username, Status.NOT_FOUND));
 
         userDao.updateRoles(id, req.getRoles());
+        apiKeyCache.invalidateUser(id);
         return new GenericOperationResult(OperationResult.UPDATED);
     }
 
@@ -0,0 +1,146 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.Listeners;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.audit.AuditDao.NewEntry;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class AuditLogBufferTest {
+
+    @Test(timeout = 30000)
+    @SuppressWarnings("unchecked")
+    public void testFailedBatch() throws Exception {
+        int badEntry = 3;
+
+        CountDownLatch firstBatch = new CountDownLatch(1);
+        AtomicLong seq = new AtomicLong();
+        List<Integer> persisted = Collections.synchronizedList(new ArrayList<>());
+
+        AuditDao auditDao = mock(AuditDao.class);
+        when(auditDao.insert(anyList())).thenAnswer(i -> {
+            List<NewEntry> entries = i.getArgument(0);
+            List<Integer> ids = entries.stream().map(AuditLogBufferTest::id).collect(Collectors.toList());
+
+            // hold the first batch until the rest of the entries are queued
+            if (ids.contains(0)) {
+                firstBatch.await();
+            }
+
+            if (ids.contains(badEntry)) {
+                throw new RuntimeException("bad entry");
+            }
+
+            persisted.addAll(ids);
+            return entries.stream()
+                    .map(e -> AuditEvent.builder()
+                            .entrySeq(seq.incrementAndGet())
+                            .entryDate(OffsetDateTime.now())
+                            .object(AuditObject.PROJECT.toString())
+                            .action(AuditAction.UPDATE.toString())
+                            .details(e.details)
+                            .build())
+                    .collect(Collectors.toList());
+        });
+
+        Listeners listeners = mock(Listeners.class);
+
+        AuditConfiguration cfg = mock(AuditConfiguration.class);
+        when(cfg.isBufferEnabled()).thenReturn(true);
+        when(cfg.getBufferMaxEntries()).thenReturn(100);
+        when(cfg.getBufferBatchSize()).thenReturn(10);
+
+        MetricRegistry metricRegistry = new MetricRegistry();
+        AuditLogBuffer buffer = new AuditLogBuffer(auditDao, listeners, cfg, metricRegistry);
+        buffer.start();
+
+        assertTrue(buffer.add(entry(0), false));
+
+        // the first batch is in flight, the next entries go into the second batch
+        for (int i = 1; i < 6; i++) {
+            assertTrue(buffer.add(entry(i), false));
+        }
+        firstBatch.countDown();
+
+        buffer.stop();
+
+        // ---
+
+        assertEquals(Arrays.asList(0, 1, 2, 4, 5), persisted);
+
+        ArgumentCaptor<AuditEvent> captor = ArgumentCaptor.forClass(AuditEvent.class);
+        verify(listeners, times(5)).onAuditEvent(captor.capture());
+        List<Integer> reported = captor.getAllValues().stream()
+                .map(ev -> (Integer) ev.details().get("id"))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(0, 1, 2, 4, 5), reported);
+
+        assertEquals(1, metricRegistry.meter("audit-log-buffer-dropped").getCount());
+    }
+
+    @Test(timeout = 30000)
+    @SuppressWarnings("unchecked")
+    public void testFailedDurableEntry() throws Exception {
+        AuditDao auditDao = mock(AuditDao.class);
+        when(auditDao.insert(anyList())).thenThrow(new RuntimeException("bad entry"));
+
+        AuditConfiguration cfg = mock(AuditConfiguration.class);
+        when(cfg.isBufferEnabled()).thenReturn(true);
+        when(cfg.getBufferMaxEntries()).thenReturn(100);
+        when(cfg.getBufferBatchSize()).thenReturn(10);
+
+        AuditLogBuffer buffer = new AuditLogBuffer(auditDao, mock(Listeners.class), cfg, new MetricRegistry());
+        buffer.start();
+
+        try {
+            buffer.add(entry(0), true);
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            assertEquals("bad entry", e.getMessage());
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    private static NewEntry entry(int id) {
+        Map<String, Object> details = new HashMap<>();
+        details.put("id", id);
+        return new NewEntry(null, AuditObject.PROJECT, AuditAction.UPDATE, details);
+    }
+
+    private static int id(NewEntry e) {
+        return (Integer) e.details.get("id");
+    }
+}
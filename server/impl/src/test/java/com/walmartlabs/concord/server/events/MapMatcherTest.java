@@ -27,9 +27,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MapMatcherTest {
 
@@ -51,7 +54,7 @@ public class MapMatcherTest {
         conditions.put("e", true);
         conditions.put("f", Arrays.asList("1", "2"));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -67,7 +70,7 @@ public class MapMatcherTest {
 
         Map<String, Object> conditions = new HashMap<>();
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -84,7 +87,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("b", "XXXX");
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
 
@@ -96,7 +99,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("a", "123");
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
 
@@ -114,7 +117,7 @@ public class MapMatcherTest {
         conditions.put("a", 100);
         conditions.put("obj", Collections.singletonMap("o1", "o1v1"));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -126,7 +129,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("unknownRepo", Arrays.asList(true, false));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -138,7 +141,76 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("unknownRepo", Collections.singletonList(false));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
+
+    @Test
+    public void testRegexAsData() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("a", "a-.*");
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("a", Arrays.asList("x-value", "a-value"));
+
+        boolean result = matches(event, conditions);
+        assertTrue(result);
+    }
+
+    @Test
+    public void testMissingValue() {
+        Map<String, Object> event = new HashMap<>();
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("a", ".*");
+        conditions.put("b", null);
+
+        boolean result = matches(event, conditions);
+        assertTrue(result);
+    }
+
+    @Test
+    public void testInvalidRegexAsData() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("comment", "lgtm");
+
+        // the array elements are not used as patterns here
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("comment", Arrays.asList("+1", "lgtm"));
+
+        assertTrue(matches(event, conditions));
+
+        event.put("comment", "nope");
+        assertFalse(matches(event, conditions));
+    }
+
+    @Test
+    public void testInvalidRegex() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("comment", "lgtm");
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("comment", "+1");
+
+        // compiles fine, fails when the regex is used
+        MapMatcher.Compiled m = MapMatcher.compile(conditions);
+        for (int i = 0; i < 2; i++) {
+            try {
+                m.matches(event);
+                fail("exception expected");
+            } catch (PatternSyntaxException e) {
+                assertEquals("+1", e.getPattern());
+            }
+        }
+    }
+
+    /**
+     * Matches using both the dynamic and the pre-compiled versions,
+     * makes sure the results are the same.
+     */
+    private static boolean matches(Map<String, Object> event, Map<String, Object> conditions) {
+        boolean result = MapMatcher.matches(event, conditions);
+        assertEquals(result, MapMatcher.compile(conditions).matches(event));
+        return result;
+    }
 }
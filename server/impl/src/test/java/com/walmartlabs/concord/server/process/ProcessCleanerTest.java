@@ -0,0 +1,178 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.Record2;
+import org.jooq.impl.DSL;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_CLEANER_MARKERS;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_QUEUE;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Ignore("requires a local DB instance")
+public class ProcessCleanerTest extends AbstractDaoTest {
+
+    private static final String MARKER_NAME = "process-cleaner";
+
+    private static final int BATCH_SIZE = 2;
+    private static final int MAX_BATCHES = 2;
+
+    private ProcessQueueDao queueDao;
+    private ProcessCleaner cleaner;
+
+    /**
+     * Test processes are created well before anything else in the DB, so they
+     * come first in the cleaner's order and nothing else is older than the cutoff.
+     */
+    private OffsetDateTime baseTime;
+
+    @Before
+    public void setUp() {
+        queueDao = new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(TestObjectMapper.INSTANCE));
+
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.getMaxStateAge()).thenReturn("10 years");
+        when(cfg.getCleanupBatchSize()).thenReturn(BATCH_SIZE);
+        when(cfg.getCleanupMaxBatches()).thenReturn(MAX_BATCHES);
+        when(cfg.isQueueCleanup()).thenReturn(true);
+        when(cfg.isStateCleanup()).thenReturn(true);
+        when(cfg.isEventsCleanup()).thenReturn(true);
+        when(cfg.isLogsCleanup()).thenReturn(true);
+        when(cfg.isCheckpointCleanup()).thenReturn(true);
+
+        cleaner = new ProcessCleaner(cfg, new ProcessCleaner.CleanerDao(getConfiguration()));
+
+        baseTime = OffsetDateTime.now().minusYears(30).truncatedTo(ChronoUnit.SECONDS);
+
+        tx(tx -> tx.update(PROCESS_CLEANER_MARKERS)
+                .setNull(PROCESS_CLEANER_MARKERS.INSTANCE_CREATED_AT)
+                .setNull(PROCESS_CLEANER_MARKERS.INSTANCE_ID)
+                .where(PROCESS_CLEANER_MARKERS.CLEANER_NAME.eq(MARKER_NAME))
+                .execute());
+    }
+
+    @Test
+    public void testBatches() {
+        List<ProcessKey> processes = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE * MAX_BATCHES + 1; i++) {
+            processes.add(newExpiredProcess(i + 1));
+        }
+
+        // the first run is capped by cleanupMaxBatches
+
+        cleaner.performTask();
+
+        for (int i = 0; i < BATCH_SIZE * MAX_BATCHES; i++) {
+            assertFalse(exists(processes.get(i)));
+        }
+        ProcessKey last = processes.get(BATCH_SIZE * MAX_BATCHES);
+        assertTrue(exists(last));
+        assertMarker(processes.get(BATCH_SIZE * MAX_BATCHES - 1));
+
+        // a process created before the marker is not picked up until the cleaner starts over
+
+        ProcessKey early = newExpiredProcess(0);
+
+        cleaner.performTask();
+
+        assertFalse(exists(last));
+        assertTrue(exists(early));
+        assertMarker(null);
+
+        // the next run starts from the beginning of the queue
+
+        cleaner.performTask();
+
+        assertFalse(exists(early));
+        assertMarker(null);
+    }
+
+    @Test
+    public void testRecentProcessesAreKept() {
+        ProcessKey expired = newExpiredProcess(1);
+        ProcessKey recent = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+        tx(tx -> queueDao.insert(tx, recent, ProcessStatus.FINISHED, ProcessKind.DEFAULT, null, null, null, null, null, null));
+
+        cleaner.performTask();
+
+        assertFalse(exists(expired));
+        assertTrue(exists(recent));
+        assertMarker(null);
+    }
+
+    private ProcessKey newExpiredProcess(int n) {
+        OffsetDateTime createdAt = baseTime.plusSeconds(n);
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), createdAt);
+
+        tx(tx -> {
+            queueDao.insert(tx, processKey, ProcessStatus.FINISHED, ProcessKind.DEFAULT, null, null, null, null, null, null);
+
+            tx.update(PROCESS_QUEUE)
+                    .set(PROCESS_QUEUE.LAST_UPDATED_AT, createdAt)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId()))
+                    .execute();
+        });
+
+        return processKey;
+    }
+
+    private boolean exists(ProcessKey processKey) {
+        return DSL.using(getConfiguration())
+                .fetchExists(PROCESS_QUEUE, PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId()));
+    }
+
+    private void assertMarker(ProcessKey expected) {
+        Record2<OffsetDateTime, UUID> r = DSL.using(getConfiguration())
+                .select(PROCESS_CLEANER_MARKERS.INSTANCE_CREATED_AT, PROCESS_CLEANER_MARKERS.INSTANCE_ID)
+                .from(PROCESS_CLEANER_MARKERS)
+                .where(PROCESS_CLEANER_MARKERS.CLEANER_NAME.eq(MARKER_NAME))
+                .fetchOne();
+
+        assertNotNull(r);
+
+        if (expected == null) {
+            assertNull(r.value1());
+            assertNull(r.value2());
+        } else {
+            assertEquals(expected.getInstanceId(), r.value2());
+            assertEquals(expected.getCreatedAt().toInstant(), r.value1().toInstant());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.walmartlabs.concord.server.process.locks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.Locks;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.cfg.LockingConfiguration;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.org.OrganizationManager;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.process.locks.ProcessLocksDao.Grant;
+import static com.walmartlabs.concord.server.process.locks.ProcessLocksDao.QueuedLockResult;
+import static org.junit.Assert.*;
+
+@Ignore("requires a local DB instance")
+public class ProcessLocksDaoTest extends AbstractDaoTest {
+
+    private static final UUID ORG_ID = OrganizationManager.DEFAULT_ORG_ID;
+    private static final ProcessLockScope SCOPE = ProcessLockScope.PROJECT;
+
+    private ProcessQueueDao queueDao;
+    private ProcessLocksDao locksDao;
+
+    private UUID projectId;
+    private String lockName;
+
+    @Before
+    public void setUp() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        queueDao = new ProcessQueueDao(getConfiguration(), objectMapper);
+        locksDao = new ProcessLocksDao(getConfiguration(), new Locks(new LockingConfiguration(8)));
+
+        ProjectDao projectDao = new ProjectDao(getConfiguration(), objectMapper);
+        projectId = projectDao.insert(ORG_ID, "project#" + UUID.randomUUID(), "test", null, null, null, null, new byte[0], null, null);
+
+        lockName = "lock#" + UUID.randomUUID();
+    }
+
+    @Test
+    public void testOrder() {
+        ProcessKey owner = newProcess();
+        assertOwner(owner, tryLock(owner));
+
+        ProcessKey a = newProcess();
+        ProcessKey b = newProcess();
+        ProcessKey c = newProcess();
+
+        // the lock is taken, the processes are queued
+        for (ProcessKey k : new ProcessKey[]{a, b, c}) {
+            QueuedLockResult r = tryLock(k);
+            assertOwner(owner, r.owner());
+            assertNull(r.grant());
+        }
+        assertEquals(3, queueLength());
+
+        assertGranted(a, unlock(owner));
+        assertGranted(b, unlock(a));
+        assertGranted(c, unlock(b));
+        assertNull(unlock(c));
+
+        assertNull(locksDao.get(ORG_ID, projectId, SCOPE, lockName));
+        assertEquals(0, queueLength());
+    }
+
+    @Test
+    public void testSkipFinished() {
+        ProcessKey owner = newProcess();
+        tryLock(owner);
+
+        ProcessKey a = newProcess();
+        ProcessKey b = newProcess();
+        tryLock(a);
+        tryLock(b);
+
+        tx(tx -> queueDao.updateStatus(tx, a, ProcessStatus.FINISHED));
+
+        assertGranted(b, unlock(owner));
+        assertEquals(0, queueLength());
+    }
+
+    @Test
+    public void testRetryKeepsPosition() {
+        ProcessKey owner = newProcess();
+        tryLock(owner);
+
+        ProcessKey a = newProcess();
+        ProcessKey b = newProcess();
+        tryLock(a);
+        tryLock(b);
+
+        // e.g. the next wait conditions check
+        assertOwner(owner, tryLock(a).owner());
+        assertEquals(2, queueLength());
+
+        assertGranted(a, unlock(owner));
+    }
+
+    @Test
+    public void testUnlockByNonOwner() {
+        ProcessKey owner = newProcess();
+        tryLock(owner);
+
+        ProcessKey a = newProcess();
+        ProcessKey b = newProcess();
+        tryLock(a);
+        tryLock(b);
+
+        // the lock is still taken, no hand-off
+        assertNull(unlock(a));
+        assertOwner(owner, locksDao.get(ORG_ID, projectId, SCOPE, lockName));
+        assertEquals(1, queueLength());
+
+        assertGranted(b, unlock(owner));
+    }
+
+    private ProcessKey newProcess() {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+        tx(tx -> queueDao.insert(tx, processKey, ProcessStatus.RUNNING, ProcessKind.DEFAULT, null, projectId, null, null, null, null));
+        return processKey;
+    }
+
+    private QueuedLockResult tryLock(ProcessKey processKey) {
+        return locksDao.tryLockQueued(processKey.getInstanceId(), ORG_ID, projectId, SCOPE, lockName);
+    }
+
+    private Grant unlock(ProcessKey processKey) {
+        return locksDao.unlockQueued(processKey.getInstanceId(), ORG_ID, projectId, SCOPE, lockName);
+    }
+
+    private int queueLength() {
+        ProcessLocksDao.QueueStats stats = locksDao.queueStatistics().get(SCOPE + "/" + projectId + "/" + lockName);
+        return stats != null ? stats.length() : 0;
+    }
+
+    private static void assertOwner(ProcessKey expected, QueuedLockResult r) {
+        assertOwner(expected, r.owner());
+    }
+
+    private static void assertOwner(ProcessKey expected, LockEntry e) {
+        assertNotNull(e);
+        assertEquals(expected.getInstanceId(), e.instanceId());
+    }
+
+    private static void assertGranted(ProcessKey expected, Grant grant) {
+        assertNotNull(grant);
+        assertOwner(expected, grant.lock());
+    }
+}
@@ -0,0 +1,58 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProcessLogBufferTest {
+
+    @Test
+    public void testCoalesce() {
+        ProcessKey a = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+        ProcessKey b = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+
+        List<ProcessLogBuffer.Run> runs = ProcessLogBuffer.coalesce(Arrays.asList(
+                entry(a, 0, "a1"),
+                entry(b, 0, "b1"),
+                entry(a, 0, "a2"),
+                entry(a, 1, "a3"),
+                entry(b, 0, "b2"),
+                entry(a, 0, "a4")));
+
+        assertEquals(4, runs.size());
+        assertEquals("a1a2", new String(runs.get(0).data()));
+        assertEquals("b1b2", new String(runs.get(1).data()));
+        assertEquals("a3", new String(runs.get(2).data()));
+        assertEquals("a4", new String(runs.get(3).data()));
+    }
+
+    private static ProcessLogBuffer.Entry entry(ProcessKey processKey, long segmentId, String data) {
+        return new ProcessLogBuffer.Entry(processKey, segmentId, data.getBytes());
+    }
+}
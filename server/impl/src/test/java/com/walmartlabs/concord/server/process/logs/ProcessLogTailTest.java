@@ -0,0 +1,99 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.Test;
+
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import static org.junit.Assert.*;
+
+public class ProcessLogTailTest {
+
+    @Test
+    public void testRingBuffer() {
+        ProcessLogTail.TailBuffer b = new ProcessLogTail.TailBuffer(8);
+
+        // not initialized yet
+        assertNull(b.read(0, 0));
+
+        b.init(0);
+        b.append(0, "abcd".getBytes());
+        b.append(4, "efgh".getBytes());
+
+        ProcessLog l = b.read(2, 0);
+        assertNotNull(l);
+        assertEquals(8, l.getSize());
+        assertEquals(2, l.getChunks().get(0).getStart());
+        assertEquals("cdefgh", new String(l.getChunks().get(0).getData()));
+
+        // overwrite the oldest data
+        b.append(8, "ij".getBytes());
+        assertNull(b.read(1, 0));
+        assertEquals("cdefghij", new String(b.read(2, 0).getChunks().get(0).getData()));
+
+        // no new data
+        assertTrue(b.read(10, 0).getChunks().isEmpty());
+    }
+
+    @Test
+    public void testGap() {
+        ProcessLogTail.TailBuffer b = new ProcessLogTail.TailBuffer(8);
+        b.init(0);
+        b.append(0, "ab".getBytes());
+
+        // the data between 2 and 5 was appended elsewhere
+        b.append(5, "fg".getBytes());
+        assertNull(b.read(2, 0));
+        assertEquals("fg", new String(b.read(5, 0).getChunks().get(0).getData()));
+    }
+
+    @Test
+    public void testGrowth() {
+        ProcessLogTail.TailBuffer b = new ProcessLogTail.TailBuffer(16 * 1024);
+        b.init(0);
+
+        // nothing is allocated until the data arrives
+        assertEquals(0, b.allocated());
+
+        b.append(0, "abc".getBytes());
+        assertEquals(4096, b.allocated());
+
+        StringBuilder expected = new StringBuilder("abc");
+        for (int i = 0; expected.length() < 10000; i++) {
+            String s = String.format("line %05d\n", i);
+            b.append(expected.length(), s.getBytes());
+            expected.append(s);
+        }
+        assertEquals(16 * 1024, b.allocated());
+
+        // the data is preserved when the buffer grows
+        ProcessLog l = b.read(0, 0);
+        assertNotNull(l);
+        assertEquals(expected.toString(), new String(l.getChunks().get(0).getData()));
+
+        // doesn't grow past the capacity
+        byte[] ab = new byte[20000];
+        b.append(expected.length(), ab);
+        assertEquals(16 * 1024, b.allocated());
+        assertNull(b.read(0, 0));
+        assertEquals(16 * 1024, b.read(expected.length() + 20000 - 16 * 1024, 0).getChunks().get(0).getData().length);
+    }
+}
@@ -0,0 +1,171 @@
+package com.walmartlabs.concord.server.process.pipelines.processors;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.imports.Imports;
+import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.pipelines.processors.ProcessDefinitionCache.Key;
+import com.walmartlabs.concord.server.process.pipelines.processors.RepositoryProcessor.CommitInfo;
+import com.walmartlabs.concord.server.process.pipelines.processors.RepositoryProcessor.RepositoryInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessDefinitionCacheTest {
+
+    private static final String V1 = "concord-v1";
+    private static final String V2 = "concord-v2";
+
+    private ProcessDefinitionCache cache;
+    private RepositoryInfo repo;
+    private Path workDir;
+
+    @Before
+    public void init() throws Exception {
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.isDefinitionCacheEnabled()).thenReturn(true);
+        when(cfg.getDefinitionCacheMaxWeight()).thenReturn(1024 * 1024);
+
+        cache = new ProcessDefinitionCache(cfg, new MetricRegistry());
+        repo = repo("abc");
+
+        workDir = Files.createTempDirectory("test");
+        write("concord.yml", "configuration:\n  runtime: concord-v2\n");
+        write("concord/flows.concord.yml", "flows:\n  default: []\n");
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        ProcessDefinition pd = definition(null);
+
+        Key key = cache.key(repo, V2, workDir);
+        assertNotNull(key);
+        assertNull(cache.get(key));
+
+        cache.put(key, pd);
+        assertSame(pd, cache.get(cache.key(repo, V2, workDir)));
+    }
+
+    @Test
+    public void testMiss() throws Exception {
+        Key key = cache.key(repo, V2, workDir);
+        cache.put(key, definition(null));
+
+        assertNull(cache.get(cache.key(repo("def"), V2, workDir)));
+        assertNull(cache.get(cache.key(repo, V1, workDir)));
+    }
+
+    @Test
+    public void testOtherFilesAreIgnored() throws Exception {
+        Key key = cache.key(repo, V2, workDir);
+        cache.put(key, definition(null));
+
+        write("_main.json", "{}");
+        write("other.yml", "a: 1\n");
+        write("src/test.yml", "a: 1\n");
+        write("flows/main.yml", "flows:\n  default: []\n");
+
+        assertEquals(key, cache.key(repo, V2, workDir));
+        assertNotNull(cache.get(cache.key(repo, V2, workDir)));
+    }
+
+    @Test
+    public void testModifiedDefinitionFiles() throws Exception {
+        Key key = cache.key(repo, V2, workDir);
+        cache.put(key, definition(null));
+
+        // modified root file
+        write("concord.yml", "configuration:\n  runtime: concord-v2\n  debug: true\n");
+        Key k1 = cache.key(repo, V2, workDir);
+        assertNotEquals(key, k1);
+        assertNull(cache.get(k1));
+
+        // an additional definition file
+        write("concord/extra/more.concord.yml", "flows:\n  other: []\n");
+        Key k2 = cache.key(repo, V2, workDir);
+        assertNotEquals(k1, k2);
+        assertNull(cache.get(k2));
+
+        // the other root file
+        write(".concord.yml", "flows:\n  default: []\n");
+        Key k3 = cache.key(repo, V2, workDir);
+        assertNotEquals(k2, k3);
+        assertNull(cache.get(k3));
+    }
+
+    @Test
+    public void testV1DefinitionDirs() throws Exception {
+        Key key = cache.key(repo, V1, workDir);
+        cache.put(key, definition(null));
+
+        write("flows/main.yml", "flows:\n  default: []\n");
+        assertNull(cache.get(cache.key(repo, V1, workDir)));
+
+        Key k1 = cache.key(repo, V1, workDir);
+        write("profiles/test.yml", "profiles:\n  test: {}\n");
+        assertNotEquals(k1, cache.key(repo, V1, workDir));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        assertNull(cache.key(null, V2, workDir));
+        assertNull(cache.key(repo(null), V2, workDir));
+
+        Key key = cache.key(repo, V2, workDir);
+        cache.put(key, definition(mock(Imports.class)));
+        assertNull(cache.get(key));
+
+        write("concord.yml", "configuration:\n  runtime: concord-v2\nresources:\n  concord: \"glob:flows/*.yml\"\n");
+        assertNull(cache.key(repo, V2, workDir));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path p = workDir.resolve(path);
+        Files.createDirectories(p.getParent());
+        Files.write(p, content.getBytes());
+    }
+
+    private static ProcessDefinition definition(Imports imports) {
+        if (imports != null) {
+            when(imports.isEmpty()).thenReturn(false);
+        }
+
+        ProcessDefinition pd = mock(ProcessDefinition.class);
+        when(pd.imports()).thenReturn(imports);
+        return pd;
+    }
+
+    private static RepositoryInfo repo(String commitId) {
+        UUID repoId = UUID.fromString("7d0f1f2e-1a1a-4a4a-9b9b-1c1c1c1c1c1c");
+        return new RepositoryInfo(repoId, "test", "https://example.com/repo.git", null, "master", commitId,
+                new CommitInfo(commitId, "test", "test"));
+    }
+}
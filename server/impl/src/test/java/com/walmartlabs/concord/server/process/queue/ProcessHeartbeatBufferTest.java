@@ -0,0 +1,127 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class ProcessHeartbeatBufferTest {
+
+    @Test(timeout = 30000)
+    @SuppressWarnings("unchecked")
+    public void testCoalesce() {
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+
+        ProcessHeartbeatBuffer buffer = new ProcessHeartbeatBuffer(queueDao, cfg(Duration.ofHours(1)), new MetricRegistry());
+        buffer.start();
+
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(UUID.randomUUID());
+        }
+
+        // repeated heartbeats of the same process are written once
+        for (int i = 0; i < 5; i++) {
+            ids.forEach(buffer::add);
+        }
+
+        verify(queueDao, never()).touch(anyCollection());
+
+        // the remaining heartbeats are written on stop
+        buffer.stop();
+
+        ArgumentCaptor<Collection<UUID>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(queueDao, times(1)).touch(captor.capture());
+
+        Collections.sort(ids);
+        assertEquals(ids, new ArrayList<>(captor.getValue()));
+    }
+
+    @Test(timeout = 30000)
+    @SuppressWarnings("unchecked")
+    public void testBatches() {
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+
+        ProcessHeartbeatBuffer buffer = new ProcessHeartbeatBuffer(queueDao, cfg(Duration.ofHours(1)), new MetricRegistry());
+        buffer.start();
+
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            buffer.add(id);
+        }
+
+        buffer.stop();
+
+        ArgumentCaptor<Collection<UUID>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(queueDao, times(3)).touch(captor.capture());
+
+        List<Collection<UUID>> batches = captor.getAllValues();
+        assertEquals(1000, batches.get(0).size());
+        assertEquals(1000, batches.get(1).size());
+        assertEquals(500, batches.get(2).size());
+
+        // all batches are written in the same order
+        List<UUID> written = new ArrayList<>();
+        batches.forEach(written::addAll);
+
+        Collections.sort(ids);
+        assertEquals(ids, written);
+    }
+
+    @Test(timeout = 30000)
+    public void testPeriodicFlush() {
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+
+        ProcessHeartbeatBuffer buffer = new ProcessHeartbeatBuffer(queueDao, cfg(Duration.ofMillis(50)), new MetricRegistry());
+        buffer.start();
+
+        try {
+            UUID id = UUID.randomUUID();
+
+            buffer.add(id);
+            verify(queueDao, timeout(10000)).touch(Collections.singletonList(id));
+
+            // the heartbeat is written again after the next flush
+            buffer.add(id);
+            verify(queueDao, timeout(10000).times(2)).touch(Collections.singletonList(id));
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    private static ProcessConfiguration cfg(Duration flushInterval) {
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.isHeartbeatBufferEnabled()).thenReturn(true);
+        when(cfg.getHeartbeatBufferFlushInterval()).thenReturn(flushInterval);
+        return cfg;
+    }
+}
@@ -0,0 +1,115 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessWaitWatchdogConfiguration;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.process.queue.ProcessWaitEvents.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessWaitEventsTest {
+
+    @Test(timeout = 10000)
+    public void testOrder() throws Exception {
+        ProcessWaitEvents events = new ProcessWaitEvents(cfg(100), new MetricRegistry());
+
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+
+        events.sleepStarted(a, new Date(System.currentTimeMillis() + 1000));
+        events.processFinished(b);
+        events.lockReleased(UUID.randomUUID(), UUID.randomUUID(), ProcessLockScope.PROJECT, "test");
+        events.processReady(c);
+
+        // the sleep timeout expires last
+        Set<String> l = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            l.add(events.poll(5000).toString());
+        }
+        assertEquals(3, l.size());
+        assertTrue(l.contains("ProcessFinished{instanceId=" + b + "}"));
+        assertTrue(l.contains("ProcessReady{instanceId=" + c + "}"));
+
+        WaitEvent e = events.poll(5000);
+        assertEquals(a, ((ProcessReady) e).instanceId);
+
+        assertNull(events.poll(100));
+    }
+
+    @Test
+    public void testDropped() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ProcessWaitEvents events = new ProcessWaitEvents(cfg(2), metricRegistry);
+
+        events.processFinished(UUID.randomUUID());
+        events.processReady(UUID.randomUUID());
+        events.processFinished(UUID.randomUUID());
+
+        assertEquals(1, metricRegistry.meter("process-wait-events-dropped").getCount());
+    }
+
+    @Test
+    public void testLongSleep() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ProcessWaitEvents events = new ProcessWaitEvents(cfg(1), metricRegistry);
+
+        // longer than the check period, left to the periodic check
+        events.sleepStarted(UUID.randomUUID(), new Date(System.currentTimeMillis() + Duration.ofHours(1).toMillis()));
+
+        // doesn't take the place of other events
+        UUID a = UUID.randomUUID();
+        events.processFinished(a);
+
+        assertEquals(0, metricRegistry.meter("process-wait-events-dropped").getCount());
+        assertEquals(a, ((ProcessFinished) events.poll(5000)).instanceId);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ProcessWaitWatchdogConfiguration cfg = cfg(10);
+        when(cfg.isEventsEnabled()).thenReturn(false);
+
+        ProcessWaitEvents events = new ProcessWaitEvents(cfg, new MetricRegistry());
+        events.processFinished(UUID.randomUUID());
+
+        assertNull(events.poll(500));
+    }
+
+    private static ProcessWaitWatchdogConfiguration cfg(int maxEvents) {
+        ProcessWaitWatchdogConfiguration cfg = mock(ProcessWaitWatchdogConfiguration.class);
+        when(cfg.isEventsEnabled()).thenReturn(true);
+        when(cfg.getMaxEvents()).thenReturn(maxEvents);
+        when(cfg.getPeriod()).thenReturn(Duration.ofSeconds(5));
+        return cfg;
+    }
+}
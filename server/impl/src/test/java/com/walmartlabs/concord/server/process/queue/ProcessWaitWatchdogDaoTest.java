@@ -0,0 +1,119 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.process.queue.ProcessWaitWatchdog.processCompletionFilter;
+import static com.walmartlabs.concord.server.process.queue.ProcessWaitWatchdog.processLockFilter;
+import static org.junit.Assert.assertEquals;
+
+@Ignore("requires a local DB instance")
+public class ProcessWaitWatchdogDaoTest extends AbstractDaoTest {
+
+    private ProcessQueueDao queueDao;
+    private ProcessWaitWatchdog.WatchdogDao watchdogDao;
+
+    @Before
+    public void setUp() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        queueDao = new ProcessQueueDao(getConfiguration(), objectMapper);
+        watchdogDao = new ProcessWaitWatchdog.WatchdogDao(getConfiguration(), objectMapper);
+    }
+
+    @Test
+    public void testProcessCompletionWaiters() {
+        UUID x = UUID.randomUUID();
+        UUID y = UUID.randomUUID();
+
+        UUID a = insert(ProcessCompletionCondition.builder()
+                .processes(Arrays.asList(x, y))
+                .build());
+
+        UUID b = insert(ProcessCompletionCondition.builder()
+                .processes(Collections.singletonList(y))
+                .build());
+
+        assertEquals(Collections.singletonList(a), watchdogDao.findWaiters(processCompletionFilter(x)));
+        assertEquals(Arrays.asList(a, b), watchdogDao.findWaiters(processCompletionFilter(y)));
+        assertEquals(Collections.emptyList(), watchdogDao.findWaiters(processCompletionFilter(UUID.randomUUID())));
+    }
+
+    @Test
+    public void testProcessLockWaiters() {
+        UUID orgId = UUID.randomUUID();
+        UUID projectId = UUID.randomUUID();
+
+        UUID a = insert(lock(orgId, projectId, ProcessLockScope.PROJECT, "test"));
+        UUID b = insert(lock(orgId, projectId, ProcessLockScope.ORG, "test"));
+        UUID c = insert(lock(orgId, projectId, ProcessLockScope.PROJECT, "test"));
+
+        // a different wait type
+        insert(ProcessCompletionCondition.builder()
+                .processes(Collections.singletonList(projectId))
+                .reason("test")
+                .build());
+
+        assertEquals(Arrays.asList(a, c), watchdogDao.findWaiters(processLockFilter(orgId, projectId, ProcessLockScope.PROJECT, "test")));
+        assertEquals(Collections.singletonList(b), watchdogDao.findWaiters(processLockFilter(orgId, projectId, ProcessLockScope.ORG, "test")));
+
+        // ORG locks match by orgId only
+        assertEquals(Collections.singletonList(b), watchdogDao.findWaiters(processLockFilter(orgId, UUID.randomUUID(), ProcessLockScope.ORG, "test")));
+
+        assertEquals(Collections.emptyList(), watchdogDao.findWaiters(processLockFilter(orgId, projectId, ProcessLockScope.PROJECT, "other")));
+        assertEquals(Collections.emptyList(), watchdogDao.findWaiters(processLockFilter(orgId, UUID.randomUUID(), ProcessLockScope.PROJECT, "test")));
+    }
+
+    private UUID insert(AbstractWaitCondition waits) {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+
+        tx(tx -> {
+            queueDao.insert(tx, processKey, ProcessStatus.SUSPENDED, ProcessKind.DEFAULT, null, null, null, null, null, null);
+            queueDao.updateWait(tx, processKey, waits);
+        });
+
+        return processKey.getInstanceId();
+    }
+
+    private static ProcessLockCondition lock(UUID orgId, UUID projectId, ProcessLockScope scope, String name) {
+        return ProcessLockCondition.builder()
+                .instanceId(UUID.randomUUID())
+                .orgId(orgId)
+                .projectId(projectId)
+                .scope(scope)
+                .name(name)
+                .build();
+    }
+}
@@ -0,0 +1,175 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.server.Locks;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
+import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
+import com.walmartlabs.concord.server.process.SessionTokenCreator;
+import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.process.queue.dispatcher.Dispatcher.DispatcherDao;
+import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.websocket.WebSocketChannel;
+import com.walmartlabs.concord.server.websocket.WebSocketChannelManager;
+import org.jooq.DSLContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DispatcherTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private DispatcherDao dao;
+    private DSLContext tx;
+    private WebSocketChannelManager channelManager;
+    private ProcessQueueManager queueManager;
+    private Set<UUID> rejected;
+
+    private Dispatcher dispatcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dao = mock(DispatcherDao.class);
+        tx = mock(DSLContext.class);
+        when(dao.txResult(any())).thenAnswer(inv -> ((AbstractDao.TxResult<Object>) inv.getArgument(0)).run(tx));
+        when(dao.lockEnqueued(eq(tx), any())).thenAnswer(inv -> entry(inv.getArgument(1)));
+
+        channelManager = mock(WebSocketChannelManager.class);
+        queueManager = mock(ProcessQueueManager.class);
+
+        rejected = new HashSet<>();
+        Filter filter = new Filter() {
+            @Override
+            public boolean apply(DSLContext tx, ProcessQueueEntry e, List<ProcessQueueEntry> startingProcesses) {
+                return !rejected.contains(e.key().getInstanceId());
+            }
+
+            @Override
+            public void cleanup() {
+            }
+        };
+
+        ProcessQueueConfiguration cfg = mock(ProcessQueueConfiguration.class);
+        when(cfg.getDispatcherPollDelay()).thenReturn(Duration.ofSeconds(1));
+        when(cfg.getDispatcherBatchSize()).thenReturn(BATCH_SIZE);
+        when(cfg.isDispatcherIndexEnabled()).thenReturn(true);
+        when(cfg.getDispatcherIndexFullRefreshInterval()).thenReturn(Duration.ofHours(1));
+
+        dispatcher = new Dispatcher(mock(Locks.class), dao, channelManager, mock(ProcessLogManager.class),
+                queueManager, Collections.singleton(filter), mock(ImportsNormalizerFactory.class),
+                cfg, new MetricRegistry(), mock(SessionTokenCreator.class));
+    }
+
+    @Test
+    public void testBlockedHead() {
+        List<ProcessKey> keys = newKeys(5);
+        when(dao.listEnqueued()).thenReturn(enqueued(keys));
+
+        // the oldest process is locked by another server
+        when(dao.lockEnqueued(tx, keys.get(0))).thenReturn(null);
+        when(dao.isEnqueued(tx, keys.get(0))).thenReturn(true);
+
+        // the next two are rejected by the filters (e.g. concurrency limits)
+        rejected.add(keys.get(1).getInstanceId());
+        rejected.add(keys.get(2).getInstanceId());
+
+        request(2);
+        dispatcher.performTask();
+
+        verify(queueManager).updateStatus(tx, keys.get(3), ProcessStatus.STARTING);
+        verify(queueManager).updateStatus(tx, keys.get(4), ProcessStatus.STARTING);
+        verify(queueManager, times(2)).updateStatus(eq(tx), any(), eq(ProcessStatus.STARTING));
+    }
+
+    @Test
+    public void testIncrementalRefresh() {
+        List<ProcessKey> keys = newKeys(2);
+        when(dao.listEnqueued()).thenReturn(enqueued(keys));
+
+        // both processes are locked by another server
+        doReturn(null).when(dao).lockEnqueued(eq(tx), any());
+        when(dao.isEnqueued(eq(tx), any())).thenReturn(true);
+
+        request(1);
+        dispatcher.performTask();
+
+        verify(dao).lockEnqueued(tx, keys.get(0));
+        verify(dao).lockEnqueued(tx, keys.get(1));
+
+        // the first process was started by another server
+        ProcessKey k = keys.get(0);
+        when(dao.listUpdated(any())).thenReturn(Collections.singletonList(
+                new DispatcherDao.IndexUpdate(k, OffsetDateTime.now(), null, false, Collections.emptyMap(), false)));
+
+        dispatcher.performTask();
+
+        verify(dao, times(1)).listEnqueued();
+        verify(dao, times(1)).lockEnqueued(tx, keys.get(0));
+        verify(dao, times(2)).lockEnqueued(tx, keys.get(1));
+    }
+
+    private void request(int maxProcesses) {
+        Map<WebSocketChannel, ProcessRequest> requests = Collections.singletonMap(mock(WebSocketChannel.class),
+                new ProcessRequest(Collections.emptyMap(), maxProcesses));
+
+        when(channelManager.getRequests(MessageType.PROCESS_REQUEST)).thenAnswer(inv -> requests);
+    }
+
+    private static List<ProcessKey> newKeys(int count) {
+        OffsetDateTime t = OffsetDateTime.now().minusHours(1);
+
+        List<ProcessKey> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new ProcessKey(UUID.randomUUID(), t.plusSeconds(i)));
+        }
+        return result;
+    }
+
+    private static List<DispatcherDao.IndexUpdate> enqueued(List<ProcessKey> keys) {
+        List<DispatcherDao.IndexUpdate> result = new ArrayList<>();
+        for (ProcessKey k : keys) {
+            result.add(new DispatcherDao.IndexUpdate(k, k.getCreatedAt(), null, false, Collections.emptyMap(), true));
+        }
+        return result;
+    }
+
+    private static ProcessQueueEntry entry(ProcessKey key) {
+        return ProcessQueueEntry.builder()
+                .key(key)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnqueuedProcessIndexTest {
+
+    @Test
+    public void testOrderAndMatching() {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex();
+
+        EnqueuedProcessIndex.Item a = item(now.minusMinutes(3), Collections.singletonMap("flavor", "k8s"));
+        EnqueuedProcessIndex.Item b = item(now.minusMinutes(2), Collections.emptyMap());
+        EnqueuedProcessIndex.Item c = item(now.minusMinutes(1), Collections.singletonMap("flavor", "docker"));
+        index.put(c);
+        index.put(b);
+        index.put(a);
+
+        assertEquals(3, index.bucketCount());
+
+        List<EnqueuedProcessIndex.Item> l = index.candidates(Collections.singletonMap("flavor", "k8s"), Collections.emptySet(), now, 10);
+        assertEquals(Arrays.asList(a, b), l);
+
+        l = index.candidates(Collections.emptyMap(), Collections.emptySet(), now, 10);
+        assertEquals(Collections.singletonList(b), l);
+
+        l = index.candidates(Collections.singletonMap("flavor", "docker"), Collections.singleton(b.getKey().getInstanceId()), now, 10);
+        assertEquals(Collections.singletonList(c), l);
+    }
+
+    @Test
+    public void testPaging() {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex();
+
+        EnqueuedProcessIndex.Item a = item(now.minusMinutes(4), Collections.emptyMap());
+        EnqueuedProcessIndex.Item b = item(now.minusMinutes(3), Collections.singletonMap("flavor", "k8s"));
+        EnqueuedProcessIndex.Item c = item(now.minusMinutes(2), Collections.emptyMap());
+        EnqueuedProcessIndex.Item d = item(now.minusMinutes(1), Collections.singletonMap("flavor", "k8s"));
+        index.put(a);
+        index.put(b);
+        index.put(c);
+        index.put(d);
+
+        Map<String, Object> capabilities = Collections.singletonMap("flavor", "k8s");
+
+        List<EnqueuedProcessIndex.Item> l = index.candidates(capabilities, Collections.emptySet(), now, 2);
+        assertEquals(Arrays.asList(a, b), l);
+
+        l = index.candidates(capabilities, Collections.emptySet(), now, b, 2);
+        assertEquals(Arrays.asList(c, d), l);
+
+        l = index.candidates(capabilities, Collections.emptySet(), now, d, 2);
+        assertTrue(l.isEmpty());
+    }
+
+    @Test
+    public void testNotReady() {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex();
+        index.put(new EnqueuedProcessIndex.Item(new ProcessKey(UUID.randomUUID(), now), now, now.plusHours(1), false, null));
+        index.put(new EnqueuedProcessIndex.Item(new ProcessKey(UUID.randomUUID(), now), now, null, true, null));
+
+        assertTrue(index.candidates(Collections.emptyMap(), Collections.emptySet(), now, 10).isEmpty());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex();
+
+        EnqueuedProcessIndex.Item a = item(now, Collections.singletonMap("flavor", "k8s"));
+        index.put(a);
+
+        // same process, new requirements
+        EnqueuedProcessIndex.Item a2 = new EnqueuedProcessIndex.Item(a.getKey(), now, null, false, Collections.emptyMap());
+        index.put(a2);
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.bucketCount());
+
+        index.remove(a.getKey().getInstanceId());
+        assertEquals(0, index.size());
+        assertEquals(0, index.bucketCount());
+    }
+
+    private static EnqueuedProcessIndex.Item item(OffsetDateTime lastUpdatedAt, Map<String, Object> requirements) {
+        return new EnqueuedProcessIndex.Item(new ProcessKey(UUID.randomUUID(), lastUpdatedAt), lastUpdatedAt, null, false, requirements);
+    }
+}
@@ -0,0 +1,269 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.sdk.Constants;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.org.project.ProjectAccessManager;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.state.ProcessCheckpointManager.CheckpointInfo;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class ProcessCheckpointManagerTest {
+
+    private static final ProcessKey PROCESS_KEY = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+
+    private InMemoryCheckpointDao checkpointDao;
+    private ProcessStateManager stateManager;
+
+    // the files imported into the process state by the last restore
+    private Map<String, String> restored;
+
+    @Before
+    public void init() {
+        checkpointDao = new InMemoryCheckpointDao();
+
+        stateManager = mock(ProcessStateManager.class);
+        doAnswer(inv -> {
+            AbstractDao.Tx t = inv.getArgument(0);
+            t.run(null);
+            return null;
+        }).when(stateManager).tx(any());
+
+        doAnswer(inv -> {
+            restored = read(inv.getArgument(3));
+            return null;
+        }).when(stateManager).importPath(any(), eq(PROCESS_KEY), isNull(), any(Path.class), any());
+    }
+
+    @Test
+    public void testRestoreDeltaChain() throws Exception {
+        ProcessCheckpointManager m = manager(10);
+
+        UUID fullId = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, fullId, null, "one", zip(files(
+                "a.txt", "a1",
+                "b.txt", "b1",
+                "dir/e.txt", "e1"), null));
+
+        // modifies b.txt, adds c.txt, removes a.txt and dir/e.txt
+        UUID delta1Id = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, delta1Id, fullId, "two", zip(files(
+                "b.txt", "b2",
+                "c.txt", "c1"), Arrays.asList("b.txt", "c.txt")));
+
+        // adds d.txt, other files are unchanged
+        UUID delta2Id = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, delta2Id, delta1Id, "three", zip(files(
+                "d.txt", "d1"), Arrays.asList("b.txt", "c.txt", "d.txt")));
+
+        // no compaction
+        assertEquals(delta1Id, checkpointDao.getParentId(PROCESS_KEY, delta2Id));
+
+        CheckpointInfo info = m.restoreCheckpoint(PROCESS_KEY, delta2Id);
+        assertEquals("three", info.name());
+        assertEquals(files("b.txt", "b2", "c.txt", "c1", "d.txt", "d1"), restored);
+
+        info = m.restoreCheckpoint(PROCESS_KEY, delta1Id);
+        assertEquals("two", info.name());
+        assertEquals(files("b.txt", "b2", "c.txt", "c1"), restored);
+
+        info = m.restoreCheckpoint(PROCESS_KEY, fullId);
+        assertEquals("one", info.name());
+        assertEquals(files("a.txt", "a1", "b.txt", "b1", "dir/e.txt", "e1"), restored);
+
+        assertNull(m.restoreCheckpoint(PROCESS_KEY, UUID.randomUUID()));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        ProcessCheckpointManager m = manager(2);
+
+        UUID fullId = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, fullId, null, "one", zip(files(
+                "a.txt", "a1",
+                "b.txt", "b1"), null));
+
+        UUID delta1Id = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, delta1Id, fullId, "two", zip(files(
+                "b.txt", "b2"), Arrays.asList("a.txt", "b.txt")));
+
+        // one delta, below the limit
+        assertEquals(fullId, checkpointDao.getParentId(PROCESS_KEY, delta1Id));
+
+        UUID delta2Id = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, delta2Id, delta1Id, "three", zip(files(
+                "c.txt", "c1"), Collections.singletonList("c.txt")));
+
+        // the chain is replaced with a full checkpoint
+        assertNull(checkpointDao.getParentId(PROCESS_KEY, delta2Id));
+        assertEquals(files("c.txt", "c1"), unzip(checkpointDao.data.get(delta2Id)));
+
+        CheckpointInfo info = m.restoreCheckpoint(PROCESS_KEY, delta2Id);
+        assertEquals("three", info.name());
+        assertEquals(files("c.txt", "c1"), restored);
+
+        // the previous checkpoints are not affected
+        m.restoreCheckpoint(PROCESS_KEY, delta1Id);
+        assertEquals(files("a.txt", "a1", "b.txt", "b2"), restored);
+
+        // the next delta starts a new chain
+        UUID delta3Id = UUID.randomUUID();
+        m.importCheckpoint(PROCESS_KEY, delta3Id, delta2Id, "four", zip(files(
+                "d.txt", "d1"), Arrays.asList("c.txt", "d.txt")));
+        assertEquals(delta2Id, checkpointDao.getParentId(PROCESS_KEY, delta3Id));
+
+        m.restoreCheckpoint(PROCESS_KEY, delta3Id);
+        assertEquals(files("c.txt", "c1", "d.txt", "d1"), restored);
+    }
+
+    private ProcessCheckpointManager manager(int maxDeltas) {
+        ProcessConfiguration cfg = mock(ProcessConfiguration.class);
+        when(cfg.getCheckpointMaxDeltas()).thenReturn(maxDeltas);
+
+        return new ProcessCheckpointManager(checkpointDao, mock(ProcessQueueDao.class), stateManager,
+                mock(ProjectAccessManager.class), cfg);
+    }
+
+    private static Map<String, String> files(String... kv) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            result.put(kv[i], kv[i + 1]);
+        }
+        return result;
+    }
+
+    private static Path zip(Map<String, String> files, List<String> manifest) throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            Path p = dir.resolve(e.getKey());
+            Files.createDirectories(p.getParent());
+            Files.write(p, e.getValue().getBytes());
+        }
+
+        if (manifest != null) {
+            Files.write(dir.resolve(Constants.Files.CHECKPOINT_MANIFEST_FILE_NAME), manifest);
+        }
+
+        Path result = Files.createTempFile("checkpoint", ".zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(result))) {
+            IOUtils.zip(zip, dir);
+        }
+        return result;
+    }
+
+    private static Map<String, String> unzip(byte[] ab) throws IOException {
+        Path zip = Files.createTempFile("checkpoint", ".zip");
+        Files.write(zip, ab);
+
+        Path dir = Files.createTempDirectory("checkpoint");
+        IOUtils.unzip(zip, dir);
+        return read(dir);
+    }
+
+    private static Map<String, String> read(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            List<Path> files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+
+            Map<String, String> result = new HashMap<>();
+            for (Path p : files) {
+                result.put(dir.relativize(p).toString(), new String(Files.readAllBytes(p)));
+            }
+            return result;
+        }
+    }
+
+    private static final class InMemoryCheckpointDao extends ProcessCheckpointDao {
+
+        private final Map<UUID, UUID> parents = new HashMap<>();
+        private final Map<UUID, String> names = new HashMap<>();
+        private final Map<UUID, byte[]> data = new HashMap<>();
+
+        private InMemoryCheckpointDao() {
+            super(null);
+        }
+
+        @Override
+        public boolean exists(ProcessKey processKey, UUID checkpointId) {
+            return data.containsKey(checkpointId);
+        }
+
+        @Override
+        public UUID getParentId(ProcessKey processKey, UUID checkpointId) {
+            return parents.get(checkpointId);
+        }
+
+        @Override
+        public void importCheckpoint(ProcessKey processKey, UUID checkpointId, UUID parentId, String checkpointName, Path data) {
+            parents.put(checkpointId, parentId);
+            names.put(checkpointId, checkpointName);
+            this.data.put(checkpointId, readAllBytes(data));
+        }
+
+        @Override
+        public void replaceWithFull(ProcessKey processKey, UUID checkpointId, Path data) {
+            parents.remove(checkpointId);
+            this.data.put(checkpointId, readAllBytes(data));
+        }
+
+        @Override
+        public String export(ProcessKey processKey, UUID checkpointId, Path dest) {
+            byte[] ab = data.get(checkpointId);
+            if (ab == null) {
+                return null;
+            }
+
+            try {
+                Files.write(dest, ab);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return names.get(checkpointId);
+        }
+
+        private static byte[] readAllBytes(Path p) {
+            try {
+                return Files.readAllBytes(p);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
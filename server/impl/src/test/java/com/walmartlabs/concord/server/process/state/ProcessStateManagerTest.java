@@ -22,6 +22,9 @@ package com.walmartlabs.concord.server.process.state;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.ConcordObjectMapper;
@@ -36,19 +39,20 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.OffsetDateTime;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @Ignore("requires a local DB instance")
 public class ProcessStateManagerTest extends AbstractDaoTest {
@@ -87,6 +91,103 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testIncrementalImport() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+        writeTempFile(baseDir.resolve("file-2"), "456".getBytes());
+
+        //
+        ProcessKeyCache processKeyCache = new ProcessKeyCache(new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(new ObjectMapper())));
+        ProcessConfiguration stateCfg = mock(ProcessConfiguration.class);
+        when(stateCfg.getSecureFiles()).thenReturn(Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        when(stateCfg.isIncrementalStateImport()).thenReturn(true);
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+        stateManager.replacePath(processKey, baseDir, (p, attrs) -> true);
+
+        // --- update one file, remove another
+
+        writeTempFile(baseDir.resolve("file-1"), "123-up".getBytes());
+        Files.delete(baseDir.resolve("file-2"));
+        writeTempFile(baseDir.resolve("file-3"), "789".getBytes());
+
+        stateManager.replacePath(processKey, baseDir, (p, attrs) -> true);
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+
+        boolean result = stateManager.export(processKey, copyTo(tmpDir));
+        assertTrue(result);
+        assertFileContent("123-up", tmpDir.resolve("file-1"));
+        assertFalse(Files.exists(tmpDir.resolve("file-2")));
+        assertFileContent("789", tmpDir.resolve("file-3"));
+    }
+
+    @Test
+    public void testExportExcept() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        writeTempFile(baseDir.resolve("same"), "123".getBytes());
+        writeTempFile(baseDir.resolve("changed"), "456".getBytes());
+        writeTempFile(baseDir.resolve("mode"), "789".getBytes());
+        writeTempFile(baseDir.resolve("new"), "abc".getBytes());
+        writeTempFile(baseDir.resolve(Constants.Files.CONFIGURATION_FILE_NAME), "{}".getBytes());
+
+        //
+        ProcessKeyCache processKeyCache = new ProcessKeyCache(new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(new ObjectMapper())));
+        ProcessConfiguration stateCfg = mock(ProcessConfiguration.class);
+        when(stateCfg.getSecureFiles()).thenReturn(Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        when(stateCfg.isIncrementalStateImport()).thenReturn(true);
+        SecretStoreConfiguration secretCfg = mock(SecretStoreConfiguration.class);
+        when(secretCfg.getServerPwd()).thenReturn("pwd".getBytes());
+        when(secretCfg.getSecretStoreSalt()).thenReturn("salt".getBytes());
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), secretCfg, stateCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+        stateManager.importPath(processKey, null, baseDir, (p, attrs) -> true);
+
+        // --- the caller has the same version of "same", an old version of "changed",
+        // different permissions of "mode" and the current version of the encrypted file
+
+        Map<String, String> knownItems = new HashMap<>();
+        knownItems.put("same", version(baseDir.resolve("same")));
+        knownItems.put("changed", Hashing.sha256().hashBytes("old".getBytes()).toString() + ":" + unixMode(baseDir.resolve("changed")));
+        knownItems.put("mode", Hashing.sha256().hashBytes("789".getBytes()).toString() + ":" + 0777);
+        knownItems.put(Constants.Files.CONFIGURATION_FILE_NAME, version(baseDir.resolve(Constants.Files.CONFIGURATION_FILE_NAME)));
+
+        Map<String, String> exported = new HashMap<>();
+        boolean result = stateManager.exportExcept(processKey, knownItems, (name, unixMode, src) -> exported.put(name, read(src)));
+        assertTrue(result);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("changed", "456");
+        expected.put("mode", "789");
+        expected.put("new", "abc");
+        expected.put(Constants.Files.CONFIGURATION_FILE_NAME, "{}");
+        assertEquals(expected, exported);
+
+        // --- no known items, everything is exported
+
+        exported.clear();
+        result = stateManager.exportExcept(processKey, Collections.emptyMap(), (name, unixMode, src) -> exported.put(name, read(src)));
+        assertTrue(result);
+        assertEquals(5, exported.size());
+
+        // --- the items imported in the non-incremental mode have no hashes and are always exported
+
+        ProcessKey otherKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now());
+        ProcessConfiguration nonIncrementalCfg = new ProcessConfiguration("24 hours", Collections.emptyList());
+        ProcessStateManager nonIncremental = new ProcessStateManager(getConfiguration(), secretCfg, nonIncrementalCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+        nonIncremental.importPath(otherKey, null, baseDir, (p, attrs) -> true);
+
+        exported.clear();
+        result = stateManager.exportExcept(otherKey, Collections.singletonMap("same", version(baseDir.resolve("same"))), (name, unixMode, src) -> exported.put(name, read(src)));
+        assertTrue(result);
+        assertEquals("123", exported.get("same"));
+    }
+
     @Ignore
     @Test
     public void testLargeImport() throws Exception {
@@ -115,6 +216,22 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         stateManager.importPath(processKey, "/", baseDir, (p, attrs) -> true);
     }
 
+    private static String version(Path p) throws IOException {
+        return Hashing.sha256().hashBytes(Files.readAllBytes(p)).toString() + ":" + unixMode(p);
+    }
+
+    private static int unixMode(Path p) throws IOException {
+        return Posix.unixMode(Files.getPosixFilePermissions(p));
+    }
+
+    private static String read(InputStream in) {
+        try {
+            return new String(ByteStreams.toByteArray(in));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static void assertFileContent(String expected, Path f) throws IOException {
         String str = com.google.common.io.Files.asCharSource(f.toFile(), Charsets.UTF_8).read();
         assertEquals(expected, str);
@@ -0,0 +1,252 @@
+package com.walmartlabs.concord.server.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.repository.LastModifiedSnapshot;
+import com.walmartlabs.concord.repository.RepositoryInfo;
+import com.walmartlabs.concord.server.repository.RepositorySnapshots.Result;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class RepositorySnapshotsTest {
+
+    private static final String URL = "https://example.com/repo.git";
+
+    @Test
+    public void testPutAndExport() throws Exception {
+        RepositorySnapshots snapshots = new RepositorySnapshots(tempDir(), 1024, new MetricRegistry());
+
+        put(snapshots, "c1", 10);
+        assertEquals(10, snapshots.getTotalSize());
+
+        Path dst = tempDir();
+        Result r = snapshots.export(URL, "c1", null, dst);
+        assertNotNull(r);
+        assertEquals("c1", r.info().getCommitId());
+        assertEquals("master", r.branch());
+        assertTrue(r.snapshot().contains(dst.resolve("concord.yml")));
+
+        // only the exported files are saved
+        assertTrue(Files.exists(dst.resolve("concord.yml")));
+        assertFalse(Files.exists(dst.resolve("_main.json")));
+
+        assertNull(snapshots.export(URL, "c2", null, tempDir()));
+        assertNull(snapshots.export(URL, "c1", "other/path", tempDir()));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        RepositorySnapshots snapshots = new RepositorySnapshots(tempDir(), 100, new MetricRegistry());
+
+        put(snapshots, "c1", 40);
+        put(snapshots, "c2", 40);
+        assertEquals(80, snapshots.getTotalSize());
+
+        // c2 becomes the least recently used
+        assertNotNull(snapshots.export(URL, "c1", null, tempDir()));
+
+        put(snapshots, "c3", 40);
+        assertEquals(80, snapshots.getTotalSize());
+
+        assertNotNull(snapshots.export(URL, "c1", null, tempDir()));
+        assertNull(snapshots.export(URL, "c2", null, tempDir()));
+        assertNotNull(snapshots.export(URL, "c3", null, tempDir()));
+
+        // too big to keep
+        put(snapshots, "c4", 200);
+        assertNull(snapshots.export(URL, "c4", null, tempDir()));
+        assertEquals(80, snapshots.getTotalSize());
+    }
+
+    @Test
+    public void testInUseSnapshotsAreNotEvicted() throws Exception {
+        BlockingSnapshots snapshots = new BlockingSnapshots(tempDir(), 100);
+
+        put(snapshots, "c1", 40);
+        put(snapshots, "c2", 40);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Path dst = tempDir();
+            snapshots.blockOn = dst;
+            Future<Result> f = executor.submit(() -> snapshots.export(URL, "c1", null, dst));
+            assertTrue(snapshots.copying.await(10, TimeUnit.SECONDS));
+
+            // c1 becomes the least recently used, but it is being exported
+            assertNotNull(snapshots.export(URL, "c2", null, tempDir()));
+
+            put(snapshots, "c3", 40);
+            assertEquals(80, snapshots.getTotalSize());
+
+            snapshots.proceed.countDown();
+            assertNotNull(f.get(10, TimeUnit.SECONDS));
+            assertTrue(Files.exists(dst.resolve("concord.yml")));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNotNull(snapshots.export(URL, "c1", null, tempDir()));
+        assertNull(snapshots.export(URL, "c2", null, tempDir()));
+        assertNotNull(snapshots.export(URL, "c3", null, tempDir()));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        Path baseDir = tempDir();
+        RepositorySnapshots snapshots = new RepositorySnapshots(baseDir, 1024, new MetricRegistry());
+
+        put(snapshots, "c1", 10);
+
+        // the snapshot's files were removed
+        try (Stream<Path> s = Files.list(baseDir)) {
+            s.forEach(RepositorySnapshotsTest::deleteRecursively);
+        }
+
+        try {
+            snapshots.export(URL, "c1", null, tempDir());
+            fail("exception expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(0, snapshots.getTotalSize());
+        assertNull(snapshots.export(URL, "c1", null, tempDir()));
+
+        // can be saved again
+        put(snapshots, "c1", 10);
+        assertNotNull(snapshots.export(URL, "c1", null, tempDir()));
+    }
+
+    @Test
+    public void testInvalidationOfInUseSnapshot() throws Exception {
+        Path baseDir = tempDir();
+        BlockingSnapshots snapshots = new BlockingSnapshots(baseDir, 1024);
+
+        put(snapshots, "c1", 10);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Path dst = tempDir();
+            snapshots.blockOn = dst;
+            Future<Result> f = executor.submit(() -> snapshots.export(URL, "c1", null, dst));
+            assertTrue(snapshots.copying.await(10, TimeUnit.SECONDS));
+
+            snapshots.failOn = tempDir();
+            try {
+                snapshots.export(URL, "c1", null, snapshots.failOn);
+                fail("exception expected");
+            } catch (IOException e) {
+                // expected
+            }
+
+            // removed from the cache, but the files are kept until the first export finishes
+            assertNull(snapshots.export(URL, "c1", null, tempDir()));
+            assertEquals(1, count(baseDir));
+
+            snapshots.proceed.countDown();
+            assertNotNull(f.get(10, TimeUnit.SECONDS));
+            assertTrue(Files.exists(dst.resolve("concord.yml")));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, count(baseDir));
+    }
+
+    /**
+     * Emulates an export of a repository into a process' working directory
+     * and saves the snapshot of it.
+     */
+    private static void put(RepositorySnapshots snapshots, String commitId, int size) throws IOException {
+        Path repoDir = tempDir();
+        Files.write(repoDir.resolve("concord.yml"), new byte[size]);
+
+        Path workDir = tempDir();
+        Files.write(workDir.resolve("_main.json"), "{}".getBytes());
+
+        LastModifiedSnapshot snapshot = new LastModifiedSnapshot();
+        IOUtils.copy(repoDir, workDir, Collections.emptyList(), snapshot, StandardCopyOption.REPLACE_EXISTING);
+
+        RepositoryInfo info = new RepositoryInfo(commitId, "test", "test");
+        snapshots.put(URL, commitId, null, info, "master", workDir, snapshot);
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.count();
+        }
+    }
+
+    private static void deleteRecursively(Path p) {
+        try {
+            IOUtils.deleteRecursively(p);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Path tempDir() throws IOException {
+        return Files.createTempDirectory("test");
+    }
+
+    private static class BlockingSnapshots extends RepositorySnapshots {
+
+        private final CountDownLatch copying = new CountDownLatch(1);
+        private final CountDownLatch proceed = new CountDownLatch(1);
+
+        private volatile Path blockOn;
+        private volatile Path failOn;
+
+        private BlockingSnapshots(Path baseDir, long maxSize) throws IOException {
+            super(baseDir, maxSize, new MetricRegistry());
+        }
+
+        @Override
+        void copy(Path src, Path dst, LastModifiedSnapshot snapshot) throws IOException {
+            if (dst.equals(failOn)) {
+                throw new IOException("test");
+            }
+
+            if (dst.equals(blockOn)) {
+                copying.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+
+            super.copy(src, dst, snapshot);
+        }
+    }
+}
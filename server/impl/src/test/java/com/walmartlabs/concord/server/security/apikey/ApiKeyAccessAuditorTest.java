@@ -0,0 +1,133 @@
+package com.walmartlabs.concord.server.security.apikey;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.audit.AuditAction;
+import com.walmartlabs.concord.server.audit.AuditLog;
+import com.walmartlabs.concord.server.audit.AuditObject;
+import com.walmartlabs.concord.server.cfg.ApiKeyConfiguration;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ApiKeyAccessAuditorTest {
+
+    @Test(timeout = 30000)
+    public void testSummaries() {
+        AuditLog.EntryBuilder entry = mock(AuditLog.EntryBuilder.class, RETURNS_SELF);
+        AuditLog auditLog = mock(AuditLog.class);
+        when(auditLog.add(any(), any())).thenReturn(entry);
+
+        ApiKeyAccessAuditor auditor = new ApiKeyAccessAuditor(auditLog, cfg(Duration.ofHours(1), 2), new MetricRegistry());
+
+        UUID userA = UUID.randomUUID();
+        UUID keyA = UUID.randomUUID();
+        UUID userB = UUID.randomUUID();
+        UUID keyB = UUID.randomUUID();
+
+        // not started yet, the access must be logged directly
+        assertFalse(auditor.record(userA, keyA));
+
+        auditor.start();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(auditor.record(userA, keyA));
+        }
+        assertTrue(auditor.record(userB, keyB));
+
+        // too many keys, but the known keys are still recorded
+        assertFalse(auditor.record(UUID.randomUUID(), UUID.randomUUID()));
+        assertTrue(auditor.record(userA, keyA));
+
+        verify(auditLog, never()).add(any(), any());
+
+        // the remaining summaries are written on stop
+        auditor.stop();
+
+        verify(auditLog, times(2)).add(AuditObject.SYSTEM, AuditAction.ACCESS);
+        verify(entry, times(2)).log();
+
+        verify(entry).userId(userA);
+        verify(entry).field("apiKeyId", keyA);
+        verify(entry).field("count", 4L);
+
+        verify(entry).userId(userB);
+        verify(entry).field("apiKeyId", keyB);
+        verify(entry).field("count", 1L);
+
+        assertFalse(auditor.record(userA, keyA));
+    }
+
+    @Test(timeout = 30000)
+    public void testPeriodicFlush() {
+        AuditLog.EntryBuilder entry = mock(AuditLog.EntryBuilder.class, RETURNS_SELF);
+        AuditLog auditLog = mock(AuditLog.class);
+        when(auditLog.add(any(), any())).thenReturn(entry);
+
+        ApiKeyAccessAuditor auditor = new ApiKeyAccessAuditor(auditLog, cfg(Duration.ofMillis(50), 10), new MetricRegistry());
+        auditor.start();
+
+        try {
+            UUID userId = UUID.randomUUID();
+            UUID keyId = UUID.randomUUID();
+
+            auditor.record(userId, keyId);
+            verify(entry, timeout(10000)).field("count", 1L);
+
+            // a new summary is started after the flush
+            auditor.record(userId, keyId);
+            verify(entry, timeout(10000).times(2)).field("count", 1L);
+            verify(entry, times(2)).field(eq("apiKeyId"), eq(keyId));
+        } finally {
+            auditor.stop();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        ApiKeyConfiguration cfg = cfg(Duration.ofMillis(50), 10);
+        when(cfg.isAccessAuditEnabled()).thenReturn(false);
+
+        ApiKeyAccessAuditor auditor = new ApiKeyAccessAuditor(mock(AuditLog.class), cfg, new MetricRegistry());
+        auditor.start();
+        try {
+            assertFalse(auditor.record(UUID.randomUUID(), UUID.randomUUID()));
+        } finally {
+            auditor.stop();
+        }
+    }
+
+    private static ApiKeyConfiguration cfg(Duration flushInterval, int maxKeys) {
+        ApiKeyConfiguration cfg = mock(ApiKeyConfiguration.class);
+        when(cfg.isAccessAuditEnabled()).thenReturn(true);
+        when(cfg.getAccessAuditFlushInterval()).thenReturn(flushInterval);
+        when(cfg.getAccessAuditMaxKeys()).thenReturn(maxKeys);
+        return cfg;
+    }
+}
@@ -0,0 +1,189 @@
+package com.walmartlabs.concord.server.security.apikey;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ApiKeyConfiguration;
+import com.walmartlabs.concord.server.user.UserEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ApiKeyCacheTest {
+
+    // the keys are base64-encoded
+    private static final String KEY_A = "a2V5LWE=";
+    private static final String KEY_B = "a2V5LWI=";
+    private static final String KEY_C = "a2V5LWM=";
+    private static final String UNKNOWN_KEY = "dW5rbm93bg==";
+
+    private ApiKeyDao apiKeyDao;
+    private ApiKeyEntry entryA;
+    private ApiKeyEntry entryB;
+
+    @Before
+    public void init() {
+        apiKeyDao = mock(ApiKeyDao.class);
+
+        entryA = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "a", null);
+        entryB = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "b", null);
+        when(apiKeyDao.find(KEY_A)).thenReturn(entryA);
+        when(apiKeyDao.find(KEY_B)).thenReturn(entryB);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(true), metricRegistry);
+
+        assertSame(entryA, cache.find(KEY_A));
+        assertSame(entryA, cache.find(KEY_A));
+        assertSame(entryA, cache.find(KEY_A));
+        verify(apiKeyDao, times(1)).find(KEY_A);
+
+        // unknown keys are not cached
+        assertNull(cache.find(UNKNOWN_KEY));
+        assertNull(cache.find(UNKNOWN_KEY));
+        verify(apiKeyDao, times(2)).find(UNKNOWN_KEY);
+
+        assertEquals(2, metricRegistry.meter("api-key-cache-hits").getCount());
+        assertEquals(3, metricRegistry.meter("api-key-cache-misses").getCount());
+    }
+
+    @Test
+    public void testExpiredKey() throws Exception {
+        ApiKeyEntry e = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "c", OffsetDateTime.now().plusNanos(200_000_000));
+        when(apiKeyDao.find(KEY_C)).thenReturn(e).thenReturn(null);
+
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(true), new MetricRegistry());
+        assertSame(e, cache.find(KEY_C));
+
+        Thread.sleep(300);
+
+        // the cached entry is expired, the key is checked again
+        assertNull(cache.find(KEY_C));
+        verify(apiKeyDao, times(2)).find(KEY_C);
+    }
+
+    @Test
+    public void testUser() {
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(true), new MetricRegistry());
+
+        UserEntry user = mock(UserEntry.class);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Optional<UserEntry>> loader = () -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        };
+
+        // the key is not cached yet
+        assertSame(user, cache.getUser(KEY_A, loader).orElse(null));
+        assertEquals(1, loads.get());
+
+        cache.find(KEY_A);
+        assertSame(user, cache.getUser(KEY_A, loader).orElse(null));
+        assertSame(user, cache.getUser(KEY_A, loader).orElse(null));
+        assertEquals(2, loads.get());
+
+        // missing users are not cached
+        cache.find(KEY_B);
+        assertFalse(cache.getUser(KEY_B, Optional::empty).isPresent());
+        assertSame(user, cache.getUser(KEY_B, loader).orElse(null));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(true), new MetricRegistry());
+
+        UserEntry user = mock(UserEntry.class);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Optional<UserEntry>> loader = () -> {
+            loads.incrementAndGet();
+            return Optional.of(user);
+        };
+
+        cache.find(KEY_A);
+        cache.find(KEY_B);
+        cache.getUser(KEY_A, loader);
+        assertEquals(1, loads.get());
+
+        cache.invalidateUser(entryA.getUserId());
+
+        // the key and its user are loaded again
+        cache.getUser(KEY_A, loader);
+        assertEquals(2, loads.get());
+        cache.find(KEY_A);
+        verify(apiKeyDao, times(2)).find(KEY_A);
+
+        // other users are not affected
+        cache.find(KEY_B);
+        verify(apiKeyDao, times(1)).find(KEY_B);
+    }
+
+    @Test
+    public void testInvalidateKey() {
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(true), new MetricRegistry());
+
+        cache.find(KEY_A);
+        cache.find(KEY_B);
+
+        cache.invalidateKey(entryA.getId());
+
+        cache.find(KEY_A);
+        cache.find(KEY_B);
+        verify(apiKeyDao, times(2)).find(KEY_A);
+        verify(apiKeyDao, times(1)).find(KEY_B);
+    }
+
+    @Test
+    public void testDisabled() {
+        ApiKeyCache cache = new ApiKeyCache(apiKeyDao, cfg(false), new MetricRegistry());
+
+        assertSame(entryA, cache.find(KEY_A));
+        assertSame(entryA, cache.find(KEY_A));
+        verify(apiKeyDao, times(2)).find(KEY_A);
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.getUser(KEY_A, () -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+        assertEquals(1, loads.get());
+    }
+
+    private static ApiKeyConfiguration cfg(boolean enabled) {
+        ApiKeyConfiguration cfg = mock(ApiKeyConfiguration.class);
+        when(cfg.isCacheEnabled()).thenReturn(enabled);
+        when(cfg.getCacheMaxSize()).thenReturn(100);
+        when(cfg.getCacheTtl()).thenReturn(Duration.ofMinutes(1));
+        return cfg;
+    }
+}
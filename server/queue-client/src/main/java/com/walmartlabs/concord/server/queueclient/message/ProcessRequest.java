@@ -28,23 +28,39 @@ import java.util.Map;
 public class ProcessRequest extends Message {
 
     private final Map<String, Object> capabilities;
+    private final Integer maxProcesses;
+
+    public ProcessRequest(Map<String, Object> capabilities) {
+        this(capabilities, null);
+    }
 
     @JsonCreator
     public ProcessRequest(
-            @JsonProperty("capabilities") Map<String, Object> capabilities) {
+            @JsonProperty("capabilities") Map<String, Object> capabilities,
+            @JsonProperty("maxProcesses") Integer maxProcesses) {
         super(MessageType.PROCESS_REQUEST);
         this.capabilities = capabilities;
+        this.maxProcesses = maxProcesses;
     }
 
     public Map<String, Object> getCapabilities() {
         return capabilities;
     }
 
+    /**
+     * Max number of processes the client can accept. If the value is
+     * greater than 1, the server responds with a {@link ProcessBatchResponse}.
+     */
+    public Integer getMaxProcesses() {
+        return maxProcesses;
+    }
+
     @Override
     public String toString() {
         return "ProcessRequest{" +
                 "correlationId='" + getCorrelationId() + "', " +
-                "capabilities='" + capabilities + "'" +
+                "capabilities='" + capabilities + "', " +
+                "maxProcesses=" + maxProcesses +
                 '}';
     }
 }
@@ -26,6 +26,7 @@ import com.walmartlabs.concord.imports.Imports;
 import com.walmartlabs.concord.server.queueclient.message.*;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -79,6 +80,21 @@ public class MessageSerializerTest {
         assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
     }
 
+    @Test
+    public void testBatchProcessRequest() {
+        ProcessRequest r = new ProcessRequest(Collections.singletonMap("k", "v"), 5);
+        r.setCorrelationId(123);
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessRequest rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(r.getCapabilities(), rDeserialized.getCapabilities());
+        assertEquals(r.getMaxProcesses(), rDeserialized.getMaxProcesses());
+        assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+    }
+
     @Test
     public void testUnknownProperties() {
         String str = "{\"sessionToken\":\"123123\", \"correlationId\":123, \"processId\":\"b26a60c6-b54e-4f4d-bf0a-abafb908bf76\", \"messageType\":\"PROCESS_RESPONSE\"}";
@@ -116,4 +132,22 @@ public class MessageSerializerTest {
         assertEquals(r.getProcessId(), rDeserialized.getProcessId());
         assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
     }
+
+    @Test
+    public void testProcessBatchResponse() {
+        ProcessResponse a = new ProcessResponse(123, "token-a", UUID.randomUUID(), null, null, null, null, null, null);
+        ProcessResponse b = new ProcessResponse(123, "token-b", UUID.randomUUID(), null, null, null, null, null, null);
+        ProcessBatchResponse r = new ProcessBatchResponse(123, Arrays.asList(a, b));
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessBatchResponse rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(MessageType.PROCESS_BATCH_RESPONSE, rDeserialized.getMessageType());
+        assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+        assertEquals(2, rDeserialized.getProcesses().size());
+        assertEquals(a.getProcessId(), rDeserialized.getProcesses().get(0).getProcessId());
+        assertEquals(b.getSessionToken(), rDeserialized.getProcesses().get(1).getSessionToken());
+    }
 }